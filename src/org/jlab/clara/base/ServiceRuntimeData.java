@@ -41,6 +41,11 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
     private final long bytesRecv;
     private final long bytesSent;
     private final long execTime;
+    private final long numRejected;
+    private final long numExpired;
+    private final long warmUpTime;
+    private final String circuitState;
+    private final boolean quarantined;
 
     ServiceRuntimeData(JSONObject json) {
         this.name = new ServiceName(json.getString("name"));
@@ -52,6 +57,11 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
         this.bytesRecv = json.optLong("bytes_recv");
         this.bytesSent = json.optLong("bytes_sent");
         this.execTime = json.optLong("exec_time");
+        this.numRejected = json.optLong("n_rejected");
+        this.numExpired = json.optLong("n_expired");
+        this.warmUpTime = json.optLong("warmup_time");
+        this.circuitState = json.optString("circuit_state", "closed");
+        this.quarantined = json.optBoolean("quarantined");
     }
 
     @Override
@@ -163,4 +173,62 @@ public class ServiceRuntimeData implements ClaraReportData<ServiceName> {
     public long executionTime() {
         return execTime;
     }
+
+    /**
+     * Gets the total number of requests rejected by the service.
+     * Requests are rejected without calling the engine while the circuit
+     * breaker of the service is open, because the engine keeps failing.
+     *
+     * @return the accumulated number of rejected requests
+     */
+    public long numRejected() {
+        return numRejected;
+    }
+
+    /**
+     * Gets the total number of expired requests dropped by the service.
+     * Requests received after their deadline has passed are dropped without
+     * calling the engine.
+     *
+     * @return the accumulated number of expired requests
+     */
+    public long numExpired() {
+        return numExpired;
+    }
+
+    /**
+     * Gets the time spent warming up the engine when the service was deployed.
+     * The warm-up requests are not included in the
+     * {@link #executionTime execution time} of the service.
+     *
+     * @return the warm-up time, in microseconds (0 if the engine has no warm-up)
+     */
+    public long warmUpTime() {
+        return warmUpTime;
+    }
+
+    /**
+     * Gets the state of the circuit breaker of the service.
+     * It can be {@code closed} (the engine is running normally),
+     * {@code open} (the requests are rejected) or {@code half_open}
+     * (a trial request is checking if the engine has recovered).
+     *
+     * @return the state of the circuit breaker
+     */
+    public String circuitState() {
+        return circuitState;
+    }
+
+    /**
+     * Checks if the service has been quarantined.
+     * A service is quarantined when its engine returns a fatal error
+     * (severity 13). A quarantined service rejects all new requests
+     * without calling the engine, and it must be removed and deployed again
+     * to recover. The other services running in the DPE are not affected.
+     *
+     * @return true if the service is quarantined
+     */
+    public boolean isQuarantined() {
+        return quarantined;
+    }
 }
@@ -109,5 +109,11 @@ public final class ClaraConstants {
 
     public static final String UNDEFINED = "undefined";
 
+    public static final String DEADLINE_EXCEEDED = "Deadline exceeded";
+    public static final String CIRCUIT_OPEN = "Circuit breaker is open";
+    public static final String SERVICE_QUARANTINED = "Service is quarantined";
+    public static final String EVENT_NOT_READY = "Event not ready";
+    public static final String SERVICE_BUSY = "Service is busy";
+
     public static final String ENV_MONITOR_FE = "CLARA_MONITOR_FE";
 }
@@ -85,7 +85,7 @@ public final class DataUtil {
                     } else {
                         metadata.setByteOrder(xMsgMeta.Endian.Little);
                     }
-                    return new xMsgMessage(topic, metadata, bb.array());
+                    return new xMsgMessage(topic, metadata, getBytes(bb));
                 } catch (ClaraException e) {
                     throw new ClaraException("Could not serialize " + mimeType, e);
                 }
@@ -98,6 +98,24 @@ public final class DataUtil {
         throw new ClaraException("Unsupported mime-type = " + mimeType);
     }
 
+    private static byte[] getBytes(ByteBuffer bb) {
+        if (bb.hasArray()
+                && bb.arrayOffset() == 0
+                && bb.position() == 0
+                && bb.remaining() == bb.array().length) {
+            return bb.array();
+        }
+        if (bb.hasArray() && !bb.hasRemaining() && bb.array().length > 0) {
+            // a buffer that was written but not flipped: send the whole array,
+            // as the serializers always did before the remaining bytes were used
+            return bb.array();
+        }
+        // direct (memory-mapped) buffers and slices must be copied into the message
+        byte[] bytes = new byte[bb.remaining()];
+        bb.duplicate().get(bytes);
+        return bytes;
+    }
+
     /**
      * De-serializes data of the message {@link org.jlab.coda.xmsg.core.xMsgMessage},
      * represented as a byte[] into an object of az type defined using the mimeType/dataType
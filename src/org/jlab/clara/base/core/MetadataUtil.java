@@ -0,0 +1,139 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.base.core;
+
+import com.google.protobuf.UnknownFieldSet;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMetaOrBuilder;
+
+import java.util.List;
+
+/**
+ * Access to the CLARA fields of the xMsg metadata.
+ * <p>
+ * The xMsg metadata message cannot be extended by CLARA, so the extra fields
+ * are stored as unknown fields of the protobuf message, with field numbers
+ * that are not used by xMsg. Unknown fields are kept when the metadata is
+ * serialized and parsed again, so they are passed along the services.
+ */
+public final class MetadataUtil {
+
+    private static final int DEADLINE_FIELD = 100;
+    private static final int SLOT_FIELD = 101;
+
+    private MetadataUtil() { }
+
+    /**
+     * Gets the deadline to process the request.
+     *
+     * @param meta the metadata of the request
+     * @return the deadline as milliseconds since the epoch, or 0 if not set
+     */
+    public static long getDeadline(xMsgMetaOrBuilder meta) {
+        UnknownFieldSet fields = meta.getUnknownFields();
+        if (!fields.hasField(DEADLINE_FIELD)) {
+            return 0;
+        }
+        List<Long> values = fields.getField(DEADLINE_FIELD).getFixed64List();
+        return values.isEmpty() ? 0 : values.get(values.size() - 1);
+    }
+
+    /**
+     * Sets the deadline to process the request.
+     * A deadline of 0 is kept as an explicit "no deadline", so the output
+     * does not get the deadline of the input request.
+     *
+     * @param meta the metadata of the request
+     * @param deadline the deadline as milliseconds since the epoch, or 0 for no deadline
+     */
+    public static void setDeadline(xMsgMeta.Builder meta, long deadline) {
+        UnknownFieldSet.Builder fields = UnknownFieldSet.newBuilder(meta.getUnknownFields());
+        UnknownFieldSet.Field field = UnknownFieldSet.Field.newBuilder()
+                .addFixed64(Math.max(deadline, 0))
+                .build();
+        fields.addField(DEADLINE_FIELD, field);
+        meta.setUnknownFields(fields.build());
+    }
+
+    /**
+     * Copies the deadline of the input request into the output, unless the
+     * output already has its own deadline (or explicitly has none).
+     *
+     * @param inMeta the metadata of the input request
+     * @param outMeta the metadata of the output
+     */
+    public static void copyDeadline(xMsgMetaOrBuilder inMeta, xMsgMeta.Builder outMeta) {
+        if (inMeta.getUnknownFields().hasField(DEADLINE_FIELD)
+                && !outMeta.getUnknownFields().hasField(DEADLINE_FIELD)) {
+            setDeadline(outMeta, getDeadline(inMeta));
+        }
+    }
+
+    /**
+     * Gets the file slot of the request.
+     *
+     * @param meta the metadata of the request
+     * @return the slot of the file the request belongs to, or 0 if not set
+     */
+    public static int getSlot(xMsgMetaOrBuilder meta) {
+        UnknownFieldSet fields = meta.getUnknownFields();
+        if (!fields.hasField(SLOT_FIELD)) {
+            return 0;
+        }
+        List<Long> values = fields.getField(SLOT_FIELD).getVarintList();
+        return values.isEmpty() ? 0 : values.get(values.size() - 1).intValue();
+    }
+
+    /**
+     * Sets the file slot of the request.
+     *
+     * @param meta the metadata of the request
+     * @param slot the slot of the file the request belongs to, or 0 to clear it
+     */
+    public static void setSlot(xMsgMeta.Builder meta, int slot) {
+        UnknownFieldSet.Builder fields = UnknownFieldSet.newBuilder(meta.getUnknownFields());
+        if (slot != 0) {
+            UnknownFieldSet.Field field = UnknownFieldSet.Field.newBuilder()
+                    .addVarint(slot)
+                    .build();
+            fields.addField(SLOT_FIELD, field);
+        } else {
+            fields.clearField(SLOT_FIELD);
+        }
+        meta.setUnknownFields(fields.build());
+    }
+
+    /**
+     * Copies the file slot of the input request into the output, unless the
+     * output already has its own slot.
+     *
+     * @param inMeta the metadata of the input request
+     * @param outMeta the metadata of the output
+     */
+    public static void copySlot(xMsgMetaOrBuilder inMeta, xMsgMeta.Builder outMeta) {
+        int slot = getSlot(inMeta);
+        if (slot != 0 && !outMeta.getUnknownFields().hasField(SLOT_FIELD)) {
+            setSlot(outMeta, slot);
+        }
+    }
+}
@@ -34,6 +34,11 @@ public interface ClaraSerializer {
 
     /**
      * Serializes the user object into a byte buffer and returns it.
+     * <p>
+     * The bytes between the position and the limit of the buffer are sent,
+     * so a direct buffer or a slice of a larger buffer can be returned.
+     * A heap buffer with no remaining bytes (written but not flipped) is sent
+     * whole, as in previous versions.
      *
      * @param data the user object stored on the {@link EngineData}
      * @throws ClaraException if the data could not be serialized
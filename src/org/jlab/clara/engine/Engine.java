@@ -22,6 +22,8 @@
 
 package org.jlab.clara.engine;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -129,6 +131,37 @@ public interface Engine {
      */
     String getAuthor();
 
+    /**
+     * Gets sample inputs to warm up the engine before the service starts
+     * receiving requests.
+     * <p>
+     * When the service is deployed, every sample is executed
+     * {@link #getWarmUpIterations()} times before the service is registered,
+     * so the engine code is already optimized by the JIT compiler when the
+     * first real requests arrive. The results of the warm-up requests are
+     * discarded, and the warm-up time is not added to the execution time of
+     * the service.
+     * <p>
+     * The warm-up runs before the engine receives any configuration request,
+     * so the samples must not depend on the configuration.
+     *
+     * @return the sample inputs for the warm-up,
+     *         an empty list (the default) to deploy the service without warm-up
+     */
+    default List<EngineData> getWarmUpData() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Gets how many times the {@link #getWarmUpData() warm-up samples} are
+     * executed by every engine thread of the service.
+     *
+     * @return the number of warm-up iterations
+     */
+    default int getWarmUpIterations() {
+        return 100;
+    }
+
     /**
      * Resets this engine to its initial setup. It should at least revert
      * any changes done by configuration requests and side-effects of execute
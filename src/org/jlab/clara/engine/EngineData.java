@@ -23,6 +23,7 @@
 package org.jlab.clara.engine;
 
 import org.jlab.clara.base.core.DataUtil.EngineDataAccessor;
+import org.jlab.clara.base.core.MetadataUtil;
 import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
 
 /**
@@ -317,6 +318,59 @@ public class EngineData {
         return metadata.getExecutionTime();
     }
 
+    /**
+     * Gets the deadline to process the request this data is part of.
+     * <p>
+     * Services drop the requests received after the deadline has passed,
+     * returning an error instead of running the engine.
+     *
+     * @return the deadline as milliseconds since the epoch, or 0 if not set
+     */
+    public long getDeadline() {
+        return MetadataUtil.getDeadline(metadata);
+    }
+
+    /**
+     * Sets a deadline to process the request this data is part of.
+     * <p>
+     * Orchestrators and data-source engines can set a deadline for a new
+     * request. The deadline is passed along all the services of the
+     * composition, and it is compared against the clock of each node, so the
+     * clocks of the nodes should be synchronized. A deadline of 0 stops the
+     * deadline of the input from being passed to this data.
+     *
+     * @param deadline the deadline as milliseconds since the epoch, or 0 for no deadline
+     */
+    public void setDeadline(long deadline) {
+        MetadataUtil.setDeadline(metadata, deadline);
+    }
+
+    /**
+     * Gets the file slot of the request this data is part of.
+     * <p>
+     * Reader and writer services can keep several files open at the same
+     * time, each one in its own slot. The slot identifies the file the
+     * event was read from, and the file where it should be written.
+     *
+     * @return the slot of the file, or 0 (the default slot) if not set
+     */
+    public int getSlot() {
+        return MetadataUtil.getSlot(metadata);
+    }
+
+    /**
+     * Sets the file slot of the request this data is part of.
+     * <p>
+     * The slot is passed along all the services of the composition, so the
+     * writer service and the reply to the reader service use the same slot
+     * of the event.
+     *
+     * @param slot the slot of the file, or 0 for the default slot
+     */
+    public void setSlot(int slot) {
+        MetadataUtil.setSlot(metadata, slot);
+    }
+
 
     @Override
     public String toString() {
@@ -0,0 +1,134 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers to pack several events into a single engine data, and to unpack
+ * them back.
+ * <p>
+ * A batch reduces the number of messages when the events are small.
+ * The data of a batch is a {@link List} of event objects, all of them of the
+ * same data type, and its mime-type is the mime-type of the events with the
+ * {@value #BATCH_SUFFIX} suffix. The communication ID of the batch is the ID
+ * of its first event, and the following events have consecutive IDs.
+ *
+ * @see EngineDataType#batchOf(EngineDataType)
+ */
+public final class EngineDataBatch {
+
+    /**
+     * The suffix added to the mime-type of the events in a batch.
+     */
+    public static final String BATCH_SUFFIX = "+batch";
+
+    private EngineDataBatch() { }
+
+    /**
+     * Checks if the given mime-type is the type of a batch.
+     *
+     * @param mimeType the mime-type to be checked
+     * @return true if the mime-type identifies a batch of events
+     */
+    public static boolean isBatch(String mimeType) {
+        return mimeType.endsWith(BATCH_SUFFIX);
+    }
+
+    /**
+     * Gets the mime-type of a batch of events of the given type.
+     *
+     * @param elementType the mime-type of the events
+     * @return the mime-type of the batch
+     */
+    public static String batchType(String elementType) {
+        return elementType + BATCH_SUFFIX;
+    }
+
+    /**
+     * Gets the mime-type of the events in a batch.
+     *
+     * @param batchType the mime-type of the batch
+     * @return the mime-type of the events
+     */
+    public static String elementType(String batchType) {
+        if (!isBatch(batchType)) {
+            throw new IllegalArgumentException("not a batch mime-type: " + batchType);
+        }
+        return batchType.substring(0, batchType.length() - BATCH_SUFFIX.length());
+    }
+
+    /**
+     * Packs the given events into a batch.
+     * All events must have the same mime-type.
+     *
+     * @param events the events to be packed
+     * @return the batch with the data of all events
+     */
+    public static EngineData pack(List<EngineData> events) {
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("empty batch");
+        }
+        String mimeType = events.get(0).getMimeType();
+        List<Object> data = new ArrayList<>(events.size());
+        for (EngineData event : events) {
+            if (!event.getMimeType().equals(mimeType)) {
+                throw new IllegalArgumentException("mixed mime-types in batch: "
+                        + mimeType + " and " + event.getMimeType());
+            }
+            data.add(event.getData());
+        }
+        EngineData batch = new EngineData();
+        batch.setData(batchType(mimeType), data);
+        return batch;
+    }
+
+    /**
+     * Unpacks the events of a batch.
+     * Every event gets the ID of its position in the batch,
+     * and the file slot of the batch.
+     *
+     * @param batch the batch of events
+     * @return the events of the batch, in order
+     */
+    public static List<EngineData> unpack(EngineData batch) {
+        String mimeType = elementType(batch.getMimeType());
+        List<?> data = (List<?>) batch.getData();
+        if (data == null) {
+            return Collections.emptyList();
+        }
+        int firstId = batch.getCommunicationId();
+        int slot = batch.getSlot();
+        List<EngineData> events = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            EngineData event = new EngineData();
+            event.setData(mimeType, data.get(i));
+            event.setCommunicationId(firstId + i);
+            event.setSlot(slot);
+            events.add(event);
+        }
+        return events;
+    }
+}
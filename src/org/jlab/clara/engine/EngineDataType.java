@@ -29,8 +29,11 @@ import org.jlab.coda.xmsg.data.xMsgD.xMsgData;
 import org.jlab.coda.xmsg.data.xMsgD.xMsgPayload;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -173,6 +176,20 @@ public class EngineDataType {
         return new EngineDataType(MimeType.NATIVE_PAYLOAD.toString(), new PayloadSerializer());
     }
 
+    /**
+     * Creates the data type for a batch of events of the given type.
+     * The batch is a {@link List} of the event objects, and it is serialized
+     * using the serializer of the given type for every event.
+     *
+     * @param elementType the data type of the events in the batch
+     * @return the batch data type
+     * @see EngineDataBatch
+     */
+    public static EngineDataType batchOf(EngineDataType elementType) {
+        return new EngineDataType(EngineDataBatch.batchType(elementType.mimeType()),
+                                  new BatchSerializer(elementType.serializer()));
+    }
+
     /**
      * Returns the name of this data type.
      *
@@ -303,6 +320,50 @@ public class EngineDataType {
     }
 
 
+    private static class BatchSerializer implements ClaraSerializer {
+
+        private final ClaraSerializer elementSerializer;
+
+        BatchSerializer(ClaraSerializer elementSerializer) {
+            this.elementSerializer = elementSerializer;
+        }
+
+        @Override
+        public ByteBuffer write(Object data) throws ClaraException {
+            List<?> events = (List<?>) data;
+            List<ByteBuffer> buffers = new ArrayList<>(events.size());
+            int size = Integer.BYTES;
+            for (Object event : events) {
+                ByteBuffer buffer = elementSerializer.write(event);
+                buffers.add(buffer);
+                size += Integer.BYTES + buffer.remaining();
+            }
+            ByteOrder order = buffers.isEmpty() ? ByteOrder.BIG_ENDIAN : buffers.get(0).order();
+            ByteBuffer batch = ByteBuffer.allocate(size).order(order);
+            batch.putInt(buffers.size());
+            for (ByteBuffer buffer : buffers) {
+                batch.putInt(buffer.remaining());
+                batch.put(buffer.duplicate());
+            }
+            batch.flip();
+            return batch;
+        }
+
+        @Override
+        public Object read(ByteBuffer data) throws ClaraException {
+            int count = data.getInt();
+            List<Object> events = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                // every event needs its own array for the element serializer
+                byte[] bytes = new byte[data.getInt()];
+                data.get(bytes);
+                events.add(elementSerializer.read(ByteBuffer.wrap(bytes).order(data.order())));
+            }
+            return events;
+        }
+    }
+
+
     private static class PrimitiveSerializer implements ClaraSerializer {
 
         private final MimeType mimeType;
@@ -29,8 +29,20 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
@@ -40,17 +52,24 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.jlab.clara.base.EngineCallback;
+import org.jlab.clara.base.core.ClaraConstants;
 import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
 
 
 abstract class AbstractOrchestrator {
 
+    // the interval to save the output chunks completed by the writers
+    private static final long CHUNK_SAVE_INTERVAL = 10;
+
     final CoreOrchestrator orchestrator;
 
     final OrchestratorSetup setup;
@@ -60,14 +79,40 @@ abstract class AbstractOrchestrator {
 
     private final BlockingQueue<WorkerNode> freeNodes;
     private final ExecutorService nodesExecutor;
+    private final ScheduledExecutorService retryExecutor;
+    private final ScheduledExecutorService chunkExecutor;
 
     private final BlockingQueue<WorkerFile> processingQueue = new LinkedBlockingQueue<>();
 
+    // the events that wake up the scheduler of the files
+    private enum SchedulerEvent {
+        NODE_FREE,
+        FILE_AVAILABLE,
+        FILE_DONE,
+    }
+
+    private final BlockingQueue<SchedulerEvent> schedulerEvents = new LinkedBlockingQueue<>();
+
+    // the files being staged in background on every node,
+    // and the ranges of events of the files split by every node
+    private final Map<WorkerNode, Deque<WorkerFile>> prefetchedFiles = new HashMap<>();
+
+    // the number of ranges not finished of every split file
+    private final Map<WorkerFile, Integer> pendingRanges = new HashMap<>();
+
+    // the speed of every node, to assign the files when nodes are weighted
+    private final NodeWeights<WorkerNode> nodeWeights = new NodeWeights<>();
+    private final Map<WorkerFile, Long> fileSizes = new ConcurrentHashMap<>();
+
+    // the nodes with a quarantined service, that get no more files
+    private final Set<WorkerNode> quarantinedNodes = ConcurrentHashMap.newKeySet();
+
     private final AtomicInteger startedFilesCounter = new AtomicInteger();
     private final AtomicInteger processedFilesCounter = new AtomicInteger();
 
     private final Semaphore recSem;
     private volatile boolean recStatus;
+    private volatile boolean recAborted;
     private volatile String recMsg = "Could not run data processing!";
 
     static class ReconstructionStats {
@@ -163,6 +208,8 @@ abstract class AbstractOrchestrator {
 
         this.freeNodes = new LinkedBlockingQueue<>();
         this.nodesExecutor = Executors.newCachedThreadPool();
+        this.retryExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.chunkExecutor = Executors.newSingleThreadScheduledExecutor();
 
         this.recSem = new Semaphore(1);
         this.stats = new ReconstructionStats();
@@ -181,6 +228,7 @@ abstract class AbstractOrchestrator {
             checkFiles();
             startRec();
             waitRec();
+            flushOutputFiles();
             end();
             destroy();
             return recStatus;
@@ -234,8 +282,18 @@ abstract class AbstractOrchestrator {
     }
 
 
+    private void abortRec(String msg) {
+        recAborted = true;
+        exitRec(false, msg);
+        // wake up the scheduler to stop it
+        schedulerEvents.add(SchedulerEvent.FILE_DONE);
+    }
+
+
     void destroy() {
         nodesExecutor.shutdown();
+        retryExecutor.shutdownNow();
+        chunkExecutor.shutdownNow();
         Logging.info(recMsg);
     }
 
@@ -265,6 +323,7 @@ abstract class AbstractOrchestrator {
     void setupNode(WorkerNode node) {
         try {
             Logging.info("Start processing on %s...", node.name());
+            WorkerNode slotNode = pipelineFiles() ? node.createPipelineSlot() : null;
             if (!checkChain(node)) {
                 deploy(node);
             }
@@ -281,9 +340,20 @@ abstract class AbstractOrchestrator {
                 Logging.info("All services configured on %s", node.name());
             }
             node.setEventLimits(options.skipEvents, options.maxEvents);
+            node.setEventTimeout(options.eventTimeout);
+            node.setBatchSize(options.batchSize);
+            node.setRangeSize(options.rangeSize);
+            node.setEventWindow(options.maxThreads, options.maxWindow);
+            nodeWeights.addNode(node, Math.min(node.maxCores(), options.maxThreads));
 
-            freeNodes.add(node);
             stats.add(node);
+            releaseNode(node);
+            scheduleChunkSaves(node);
+            if (slotNode != null) {
+                stats.add(slotNode);
+                releaseNode(slotNode);
+                scheduleChunkSaves(slotNode);
+            }
         } catch (OrchestratorException e) {
             System.exit(1);
             // TODO cleanup
@@ -292,6 +362,18 @@ abstract class AbstractOrchestrator {
     }
 
 
+    /**
+     * Checks if the next file should be opened on every node while the
+     * current file is finishing. Every node is then used with two slots.
+     */
+    boolean pipelineFiles() {
+        // both slots would stage the same file when the ranges are processed
+        return options.pipelineFiles
+                && setup.configMode != OrchestratorConfigMode.FILE
+                && !(options.stageFiles && options.rangeSize > 0);
+    }
+
+
     boolean checkChain(WorkerNode node) {
         Logging.info("Searching services in %s...", node.name());
         if (node.checkServices()) {
@@ -322,7 +404,7 @@ abstract class AbstractOrchestrator {
             int count = 0;
             for (WorkerFile file : paths.allFiles) {
                 if (Files.exists(paths.inputFilePath(file))) {
-                    processingQueue.add(file);
+                    addFile(file);
                     count++;
                 }
             }
@@ -333,26 +415,73 @@ abstract class AbstractOrchestrator {
     }
 
 
+    /**
+     * Adds the files to the processing queue in order, as they appear in the
+     * input directory. The directories are watched for new files, and checked
+     * again periodically in case the file-system does not report the changes.
+     */
     private class FileMonitoringWorker implements Runnable {
 
+        private final BlockingQueue<WorkerFile> requestedFiles =
+                new LinkedBlockingDeque<>(paths.allFiles);
+
         @Override
         public void run() {
-            BlockingQueue<WorkerFile> requestedFiles = new LinkedBlockingDeque<>(paths.allFiles);
+            try (WatchService watcher = paths.inputDir.getFileSystem().newWatchService()) {
+                Set<Path> dirs = new HashSet<>();
+                for (WorkerFile recFile : requestedFiles) {
+                    Path dir = paths.inputFilePath(recFile).getParent();
+                    if (dir != null && dirs.add(dir)) {
+                        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                              StandardWatchEventKinds.ENTRY_MODIFY);
+                    }
+                }
+                while (!checkRequestedFiles()) {
+                    WatchKey key = watcher.poll(5, TimeUnit.SECONDS);
+                    while (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                        key = watcher.poll();
+                    }
+                }
+            } catch (IOException e) {
+                Logging.error("Could not watch the input directory: %s", e.getMessage());
+                while (!checkRequestedFiles()) {
+                    orchestrator.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean checkRequestedFiles() {
             while (!requestedFiles.isEmpty()) {
                 WorkerFile recFile = requestedFiles.element();
                 Path filePath = paths.inputFilePath(recFile);
-                if (filePath.toFile().exists()) {
-                    processingQueue.add(recFile);
-                    requestedFiles.remove();
-                    Logging.info("File %s is cached", filePath);
-                } else {
-                    orchestrator.sleep(100);
+                if (!filePath.toFile().exists()) {
+                    return false;
                 }
+                addFile(recFile);
+                requestedFiles.remove();
+                Logging.info("File %s is cached", filePath);
             }
+            return true;
         }
     }
 
 
+    private void addFile(WorkerFile recFile) {
+        processingQueue.add(recFile);
+        schedulerEvents.add(SchedulerEvent.FILE_AVAILABLE);
+    }
+
+
+    private void releaseNode(WorkerNode node) {
+        freeNodes.add(node);
+        schedulerEvents.add(SchedulerEvent.NODE_FREE);
+    }
+
+
     private void clearLocalStage(WorkerNode node) {
         // XXX: only remove files in case the node is used exclusively
         if (options.maxThreads >= node.maxCores()) {
@@ -361,29 +490,316 @@ abstract class AbstractOrchestrator {
     }
 
 
+    /**
+     * Schedules the files on the free nodes.
+     * The scheduler waits for events: a node is free, a new file is available,
+     * or a file is done. Every event dispatches as many files as possible,
+     * until all files are processed.
+     */
     private void processAllFiles() throws InterruptedException {
         if (options.maxNodes < OrchestratorOptions.MAX_NODES) {
-            while (freeNodes.size() < options.maxNodes) {
-                orchestrator.sleep(100);
+            int slotsPerNode = pipelineFiles() ? 2 : 1;
+            while (freeNodes.size() < options.maxNodes * slotsPerNode && !recAborted) {
+                schedulerEvents.take();
+            }
+        }
+        while (processedFilesCounter.get() < paths.numFiles() && !recAborted) {
+            dispatchFiles();
+            if (processedFilesCounter.get() < paths.numFiles() && !recAborted) {
+                schedulerEvents.take();
             }
         }
-        while (processedFilesCounter.get() < paths.numFiles()) {
-            WorkerFile recFile = processingQueue.peek();
+    }
+
+
+    private void dispatchFiles() {
+        while (hasPendingFiles()) {
+            // TODO check if file exists
+            final WorkerNode node = pollFreeNode();
+            if (node == null) {
+                return;
+            }
+            WorkerFile recFile = nextFile(node);
             if (recFile == null) {
-                orchestrator.sleep(100);
+                freeNodes.add(node);
+                return;
+            }
+            try {
+                nodesExecutor.execute(() -> processFile(node, recFile));
+            } catch (RejectedExecutionException e) {
+                returnFile(node, recFile);
+                freeNodes.add(node);
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the next free node, or the fastest free node when the nodes are
+     * weighted. If the fastest node does not get a file, the slower nodes
+     * would not get one either. Quarantined nodes stay free, so their saved
+     * outputs are flushed, but they get no files.
+     */
+    private WorkerNode pollFreeNode() {
+        WorkerNode fastest = null;
+        double fastestRate = -1;
+        for (WorkerNode node : freeNodes) {
+            if (quarantinedNodes.contains(node.primarySlot())) {
                 continue;
             }
-            // TODO check if file exists
-            final WorkerNode node = freeNodes.poll(60, TimeUnit.SECONDS);
-            if (node != null) {
-                try {
-                    nodesExecutor.execute(() -> processFile(node, recFile));
-                    processingQueue.remove();
-                } catch (RejectedExecutionException e) {
-                    freeNodes.add(node);
+            if (!options.weightNodes) {
+                fastest = node;
+                break;
+            }
+            double rate = nodeWeights.eventRate(node.primarySlot());
+            if (rate > fastestRate) {
+                fastest = node;
+                fastestRate = rate;
+            }
+        }
+        return fastest != null && freeNodes.remove(fastest) ? fastest : null;
+    }
+
+
+    private boolean hasPendingFiles() {
+        synchronized (prefetchedFiles) {
+            return !processingQueue.isEmpty()
+                    || prefetchedFiles.values().stream().anyMatch(f -> !f.isEmpty());
+        }
+    }
+
+
+    /**
+     * Gets the next file for the node: the first range of events or file
+     * staged in background on the node, or the next file in the queue.
+     * When the queue is empty, the last range or file of the node with most
+     * events left is used instead, so the node does not stay idle.
+     * With weighted nodes, the node gets no file if the queued files should
+     * wait for faster nodes.
+     */
+    private WorkerFile nextFile(WorkerNode node) {
+        synchronized (prefetchedFiles) {
+            Deque<WorkerFile> nodeFiles = prefetchedFiles.get(node.primarySlot());
+            if (nodeFiles != null && !nodeFiles.isEmpty()) {
+                return nodeFiles.poll();
+            }
+            if (!processingQueue.isEmpty()) {
+                return pollQueuedFile(node);
+            }
+            Deque<WorkerFile> otherFiles = null;
+            long otherEvents = 0;
+            for (Deque<WorkerFile> files : prefetchedFiles.values()) {
+                long events = remainingEvents(files);
+                if (events > otherEvents) {
+                    otherFiles = files;
+                    otherEvents = events;
+                }
+            }
+            return otherFiles != null ? otherFiles.pollLast() : null;
+        }
+    }
+
+
+    /**
+     * Takes the next file in the queue for the node.
+     * With weighted nodes, the queued files are sorted largest first, and
+     * the node gets the file selected by its speed and the work left on
+     * every node.
+     */
+    private WorkerFile pollQueuedFile(WorkerNode node) {
+        if (!options.weightNodes) {
+            return processingQueue.poll();
+        }
+        List<WorkerFile> files = new ArrayList<>(processingQueue);
+        files.sort((f1, f2) -> Long.compare(fileSize(f2), fileSize(f1)));
+        double[] events = files.stream()
+                               .mapToDouble(f -> nodeWeights.expectedEvents(fileSize(f)))
+                               .toArray();
+        int index = nodeWeights.select(node.primarySlot(), events, pendingEvents());
+        if (index < 0) {
+            return null;
+        }
+        WorkerFile recFile = files.get(index);
+        return processingQueue.remove(recFile) ? recFile : null;
+    }
+
+
+    /**
+     * Estimates the events left on every node, for the files being processed
+     * and the files and ranges reserved for the node.
+     */
+    private Map<WorkerNode, Double> pendingEvents() {
+        Map<WorkerNode, Double> pending = new HashMap<>();
+        for (WorkerNode node : nodeWeights.nodes()) {
+            double events = node.remainingEvents(nodeWeights.eventRate(node));
+            Deque<WorkerFile> nodeFiles = prefetchedFiles.get(node);
+            if (nodeFiles != null) {
+                for (WorkerFile recFile : nodeFiles) {
+                    events += recFile.isRange()
+                            ? recFile.numEvents
+                            : nodeWeights.expectedEvents(fileSize(recFile));
+                }
+            }
+            pending.put(node, events);
+        }
+        return pending;
+    }
+
+
+    private long fileSize(WorkerFile recFile) {
+        return fileSizes.computeIfAbsent(recFile.wholeFile(), f -> {
+            try {
+                return Files.size(paths.inputFilePath(f));
+            } catch (IOException e) {
+                return 0L;
+            }
+        });
+    }
+
+
+    private static long remainingEvents(Deque<WorkerFile> files) {
+        long events = 0;
+        for (WorkerFile recFile : files) {
+            // the size of a whole file is not known until it is opened
+            events += recFile.isRange() ? recFile.numEvents : Integer.MAX_VALUE;
+        }
+        return events;
+    }
+
+
+    /**
+     * Splits the file opened by the node into ranges of events, if the node
+     * is processing the first range. The node keeps the other ranges for
+     * itself, but they can be taken by idle nodes.
+     */
+    private void splitFile(WorkerNode node, WorkerFile recFile) {
+        WorkerFile work = node.currentWork();
+        if (recFile.isRange() || !work.isRange()) {
+            return;
+        }
+        int lastEvent = work.firstEvent + node.fileEvents();
+        List<WorkerFile> ranges = new ArrayList<>();
+        ranges.add(work);
+        int first = work.firstEvent + work.numEvents;
+        while (first < lastEvent) {
+            int events = Math.min(options.rangeSize, lastEvent - first);
+            ranges.add(recFile.range(ranges.size(), first, events));
+            first += events;
+        }
+        synchronized (prefetchedFiles) {
+            pendingRanges.put(recFile, ranges.size());
+            Deque<WorkerFile> nodeFiles =
+                    prefetchedFiles.computeIfAbsent(node.primarySlot(), n -> new ArrayDeque<>());
+            for (int i = ranges.size() - 1; i > 0; i--) {
+                nodeFiles.addFirst(ranges.get(i));
+            }
+        }
+        Logging.info("Split file %s into %d ranges of %d events on %s",
+                recFile.inputName, ranges.size(), options.rangeSize, node.name());
+        schedulerEvents.add(SchedulerEvent.FILE_AVAILABLE);
+    }
+
+
+    /**
+     * Checks if the next work of the node is another range of the same file,
+     * so the staged input file can be kept.
+     */
+    private boolean hasNextRange(WorkerNode node, WorkerFile work) {
+        if (work == null || !work.isRange()) {
+            return false;
+        }
+        synchronized (prefetchedFiles) {
+            Deque<WorkerFile> nodeFiles = prefetchedFiles.get(node.primarySlot());
+            WorkerFile next = nodeFiles != null ? nodeFiles.peek() : null;
+            return next != null && next.inputName.equals(work.inputName);
+        }
+    }
+
+
+    /**
+     * Counts the file as processed, or only the range of the file if there
+     * are other ranges still pending.
+     */
+    private void finishWork(WorkerFile work) {
+        if (work != null && work.isRange()) {
+            synchronized (prefetchedFiles) {
+                WorkerFile recFile = work.wholeFile();
+                int pending = pendingRanges.getOrDefault(recFile, 1) - 1;
+                if (pending > 0) {
+                    pendingRanges.put(recFile, pending);
+                    return;
+                }
+                pendingRanges.remove(recFile);
+            }
+        }
+        incrementFinishedFile();
+    }
+
+
+    /**
+     * Returns the work of a quarantined node to the queue, with the files and
+     * ranges reserved for the node, so they are processed by other nodes.
+     */
+    private void requeueWork(WorkerNode node, WorkerFile work) {
+        if (quarantinedNodes.add(node.primarySlot())) {
+            nodeWeights.removeNode(node.primarySlot());
+            if (nodeWeights.nodes().isEmpty()) {
+                // no other node can join a local run, or when all nodes are used
+                if (options.orchMode == OrchestratorMode.LOCAL
+                        || quarantinedNodes.size() >= options.maxNodes) {
+                    Logging.error("All nodes are quarantined");
+                    abortRec("Processing failed: all nodes are quarantined.");
+                    return;
                 }
+                Logging.error("All nodes are quarantined: waiting for new nodes");
             }
         }
+        synchronized (prefetchedFiles) {
+            if (work != null) {
+                processingQueue.add(work);
+            }
+            Deque<WorkerFile> nodeFiles = prefetchedFiles.remove(node.primarySlot());
+            if (nodeFiles != null) {
+                processingQueue.addAll(nodeFiles);
+            }
+        }
+        schedulerEvents.add(SchedulerEvent.FILE_AVAILABLE);
+    }
+
+
+    private void returnFile(WorkerNode node, WorkerFile recFile) {
+        synchronized (prefetchedFiles) {
+            prefetchedFiles.computeIfAbsent(node.primarySlot(), n -> new ArrayDeque<>())
+                           .addFirst(recFile);
+        }
+    }
+
+
+    /**
+     * Reserves the next files in the queue for the node, and requests the
+     * node to stage them in background while the current file is processed.
+     */
+    private void prefetchFiles(WorkerNode node) {
+        List<WorkerFile> upcomingFiles;
+        synchronized (prefetchedFiles) {
+            // both slots of the node share the same data manager
+            Deque<WorkerFile> nodeFiles =
+                    prefetchedFiles.computeIfAbsent(node.primarySlot(), n -> new ArrayDeque<>());
+            // the ranges of the current file are not staged again
+            upcomingFiles = nodeFiles.stream()
+                                     .filter(f -> !f.isRange())
+                                     .collect(Collectors.toCollection(ArrayList::new));
+            while (upcomingFiles.size() < options.stagePrefetch) {
+                WorkerFile recFile = pollQueuedFile(node);
+                if (recFile == null) {
+                    break;
+                }
+                nodeFiles.add(recFile);
+                upcomingFiles.add(recFile);
+            }
+        }
+        node.prefetchFiles(upcomingFiles);
     }
 
     private void exitAll() {
@@ -434,10 +850,27 @@ abstract class AbstractOrchestrator {
     void openFiles(WorkerNode node, WorkerFile recFile) {
         if (options.stageFiles) {
             node.setFiles(recFile);
+            if (options.stagePrefetch > 0) {
+                prefetchFiles(node);
+            }
         } else {
             node.setFiles(paths, recFile);
         }
         node.openFiles();
+        if (options.weightNodes && !recFile.isRange()) {
+            nodeWeights.addFile(fileSize(recFile), node.fileEvents());
+        }
+        if (options.rangeSize > 0) {
+            splitFile(node, recFile);
+        }
+    }
+
+
+    private void scheduleChunkSaves(WorkerNode node) {
+        if (options.stageFiles) {
+            chunkExecutor.scheduleWithFixedDelay(node::saveCompletedChunks,
+                    CHUNK_SAVE_INTERVAL, CHUNK_SAVE_INTERVAL, TimeUnit.SECONDS);
+        }
     }
 
 
@@ -448,7 +881,11 @@ abstract class AbstractOrchestrator {
         }
         node.setReportFrequency(options.reportFreq);
 
-        int fileCounter = startedFilesCounter.incrementAndGet();
+        // a file split into ranges is counted once, when its first range starts
+        WorkerFile work = node.currentWork();
+        int fileCounter = work == null || !work.isRange() || work.rangeIndex == 0
+                ? startedFilesCounter.incrementAndGet()
+                : startedFilesCounter.get();
         int totalFiles = paths.numFiles();
         node.setFileCounter(fileCounter, totalFiles);
 
@@ -461,29 +898,36 @@ abstract class AbstractOrchestrator {
         long recTime = endTime - node.startTime.get();
         double timePerEvent = recTime / (double) node.totalEvents.get();
         stats.update(node, node.totalEvents.get(), recTime);
+        // the files of both slots overlap, so the node rate is measured
+        // over the time the node was busy, not the time of every file
+        nodeWeights.update(node.primarySlot(), node.totalEvents.get(), node.takeBusyTime());
         Logging.info("Finished file %s on %s. Average event time = %.2f ms",
             node.currentFile(), node.name(), timePerEvent);
     }
 
 
     void processFinishedFile(WorkerNode node) {
+        WorkerFile work = node.currentWork();
         try {
             node.closeFiles();
             if (options.stageFiles) {
-                node.saveOutputFile();
-                Logging.info("Saved file %s on %s", node.currentFile(), node.name());
+                node.saveOutputFile(hasNextRange(node, work));
+                Logging.info("Queued output of %s on %s", node.currentFile(), node.name());
             }
         } catch (OrchestratorException e) {
             Logging.error("Could not close files on %s:%n%s", node.name(), e.getMessage());
         } finally {
             node.clearFiles();
-            incrementFinishedFile();
-            freeNodes.add(node);
+            // the node must be free before the last file is counted,
+            // so its pending outputs are flushed at the end
+            releaseNode(node);
+            finishWork(work);
         }
     }
 
     private boolean incrementFinishedFile() {
         int counter = processedFilesCounter.incrementAndGet();
+        schedulerEvents.add(SchedulerEvent.FILE_DONE);
         boolean finished = counter == paths.numFiles();
         if (finished) {
             stats.stopClock();
@@ -493,9 +937,22 @@ abstract class AbstractOrchestrator {
     }
 
 
+    /**
+     * Waits until the outputs saved in background are in the output directory.
+     */
+    void flushOutputFiles() {
+        if (options.stageFiles) {
+            freeNodes.stream().parallel().filter(WorkerNode::isPrimarySlot).forEach(n -> {
+                n.removeKeptInput();
+                n.flushOutputFiles();
+            });
+        }
+    }
+
+
     void removeStageDirectories() {
         if (options.stageFiles) {
-            freeNodes.stream().parallel().forEach(n -> {
+            freeNodes.stream().parallel().filter(WorkerNode::isPrimarySlot).forEach(n -> {
                 n.removeStageDir();
             });
         }
@@ -504,10 +961,18 @@ abstract class AbstractOrchestrator {
 
     private class ErrorHandlerCB implements EngineCallback {
 
+        // the delay of the requests rejected by an open circuit breaker,
+        // or by a stream without events
+        private static final long MIN_BACKOFF = 100;
+        private static final long MAX_BACKOFF = 5_000;
+
         private final WorkerNode node;
 
         private Timer timer;
 
+        private long backoff;
+        private long lastRejection;
+
         ErrorHandlerCB(WorkerNode node) {
             this.node = node;
         }
@@ -517,6 +982,8 @@ abstract class AbstractOrchestrator {
             int severity = data.getStatusSeverity();
             String description = data.getDescription();
             if (description.equalsIgnoreCase("End of File")) {
+                // a request of the file is done, the core can start the next file
+                node.releaseCore();
                 int eof = node.eofCounter.incrementAndGet();
                 if (eof == 1) {
                     startTimer();
@@ -527,6 +994,18 @@ abstract class AbstractOrchestrator {
                 }
             } else if (description.startsWith("Error opening the file")) {
                 Logging.error(description);
+            } else if (description.equalsIgnoreCase("Request retired")) {
+                // the window of requests in flight was reduced,
+                // and the core of the request is free for the other slot
+                node.releaseCore();
+            } else if (description.equals(ClaraConstants.CIRCUIT_OPEN)
+                    || description.equals(ClaraConstants.SERVICE_BUSY)
+                    || description.equals(ClaraConstants.EVENT_NOT_READY)) {
+                // an open circuit breaker, a full service queue, or an idle stream
+                handleRejectedRequest(data);
+            } else if (severity == 13) {
+                // a fatal error, or a request rejected by a quarantined service
+                handleQuarantinedService(data);
             } else {
                 handleEngineError(data);
             }
@@ -547,7 +1026,81 @@ abstract class AbstractOrchestrator {
             try {
                 Logging.error("Error in %s (ID: %d):%n%s",
                     data.getEngineName(), data.getCommunicationId(), data.getDescription());
-                node.requestEvent(data.getCommunicationId(), "next-rec");
+                node.requestEvent(data.getCommunicationId(), node.nextRecRequest());
+            } catch (OrchestratorException e) {
+                Logging.error(e.getMessage());
+            }
+        }
+
+        private synchronized void handleQuarantinedService(EngineData data) {
+            WorkerFile work = node.currentWork();
+            if (node.currentFile() == null) {
+                return;
+            }
+            Logging.error("Service %s is quarantined on %s: the node gets no more files",
+                          data.getEngineName(), node.name());
+            // the events in flight are not requested again,
+            // and the current file is processed by another node
+            stopTimer();
+            try {
+                node.closeFiles();
+            } catch (OrchestratorException e) {
+                Logging.error("Could not close files on %s:%n%s", node.name(), e.getMessage());
+            } finally {
+                node.clearFiles();
+                requeueWork(node, work);
+                releaseNode(node);
+            }
+        }
+
+        private synchronized void handleRejectedRequest(EngineData data) {
+            if (node.currentFile() == null) {
+                return;
+            }
+            // back off exponentially while the requests keep being rejected,
+            // instead of sending the event again right away
+            long now = System.currentTimeMillis();
+            if (now - lastRejection > 2 * MAX_BACKOFF) {
+                backoff = MIN_BACKOFF;
+                Logging.error("%s in %s: delaying the requests",
+                              data.getDescription(), data.getEngineName());
+            } else {
+                backoff = Math.min(2 * backoff, MAX_BACKOFF);
+            }
+            lastRejection = now;
+            try {
+                for (int id : rejectedIds(data)) {
+                    retryExecutor.schedule(() -> retryRequest(id),
+                                           backoff, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                // the orchestrator is shutting down
+            }
+        }
+
+        private List<Integer> rejectedIds(EngineData data) {
+            // the requests rejected by a service are reported together
+            String description = data.getDescription();
+            if ((description.equals(ClaraConstants.CIRCUIT_OPEN)
+                    || description.equals(ClaraConstants.SERVICE_BUSY))
+                    && data.getMimeType().equals(EngineDataType.STRING.mimeType())) {
+                try {
+                    return Arrays.stream(((String) data.getData()).split(","))
+                                 .map(Integer::valueOf)
+                                 .collect(Collectors.toList());
+                } catch (NumberFormatException e) {
+                    // not a list of IDs
+                }
+            }
+            return Collections.singletonList(data.getCommunicationId());
+        }
+
+        private synchronized void retryRequest(int id) {
+            if (node.currentFile() == null) {
+                return;
+            }
+            try {
+                node.requestEvent(id, node.nextRecRequest());
             } catch (OrchestratorException e) {
                 Logging.error(e.getMessage());
             }
@@ -556,7 +1109,10 @@ abstract class AbstractOrchestrator {
         private synchronized void startTimer() {
 //            TimerTask task = new EndOfFileTimerTask(30, 300, () -> { // vg commented 09.23.21
             // vg 11.2.21
-            TimerTask task = new EndOfFileTimerTask(30, 60, node.currentFile(), () -> {
+            // only whole files are processed again
+            WorkerFile work = node.currentWork();
+            String fileName = work != null && !work.isRange() ? node.currentFile() : null;
+            TimerTask task = new EndOfFileTimerTask(30, 60, fileName, () -> {
                 finishCurrentFile();
             });
 
@@ -607,8 +1163,8 @@ abstract class AbstractOrchestrator {
                         if (file.getInputName().equals(fileName)) {
                             if (!file.isProcessed()) {
                                 file.setProcessed(true);
-                                processingQueue.add(file);
                                 processedFilesCounter.decrementAndGet();
+                                addFile(file);
                                 break;
                             } else {
                                 //@todo
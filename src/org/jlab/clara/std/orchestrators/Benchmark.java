@@ -55,6 +55,7 @@ class Benchmark {
             Runtime r = runtimeStats.get(key(s.name()));
             if (r != null) {
                 r.initialTime = s.executionTime();
+                r.warmUpTime = s.warmUpTime();
             }
         });
     }
@@ -76,6 +77,14 @@ class Benchmark {
         throw new OrchestratorException("Invalid runtime report: missing " + service.name);
     }
 
+    long warmUpTime(ServiceInfo service) {
+        Runtime r = runtimeStats.get(service);
+        if (r != null) {
+            return r.warmUpTime;
+        }
+        throw new OrchestratorException("Invalid runtime report: missing " + service.name);
+    }
+
     private static ServiceInfo key(ServiceName service) {
         return new ServiceInfo("", service.container().name(), service.name(), service.language());
     }
@@ -83,5 +92,6 @@ class Benchmark {
     private static class Runtime {
         long initialTime = 0;
         long totalTime = 0;
+        long warmUpTime = 0;
     }
 }
@@ -42,6 +42,23 @@ class BenchmarkPrinter {
         }
         printService(application.getWriterService(), "WRITER");
         printTotal();
+        printWarmUp(application);
+    }
+
+    private void printWarmUp(ApplicationInfo application) {
+        printWarmUp(application.getReaderService(), "READER");
+        for (ServiceInfo service : application.getDataProcessingServices()) {
+            printWarmUp(service, service.name);
+        }
+        printWarmUp(application.getWriterService(), "WRITER");
+    }
+
+    private void printWarmUp(ServiceInfo service, String label) {
+        long time = benchmark.warmUpTime(service);
+        if (time > 0) {
+            Logging.info("  %-12.12s   warm-up time = %8.2f s (not included)",
+                    label, time / 1e6);
+        }
     }
 
     private void printService(ServiceInfo service, String label) {
@@ -252,6 +252,13 @@ class CoreOrchestrator {
     }
 
 
+    void send(ServiceName service, JSONObject data) throws ClaraException {
+        EngineData input = new EngineData();
+        input.setData(EngineDataType.JSON.mimeType(), data.toString());
+        base.execute(service).withData(input).run();
+    }
+
+
     EngineData syncSend(ServiceName service, String data, int wait, TimeUnit unit)
             throws ClaraException, TimeoutException {
         EngineData input = new EngineData();
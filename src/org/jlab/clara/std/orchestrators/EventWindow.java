@@ -0,0 +1,125 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.orchestrators;
+
+/**
+ * Tunes the number of event requests in flight on a node, from the
+ * throughput measured between the done reports of the writer.
+ * <p>
+ * The latency of the requests is estimated with Little's law, as the size of
+ * the window over the throughput. While the latency stays close to the lowest
+ * latency measured, the requests are not waiting for a core, and the window
+ * is increased by one request (additive increase). When the latency grows too
+ * much, the requests are queued on the node, and the window is reduced by a
+ * factor (multiplicative decrease). If reducing the window does not reduce
+ * the latency, the events just became more expensive, and the current
+ * latency is used as the new reference.
+ * <p>
+ * The first report after the window changes is not used, because its events
+ * were processed with both sizes.
+ */
+class EventWindow {
+
+    static final double INCREASE_LATENCY = 1.1;
+    static final double DECREASE_LATENCY = 1.5;
+    static final double DECREASE_FACTOR = 0.75;
+
+    // a reduced window is expected to reduce the latency under this factor
+    static final double QUEUE_LATENCY = 0.9;
+
+    private final int maxSize;
+
+    private int size;
+    private double minLatency;
+    private double lastLatency;
+    private boolean decreased;
+    private boolean skipReport;
+
+    EventWindow(int size, int maxSize) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid window size: " + size);
+        }
+        this.size = size;
+        this.maxSize = Math.max(size, maxSize);
+        reset();
+    }
+
+
+    /**
+     * Forgets the measured latency, when a new file is started.
+     */
+    synchronized void reset() {
+        minLatency = Double.MAX_VALUE;
+        decreased = false;
+        skipReport = true;
+    }
+
+
+    synchronized int size() {
+        return size;
+    }
+
+
+    int maxSize() {
+        return maxSize;
+    }
+
+
+    /**
+     * Updates the window with the events processed since the last report.
+     *
+     * @param events the number of processed events
+     * @param elapsedTime the time to process the events, in milliseconds
+     * @return the new size of the window
+     */
+    synchronized int update(int events, double elapsedTime) {
+        if (events <= 0 || elapsedTime <= 0) {
+            return size;
+        }
+        if (skipReport) {
+            skipReport = false;
+            return size;
+        }
+
+        double latency = size * elapsedTime / events;
+        if (decreased && latency > lastLatency * QUEUE_LATENCY) {
+            minLatency = latency;
+        }
+        decreased = false;
+        lastLatency = latency;
+        minLatency = Math.min(minLatency, latency);
+
+        int newSize = size;
+        if (latency <= minLatency * INCREASE_LATENCY) {
+            newSize = Math.min(size + 1, maxSize);
+        } else if (latency > minLatency * DECREASE_LATENCY) {
+            newSize = Math.max((int) (size * DECREASE_FACTOR), 1);
+            decreased = newSize < size;
+        }
+        if (newSize != size) {
+            size = newSize;
+            skipReport = true;
+        }
+        return size;
+    }
+}
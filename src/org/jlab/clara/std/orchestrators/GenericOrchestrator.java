@@ -221,6 +221,45 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
             return this;
         }
 
+        /**
+         * Opens the next input file on every node while the current file is
+         * finishing.
+         * By default, a node processes its files one after the other, and the
+         * next file is opened only when all events of the current file have
+         * been saved.
+         * <p>
+         * With pipelined files, every node has two files open at the same
+         * time in different reader and writer slots. The next file is opened
+         * while the current file is processed, and its events are requested
+         * as the cores become free during the tail of the current file.
+         * Both files are completed separately.
+         * Not used when the services are configured on every file.
+         *
+         * @return this object, so methods can be chained
+         */
+        public Builder usePipelinedFiles() {
+            options.pipelineFiles();
+            return this;
+        }
+
+        /**
+         * Assigns the files to the nodes by their speed, for farms with nodes
+         * of different generations.
+         * By default the files are assigned in order to the next free node.
+         * <p>
+         * With weighted nodes, the queued files are assigned largest first,
+         * every file to the node that would finish it first, using the
+         * measured rate of events of every node, or its number of cores
+         * until its first file is done. A slow node takes a smaller file
+         * instead of a large file that a faster node would finish earlier.
+         *
+         * @return this object, so methods can be chained
+         */
+        public Builder useWeightedNodes() {
+            options.weightNodes();
+            return this;
+        }
+
         /**
          * Sets the size of the thread-pool that will process reports from
          * services and nodes.
@@ -289,6 +328,88 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
             return this;
         }
 
+        /**
+         * Sets the maximum time to process a single event.
+         * Every event gets a deadline when the reader reads it, and the services
+         * drop the events received after the deadline has passed, returning a
+         * {@code "Deadline exceeded"} error. By default there is no deadline.
+         *
+         * @param seconds the time to process an event, or 0 for no deadline
+         * @return this object, so methods can be chained
+         */
+        public Builder withEventTimeout(int seconds) {
+            options.withEventTimeout(seconds);
+            return this;
+        }
+
+        /**
+         * Sets the number of events requested to the reader at once.
+         * The reader returns the events packed into a single batch message,
+         * which reduces the messaging overhead when the events are small.
+         * By default every request gets a single event.
+         *
+         * @param size the number of events per request, or 0 for single events
+         * @return this object, so methods can be chained
+         */
+        public Builder withBatchSize(int size) {
+            options.withBatchSize(size);
+            return this;
+        }
+
+        /**
+         * Sets the number of upcoming input files staged in background on
+         * every node, while the current file is processed.
+         * Only used when the input files are staged in the local file-system.
+         * By default files are staged only when the node starts processing them.
+         *
+         * @param files the number of files staged ahead, or 0 to disable it
+         * @return this object, so methods can be chained
+         */
+        public Builder withStagePrefetch(int files) {
+            options.withStagePrefetch(files);
+            return this;
+        }
+
+        /**
+         * Splits the input files into ranges of the given number of events.
+         * By default every file is processed by a single node.
+         * <p>
+         * With event ranges, a node that opens a file processes the first
+         * range, and keeps the other ranges of the file for itself. A node
+         * without files takes the last range of the node with most events
+         * left, so the last files are shared by all nodes.
+         * Every range is saved into its own output file, named with the
+         * index of the range: {@code <output>_<index>.<ext>}.
+         *
+         * @param events the number of events per range, or 0 to process
+         *        whole files
+         * @return this object, so methods can be chained
+         */
+        public Builder withEventRanges(int events) {
+            options.withRangeSize(events);
+            return this;
+        }
+
+        /**
+         * Adapts the number of event requests in flight on every node,
+         * up to the given maximum.
+         * By default every node gets one request per core.
+         * <p>
+         * The window of requests starts with one request per core, and it is
+         * updated on every report of processed events: it grows while the
+         * latency of the events does not increase, and it shrinks when the
+         * events are queued on the node. The current size of the window is
+         * shown in the progress reports.
+         *
+         * @param requests the maximum number of requests in flight per node,
+         *        or 0 to use one request per core
+         * @return this object, so methods can be chained
+         */
+        public Builder withAdaptiveWindow(int requests) {
+            options.withMaxWindow(requests);
+            return this;
+        }
+
         /**
          * Changes the path of the shared input directory.
          * This directory should contain all input files.
@@ -397,8 +518,8 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
     @Override
     void subscribe(WorkerNode node) {
         super.subscribe(node);    //vg 06.14.21 comment it for streaming
-        if (options.orchMode != OrchestratorMode.CLOUD) {
-            node.subscribeDone(n -> new DataHandlerCB(node, options));
+        if (options.orchMode != OrchestratorMode.CLOUD || options.maxWindow > 0) {
+            node.subscribeDone(n -> new DataHandlerCB(n, options));
         }
     }
 
@@ -601,19 +722,38 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
 
         @Override
         public void callback(EngineData data) {
-            int totalEvents = localNode.eventNumber.addAndGet(options.reportFreq);
+            // every writer request saves a whole batch when batches are used
+            int reportEvents = options.reportFreq * Math.max(options.batchSize, 1);
+            int totalEvents = localNode.eventNumber.addAndGet(reportEvents);
             long endTime = System.currentTimeMillis();
 
             double totalTime = (endTime - localNode.startTime.get());
             double sliceTime = (endTime - localNode.lastReportTime.getAndSet(endTime));
-            double timePerEvent = sliceTime /  options.reportFreq;
+            double timePerEvent = sliceTime / reportEvents;
+
+            try {
+                localNode.updateEventWindow(reportEvents, sliceTime);
+            } catch (OrchestratorException e) {
+                Logging.error(e.getMessage());
+            }
+            if (options.orchMode == OrchestratorMode.CLOUD) {
+                return;
+            }
 
-            Logging.info("Processed %4d events in %6.2f s"
-                         + "   average event time = "
-                         + (options.maxThreads > 2 ? "%6.2f ms" : "%8.2f ms")
-                         + "   [ total %5d events %8.2f s ]",
-                         options.reportFreq, sliceTime / 1000L, timePerEvent,
-                         totalEvents, totalTime / 1000L);
+            // the events of every slot are counted apart, but the window is shared
+            String progress = String.format("Processed %4d events in %6.2f s"
+                    + "   average event time = "
+                    + (options.maxThreads > 2 ? "%6.2f ms" : "%8.2f ms")
+                    + "   [ total %5d events %8.2f s ]",
+                    reportEvents, sliceTime / 1000L, timePerEvent,
+                    totalEvents, totalTime / 1000L);
+            if (options.maxWindow > 0) {
+                progress += String.format("   window %3d", localNode.eventWindow());
+            }
+            if (localNode.isPipelined()) {
+                progress = String.format("slot %d: %s", localNode.slot(), progress);
+            }
+            Logging.info(progress);
         }
     }
 
@@ -653,6 +793,11 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
         private final OptionSpec<Integer> reportFreq;
         private final OptionSpec<Integer> skipEvents;
         private final OptionSpec<Integer> maxEvents;
+        private final OptionSpec<Integer> eventTimeout;
+        private final OptionSpec<Integer> batchSize;
+        private final OptionSpec<Integer> stagePrefetch;
+        private final OptionSpec<Integer> rangeSize;
+        private final OptionSpec<Integer> maxWindow;
 
         private final OptionSpec<String> arguments;
 
@@ -673,6 +818,8 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
             parser.accepts("C");
             parser.accepts("F");
             parser.accepts("L");
+            parser.accepts("P");
+            parser.accepts("W");
 
             inputDir = parser.accepts("i")
                     .withRequiredArg()
@@ -715,6 +862,31 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
                     .ofType(Integer.class)
                     .defaultsTo(0);
 
+            eventTimeout = parser.accepts("T")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .defaultsTo(0);
+
+            batchSize = parser.accepts("b")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .defaultsTo(0);
+
+            stagePrefetch = parser.accepts("S")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .defaultsTo(0);
+
+            rangeSize = parser.accepts("R")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .defaultsTo(0);
+
+            maxWindow = parser.accepts("w")
+                    .withRequiredArg()
+                    .ofType(Integer.class)
+                    .defaultsTo(0);
+
             prefix = parser.accepts("z")
                 .withRequiredArg()
                 .defaultsTo(OrchestratorPaths.OUTPUT_FILE_PREFIX);
@@ -785,6 +957,12 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
                 if (options.has("L")) {
                     builder.useStageDirectory();
                 }
+                if (options.has("P")) {
+                    builder.usePipelinedFiles();
+                }
+                if (options.has("W")) {
+                    builder.useWeightedNodes();
+                }
 
                 if (options.has(reportFreq)) {
                     builder.withReportFrequency(options.valueOf(reportFreq));
@@ -795,6 +973,21 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
                 if (options.has(maxEvents)) {
                     builder.withMaxEvents(options.valueOf(maxEvents));
                 }
+                if (options.has(eventTimeout)) {
+                    builder.withEventTimeout(options.valueOf(eventTimeout));
+                }
+                if (options.has(batchSize)) {
+                    builder.withBatchSize(options.valueOf(batchSize));
+                }
+                if (options.has(stagePrefetch)) {
+                    builder.withStagePrefetch(options.valueOf(stagePrefetch));
+                }
+                if (options.has(rangeSize)) {
+                    builder.withEventRanges(options.valueOf(rangeSize));
+                }
+                if (options.has(maxWindow)) {
+                    builder.withAdaptiveWindow(options.valueOf(maxWindow));
+                }
 
                 return builder.build();
 
@@ -835,6 +1028,10 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
                         "Use the front-end for processing (on cloud mode).")
                 + OptUtils.optionHelp("-L",
                         "Stage input files in the local file-system.")
+                + OptUtils.optionHelp("-P",
+                        "Open the next file on every node while the current file finishes.")
+                + OptUtils.optionHelp("-W",
+                        "Assign the largest files to the fastest nodes.")
                 + OptUtils.optionHelp(frontEnd, "frontEnd",
                         "The name of the CLARA front-end DPE")
                 + OptUtils.optionHelp(session, "session",
@@ -856,7 +1053,17 @@ public final class GenericOrchestrator extends AbstractOrchestrator {
                 + OptUtils.optionHelp(skipEvents, "skipEv",
                         "The number of events to skip at the beginning")
                 + OptUtils.optionHelp(maxEvents, "maxEv",
-                        "The maximum number of events to process");
+                        "The maximum number of events to process")
+                + OptUtils.optionHelp(eventTimeout, "seconds",
+                        "The maximum time to process an event (0 for no limit)")
+                + OptUtils.optionHelp(batchSize, "size",
+                        "The number of events per reader request (0 for single events)")
+                + OptUtils.optionHelp(stagePrefetch, "files",
+                        "The number of upcoming files staged in background per node")
+                + OptUtils.optionHelp(rangeSize, "events",
+                        "Split the files into ranges of events shared by the nodes")
+                + OptUtils.optionHelp(maxWindow, "requests",
+                        "Adapt the events in flight per node up to this maximum");
         }
     }
 }
@@ -0,0 +1,216 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.orchestrators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Weights the files assigned to nodes of different speed.
+ * <p>
+ * The speed of a node is its measured rate of events. Until the node
+ * finishes its first file, the rate is estimated from its number of cores,
+ * with the average rate per core of the measured nodes. The size of a file
+ * is converted into events with the average size of the events of the
+ * files already opened.
+ * <p>
+ * The queued files are assigned largest first, every file to the node that
+ * would finish it first, after the work already assigned to every node.
+ * A node gets the first file it would be assigned. So a slow node takes
+ * a smaller file, and the large files wait for the fast nodes when they
+ * would finish them earlier.
+ *
+ * @param <N> the type of the nodes
+ */
+class NodeWeights<N> {
+
+    private final Map<N, NodeRate> nodes = new LinkedHashMap<>();
+
+    private long fileBytes;
+    private long fileEvents;
+
+    private static final class NodeRate {
+
+        private final int cores;
+        private long events;
+        private long time;
+
+        NodeRate(int cores) {
+            this.cores = Math.max(cores, 1);
+        }
+
+        boolean isMeasured() {
+            return time > 0;
+        }
+    }
+
+
+    synchronized void addNode(N node, int cores) {
+        nodes.putIfAbsent(node, new NodeRate(cores));
+    }
+
+
+    /**
+     * Removes a node that gets no more files.
+     *
+     * @param node the removed node
+     */
+    synchronized void removeNode(N node) {
+        nodes.remove(node);
+    }
+
+
+    synchronized List<N> nodes() {
+        return new ArrayList<>(nodes.keySet());
+    }
+
+
+    /**
+     * Adds the events processed by the node.
+     *
+     * @param node the node that processed the events
+     * @param events the number of events
+     * @param time the time to process the events, in milliseconds
+     */
+    synchronized void update(N node, int events, long time) {
+        NodeRate rate = nodes.get(node);
+        if (rate != null && events > 0 && time > 0) {
+            rate.events += events;
+            rate.time += time;
+        }
+    }
+
+
+    /**
+     * Adds the size of an opened file, to estimate the events of the
+     * files not opened yet.
+     *
+     * @param bytes the size of the file
+     * @param events the number of events of the file
+     */
+    synchronized void addFile(long bytes, int events) {
+        if (bytes > 0 && events > 0) {
+            fileBytes += bytes;
+            fileEvents += events;
+        }
+    }
+
+
+    /**
+     * Estimates the number of events of a file not opened yet.
+     *
+     * @param bytes the size of the file
+     * @return the expected number of events, or the size of the file if no
+     *         file has been opened yet
+     */
+    synchronized double expectedEvents(long bytes) {
+        if (fileBytes == 0) {
+            return bytes;
+        }
+        return bytes * (fileEvents / (double) fileBytes);
+    }
+
+
+    /**
+     * Gets the rate of events of the node, measured or estimated from its
+     * number of cores. When no node has been measured yet, the rate is just
+     * the number of cores.
+     *
+     * @param node the node
+     * @return the events per millisecond, or 0 for an unknown node
+     */
+    synchronized double eventRate(N node) {
+        NodeRate rate = nodes.get(node);
+        if (rate == null) {
+            return 0;
+        }
+        if (rate.isMeasured()) {
+            return rate.events / (double) rate.time;
+        }
+        return rate.cores * coreRate();
+    }
+
+
+    private double coreRate() {
+        double rates = 0;
+        int cores = 0;
+        for (NodeRate rate : nodes.values()) {
+            if (rate.isMeasured()) {
+                rates += rate.events / (double) rate.time;
+                cores += rate.cores;
+            }
+        }
+        return cores > 0 ? rates / cores : 1;
+    }
+
+
+    private boolean isMeasured() {
+        return fileBytes > 0 && nodes.values().stream().anyMatch(NodeRate::isMeasured);
+    }
+
+
+    /**
+     * Selects the file for the node, from the queued files sorted by size.
+     * The files are assigned in order to the node that would finish them
+     * first, until one is assigned to the given node. Until the nodes are
+     * measured, the node just gets the largest file.
+     *
+     * @param node the node that requests a file
+     * @param fileEvents the expected events of the queued files, largest first
+     * @param pendingEvents the events left on every node for its assigned work
+     * @return the index of the file for the node, or -1 if other nodes would
+     *         finish all the files earlier
+     */
+    synchronized int select(N node, double[] fileEvents, Map<N, Double> pendingEvents) {
+        if (fileEvents.length == 0) {
+            return -1;
+        }
+        if (!nodes.containsKey(node) || !isMeasured()) {
+            return 0;
+        }
+        Map<N, Double> readyTime = new HashMap<>();
+        for (N n : nodes.keySet()) {
+            readyTime.put(n, pendingEvents.getOrDefault(n, 0.0) / eventRate(n));
+        }
+        for (int i = 0; i < fileEvents.length; i++) {
+            N fastest = node;
+            double finishTime = readyTime.get(node) + fileEvents[i] / eventRate(node);
+            for (Entry<N, Double> entry : readyTime.entrySet()) {
+                double time = entry.getValue() + fileEvents[i] / eventRate(entry.getKey());
+                if (time < finishTime) {
+                    fastest = entry.getKey();
+                    finishTime = time;
+                }
+            }
+            if (fastest.equals(node)) {
+                return i;
+            }
+            readyTime.put(fastest, finishTime);
+        }
+        return -1;
+    }
+}
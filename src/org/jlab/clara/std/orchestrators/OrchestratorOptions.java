@@ -32,6 +32,8 @@ final class OrchestratorOptions {
     final OrchestratorMode orchMode;
     final boolean useFrontEnd;
     final boolean stageFiles;
+    final boolean pipelineFiles;
+    final boolean weightNodes;
 
     final int poolSize;
     final int maxNodes;
@@ -40,6 +42,11 @@ final class OrchestratorOptions {
     final int skipEvents;
     final int maxEvents;
     final int reportFreq;
+    final int eventTimeout;
+    final int batchSize;
+    final int stagePrefetch;
+    final int rangeSize;
+    final int maxWindow;
 
 
     static Builder builder() {
@@ -52,6 +59,8 @@ final class OrchestratorOptions {
         private OrchestratorMode orchMode = OrchestratorMode.LOCAL;
         private boolean useFrontEnd = false;
         private boolean stageFiles = false;
+        private boolean pipelineFiles = false;
+        private boolean weightNodes = false;
 
         private int poolSize = DEFAULT_POOLSIZE;
         private int maxNodes = MAX_NODES;
@@ -60,6 +69,11 @@ final class OrchestratorOptions {
         private int skipEvents = 0;
         private int maxEvents = 0;
         private int reportFreq = DEFAULT_REPORT_FREQ;
+        private int eventTimeout = 0;
+        private int batchSize = 0;
+        private int stagePrefetch = 0;
+        private int rangeSize = 0;
+        private int maxWindow = 0;
 
         Builder() {
             if (System.getenv("CLARA_USE_DOCKER") != null) {
@@ -82,6 +96,16 @@ final class OrchestratorOptions {
             return this;
         }
 
+        Builder pipelineFiles() {
+            this.pipelineFiles = true;
+            return this;
+        }
+
+        Builder weightNodes() {
+            this.weightNodes = true;
+            return this;
+        }
+
         Builder withPoolSize(int poolSize) {
             if (poolSize <= 0) {
                 throw new IllegalArgumentException("Invalid pool size: " + poolSize);
@@ -130,6 +154,46 @@ final class OrchestratorOptions {
             return this;
         }
 
+        Builder withEventTimeout(int eventTimeout) {
+            if (eventTimeout < 0) {
+                throw new IllegalArgumentException("Invalid event timeout: " + eventTimeout);
+            }
+            this.eventTimeout = eventTimeout;
+            return this;
+        }
+
+        Builder withBatchSize(int batchSize) {
+            if (batchSize < 0) {
+                throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        Builder withStagePrefetch(int stagePrefetch) {
+            if (stagePrefetch < 0) {
+                throw new IllegalArgumentException("Invalid stage prefetch: " + stagePrefetch);
+            }
+            this.stagePrefetch = stagePrefetch;
+            return this;
+        }
+
+        Builder withRangeSize(int rangeSize) {
+            if (rangeSize < 0) {
+                throw new IllegalArgumentException("Invalid event range size: " + rangeSize);
+            }
+            this.rangeSize = rangeSize;
+            return this;
+        }
+
+        Builder withMaxWindow(int maxWindow) {
+            if (maxWindow < 0) {
+                throw new IllegalArgumentException("Invalid max event window: " + maxWindow);
+            }
+            this.maxWindow = maxWindow;
+            return this;
+        }
+
         OrchestratorOptions build() {
             return new OrchestratorOptions(this);
         }
@@ -140,11 +204,18 @@ final class OrchestratorOptions {
         this.orchMode = builder.orchMode;
         this.useFrontEnd = builder.orchMode != OrchestratorMode.CLOUD || builder.useFrontEnd;
         this.stageFiles = builder.stageFiles;
+        this.pipelineFiles = builder.pipelineFiles;
+        this.weightNodes = builder.weightNodes;
         this.poolSize = builder.poolSize;
         this.maxNodes = builder.orchMode != OrchestratorMode.CLOUD ? 1 : builder.maxNodes;
         this.maxThreads = builder.maxThreads;
         this.skipEvents = builder.skipEvents;
         this.maxEvents = builder.maxEvents;
         this.reportFreq = builder.reportFreq;
+        this.eventTimeout = builder.eventTimeout;
+        this.batchSize = builder.batchSize;
+        this.stagePrefetch = builder.stagePrefetch;
+        this.rangeSize = builder.rangeSize;
+        this.maxWindow = builder.maxWindow;
     }
 }
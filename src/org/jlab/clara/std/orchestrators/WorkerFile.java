@@ -22,15 +22,61 @@
 
 package org.jlab.clara.std.orchestrators;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 class WorkerFile {
 
     final String inputName;
     final String outputName;
     boolean isProcessed;
 
+    // the range of events of the file, when the file is split
+    private final WorkerFile file;
+    final int rangeIndex;
+    final int firstEvent;
+    final int numEvents;
+
     WorkerFile(String inFile, String outFile) {
+        this(inFile, outFile, null, -1, 0, 0);
+    }
+
+    private WorkerFile(String inFile, String outFile,
+                       WorkerFile file, int rangeIndex, int firstEvent, int numEvents) {
         inputName = inFile;
         outputName = outFile;
+        this.file = file;
+        this.rangeIndex = rangeIndex;
+        this.firstEvent = firstEvent;
+        this.numEvents = numEvents;
+    }
+
+    /**
+     * Creates a range of events of this file.
+     * Every range is processed separately, into its own output file.
+     */
+    WorkerFile range(int index, int first, int events) {
+        return new WorkerFile(inputName, outputName, wholeFile(), index, first, events);
+    }
+
+    boolean isRange() {
+        return rangeIndex >= 0;
+    }
+
+    WorkerFile wholeFile() {
+        return file != null ? file : this;
+    }
+
+    /**
+     * Gets the output file of the given range: {@code <name>_<index>.<ext>}.
+     */
+    static String rangeFileName(String outputFile, int index) {
+        Path path = Paths.get(outputFile);
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        return path.resolveSibling(String.format("%s_%05d%s", stem, index, ext)).toString();
     }
 
     //vg 11.3.21
@@ -23,8 +23,10 @@
 package org.jlab.clara.std.orchestrators;
 
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -44,6 +46,8 @@ import org.jlab.clara.base.error.ClaraException;
 import org.jlab.clara.engine.EngineData;
 import org.jlab.clara.engine.EngineDataType;
 import org.jlab.clara.engine.EngineStatus;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 
@@ -56,17 +60,55 @@ class WorkerNode {
     private final ServiceName readerName;
     private final ServiceName writerName;
 
+    // the reader and writer slot used by this node for its files
+    private final int slot;
+
+    // the node with the other slot, when the files are pipelined
+    private volatile WorkerNode otherSlot;
+
+    private final Object pipelineLock;
+    private int deferredRequests;
+
+    // the adaptive number of requests in flight, shared by both slots
+    private volatile EventWindow eventWindow;
+    // the requests in flight set for the current file, guarded by pipelineLock
+    private int windowRequests;
+
+    // the time any slot of the node is processing a file, kept by the
+    // primary slot and guarded by pipelineLock
+    private boolean processing;
+    private int busySlots;
+    private long busySince;
+    private long busyTime;
+
     private volatile JSONObject userConfig = new JSONObject();
 
     private volatile String currentInputFileName;
     private volatile String currentInputFile;
     private volatile String currentOutputFile;
 
+    // the file or the range of events being processed
+    private volatile WorkerFile currentWork;
+    private volatile String baseOutputFile;
+    private volatile int fileEvents;
+
+    // the staged input files kept for the next ranges of the same file,
+    // shared by both slots and guarded by pipelineLock
+    private final Map<String, StagedInput> stagedInputs;
+    // the staged input file used by this slot
+    private volatile String heldInputName;
+
+    // the output chunks are not saved after the whole output file
+    private final Object saveLock = new Object();
+
     AtomicInteger currentFileCounter = new AtomicInteger();
     AtomicInteger totalFilesCounter = new AtomicInteger();
 
     AtomicInteger skipEvents = new AtomicInteger();
     AtomicInteger maxEvents = new AtomicInteger();
+    AtomicLong eventTimeout = new AtomicLong();
+    AtomicInteger batchSize = new AtomicInteger();
+    AtomicInteger rangeSize = new AtomicInteger();
 
     AtomicInteger totalEvents = new AtomicInteger();
     AtomicInteger eventNumber = new AtomicInteger();
@@ -76,6 +118,21 @@ class WorkerNode {
     AtomicLong lastReportTime = new AtomicLong();
 
 
+    private static final class StagedInput {
+
+        private final String inputFile;
+        private final String outputFile;
+
+        // the number of slots reading ranges of the file
+        private int users;
+
+        private StagedInput(String inputFile, String outputFile) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+        }
+    }
+
+
     static class Builder {
 
         private final ApplicationInfo app;
@@ -136,6 +193,126 @@ class WorkerNode {
         this.stageName = application.stageService();
         this.readerName = application.readerService();
         this.writerName = application.writerService();
+
+        this.slot = 0;
+        this.pipelineLock = new Object();
+        this.stagedInputs = new HashMap<>();
+    }
+
+
+    private WorkerNode(WorkerNode node, int slot) {
+        this.application = node.application;
+        this.orchestrator = node.orchestrator;
+
+        this.stageName = node.stageName;
+        this.readerName = node.readerName;
+        this.writerName = node.writerName;
+
+        this.slot = slot;
+        this.pipelineLock = node.pipelineLock;
+        this.stagedInputs = node.stagedInputs;
+
+        // both slots use the same event settings
+        this.skipEvents = node.skipEvents;
+        this.maxEvents = node.maxEvents;
+        this.eventTimeout = node.eventTimeout;
+        this.batchSize = node.batchSize;
+        this.rangeSize = node.rangeSize;
+    }
+
+
+    /**
+     * Creates a view of this node that processes its files on the next
+     * reader and writer slot, so two files can be open at the same time.
+     * The event requests of the file started last are deferred until the
+     * other file frees the cores.
+     *
+     * @return the node for the second slot
+     */
+    WorkerNode createPipelineSlot() {
+        WorkerNode node = new WorkerNode(this, slot + 1);
+        node.otherSlot = this;
+        this.otherSlot = node;
+        return node;
+    }
+
+
+    private void startBusy(long time) {
+        WorkerNode node = primarySlot();
+        synchronized (pipelineLock) {
+            if (!processing) {
+                processing = true;
+                if (node.busySlots++ == 0) {
+                    node.busySince = time;
+                }
+            }
+        }
+    }
+
+
+    private void stopBusy() {
+        WorkerNode node = primarySlot();
+        long time = System.currentTimeMillis();
+        synchronized (pipelineLock) {
+            if (processing) {
+                processing = false;
+                if (--node.busySlots == 0) {
+                    node.busyTime += time - node.busySince;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Gets the time any slot of the node was processing a file, since the
+     * last call. The time both slots are processing their files is counted
+     * once, so the events of both slots over the sum of the returned times
+     * is the rate of the whole node.
+     *
+     * @return the busy time of the node, in milliseconds
+     */
+    long takeBusyTime() {
+        WorkerNode node = primarySlot();
+        long time = System.currentTimeMillis();
+        synchronized (pipelineLock) {
+            long busy = node.busyTime;
+            if (node.busySlots > 0) {
+                busy += time - node.busySince;
+                node.busySince = time;
+            }
+            node.busyTime = 0;
+            return busy;
+        }
+    }
+
+
+    boolean isPrimarySlot() {
+        return slot == 0;
+    }
+
+
+    /**
+     * Checks if this node shares its cores with the node of another slot.
+     *
+     * @return true if the files are pipelined
+     */
+    boolean isPipelined() {
+        return otherSlot != null;
+    }
+
+
+    int slot() {
+        return slot;
+    }
+
+
+    /**
+     * Gets the node that uses the first slot, which owns the data manager.
+     */
+    WorkerNode primarySlot() {
+        WorkerNode other = otherSlot;
+        return other != null && other.slot < slot ? other : this;
     }
 
 
@@ -155,7 +332,7 @@ class WorkerNode {
 
 
     void subscribeErrors(Function<WorkerNode, EngineCallback> callbackFn) {
-        EngineCallback callback = callbackFn.apply(this);
+        EngineCallback callback = slotsCallback(callbackFn);
         application.allContainers().values().stream()
                    .flatMap(set -> set.stream())
                    .forEach(cont -> orchestrator.subscribeErrors(cont, callback));
@@ -163,11 +340,33 @@ class WorkerNode {
 
 
     void subscribeDone(Function<WorkerNode, EngineCallback> callbackFn) {
-        orchestrator.subscribeDone(writerName, callbackFn.apply(this));
+        orchestrator.subscribeDone(writerName, slotsCallback(callbackFn));
+    }
+
+
+    private EngineCallback slotsCallback(Function<WorkerNode, EngineCallback> callbackFn) {
+        EngineCallback callback = callbackFn.apply(this);
+        WorkerNode other = otherSlot;
+        if (other == null) {
+            return callback;
+        }
+        // the reports are sent to the node of their slot
+        EngineCallback otherCallback = callbackFn.apply(other);
+        return data -> {
+            if (data.getSlot() == other.slot) {
+                otherCallback.callback(data);
+            } else {
+                callback.callback(data);
+            }
+        };
     }
 
     void setConfiguration(JSONObject configData) {
         this.userConfig = configData;
+        WorkerNode other = otherSlot;
+        if (other != null) {
+            other.userConfig = configData;
+        }
     }
 
     private ServiceConfig createServiceConfig(boolean fillDataModel) {
@@ -195,6 +394,23 @@ class WorkerNode {
 
 
     void setFiles(WorkerFile currentFile) {
+        StagedInput staged;
+        synchronized (pipelineLock) {
+            staged = stagedInputs.get(currentFile.inputName);
+            if (staged != null) {
+                staged.users++;
+            }
+        }
+        if (staged != null) {
+            Logging.info("Using staged file %s on %s", currentFile.inputName, name());
+            currentInputFile = staged.inputFile;
+            baseOutputFile = staged.outputFile;
+            currentInputFileName = currentFile.inputName;
+            currentWork = currentFile;
+            heldInputName = currentFile.inputName;
+            return;
+        }
+        removeKeptInput();
         try {
             JSONObject data = new JSONObject();
             data.put("type", "exec");
@@ -208,8 +424,14 @@ class WorkerNode {
                 String rs = (String) result.getData();
                 JSONObject rd = new JSONObject(rs);
                 currentInputFile = rd.getString("input_file");
-                currentOutputFile = rd.getString("output_file");
+                baseOutputFile = rd.getString("output_file");
                 currentInputFileName = currentFile.inputName;
+                currentWork = currentFile;
+                synchronized (pipelineLock) {
+                    stagedInputs.computeIfAbsent(currentFile.inputName,
+                            k -> new StagedInput(currentInputFile, baseOutputFile)).users++;
+                }
+                heldInputName = currentFile.inputName;
             } else {
                 String msg = "Could not stage input file: " + result.getDescription();
                 throw new OrchestratorException(msg);
@@ -220,10 +442,28 @@ class WorkerNode {
     }
 
 
+    void prefetchFiles(List<WorkerFile> upcomingFiles) {
+        try {
+            JSONArray files = new JSONArray();
+            upcomingFiles.forEach(f -> files.put(f.inputName));
+
+            JSONObject data = new JSONObject();
+            data.put("type", "exec");
+            data.put("action", "prefetch_input");
+            data.put("files", files);
+
+            orchestrator.send(stageName, data);
+        } catch (ClaraException e) {
+            Logging.error("Could not prefetch files on %s: %s", name(), e.getMessage());
+        }
+    }
+
+
     void setFiles(OrchestratorPaths paths, WorkerFile currentFile) {
         currentInputFile = paths.inputFilePath(currentFile).toString();
-        currentOutputFile = paths.outputFilePath(currentFile).toString();
+        baseOutputFile = paths.outputFilePath(currentFile).toString();
         currentInputFileName = currentFile.inputName;
+        currentWork = currentFile;
     }
 
 
@@ -234,9 +474,24 @@ class WorkerNode {
 
 
     void clearFiles() {
+        // an input not released by saving its output is kept until it is unused
+        releaseInput(true);
+        stopBusy();
+
         currentInputFile = null;
         currentOutputFile = null;
         currentInputFileName = null;
+        currentWork = null;
+
+        synchronized (pipelineLock) {
+            windowRequests = 0;
+        }
+
+        // all cores are free for the file of the other slot
+        WorkerNode other = otherSlot;
+        if (other != null) {
+            other.sendDeferredEvents(Integer.MAX_VALUE);
+        }
     }
 
 
@@ -245,37 +500,204 @@ class WorkerNode {
     }
 
 
+    /**
+     * Gets the file or the range of events being processed.
+     */
+    WorkerFile currentWork() {
+        return currentWork;
+    }
+
+
+    /**
+     * Gets the number of events of the whole file, within the event limits.
+     */
+    int fileEvents() {
+        return fileEvents;
+    }
+
+
     boolean saveOutputFile() {
-        try {
-            JSONObject cleanRequest = new JSONObject();
-            cleanRequest.put("type", "exec");
-            cleanRequest.put("action", "remove_input");
-            cleanRequest.put("file", currentInputFileName);
-            EngineData rr = orchestrator.syncSend(stageName, cleanRequest, 5, TimeUnit.MINUTES);
-
-            JSONObject saveRequest = new JSONObject();
-            saveRequest.put("type", "exec");
-            saveRequest.put("action", "save_output");
-            saveRequest.put("file", currentInputFileName);
-            EngineData rs = orchestrator.syncSend(stageName, saveRequest, 5, TimeUnit.MINUTES);
-
-            boolean status = true;
-            if (rr.getStatus().equals(EngineStatus.ERROR)) {
-                System.err.println(rr.getDescription());
-                status = false;
+        return saveOutputFile(false);
+    }
+
+
+    /**
+     * Saves the output file, and removes the staged input file unless it is
+     * kept for the next range of events of the same file, or the other slot
+     * is still reading another range of it.
+     */
+    boolean saveOutputFile(boolean keepInput) {
+        synchronized (saveLock) {
+            try {
+                EngineData rr = null;
+                if (releaseInput(keepInput)) {
+                    JSONObject cleanRequest = new JSONObject();
+                    cleanRequest.put("type", "exec");
+                    cleanRequest.put("action", "remove_input");
+                    cleanRequest.put("file", currentInputFileName);
+                    rr = orchestrator.syncSend(stageName, cleanRequest, 5, TimeUnit.MINUTES);
+                }
+
+                // the output is saved in background by the data manager,
+                // the request only waits if its queue is full
+                JSONObject saveRequest = new JSONObject();
+                saveRequest.put("type", "exec");
+                saveRequest.put("action", "save_output");
+                saveRequest.put("file", currentInputFileName);
+                saveRequest.put("output", Paths.get(currentOutputFile).getFileName().toString());
+                saveRequest.put("async", true);
+                EngineData rs = orchestrator.syncSend(stageName, saveRequest, 5, TimeUnit.MINUTES);
+
+                boolean status = true;
+                if (rr != null && rr.getStatus().equals(EngineStatus.ERROR)) {
+                    System.err.println(rr.getDescription());
+                    status = false;
+                }
+                if (rs.getStatus().equals(EngineStatus.ERROR)) {
+                    status = false;
+                    System.err.println(rs.getDescription());
+                } else {
+                    status &= reportSavedFiles(rs);
+                }
+
+                return status;
+            } catch (ClaraException | TimeoutException e) {
+                throw new OrchestratorException("Could not save output", e);
             }
-            if (rs.getStatus().equals(EngineStatus.ERROR)) {
-                status = false;
-                System.err.println(rs.getDescription());
+        }
+    }
+
+
+    /**
+     * Saves the output chunks completed by the writer, so they are moved to
+     * the output directory while the next chunks of the file are written.
+     */
+    void saveCompletedChunks() {
+        synchronized (saveLock) {
+            String inputName = currentInputFileName;
+            if (inputName == null) {
+                return;
+            }
+            try {
+                JSONObject request = new JSONObject();
+                request.put("action", "get_chunks");
+                request.put("slot", slot);
+                EngineData rc = orchestrator.syncSend(writerName, request, 1, TimeUnit.MINUTES);
+                if (rc.getStatus().equals(EngineStatus.ERROR)) {
+                    Logging.error("Could not get output chunks on %s: %s",
+                            name(), rc.getDescription());
+                    return;
+                }
+                JSONArray chunks = new JSONObject((String) rc.getData()).getJSONArray("chunks");
+                for (int i = 0; i < chunks.length(); i++) {
+                    JSONObject saveRequest = new JSONObject();
+                    saveRequest.put("type", "exec");
+                    saveRequest.put("action", "save_output");
+                    saveRequest.put("file", inputName);
+                    saveRequest.put("output",
+                            Paths.get(chunks.getString(i)).getFileName().toString());
+                    saveRequest.put("async", true);
+                    EngineData rs = orchestrator.syncSend(stageName, saveRequest,
+                                                          5, TimeUnit.MINUTES);
+                    if (rs.getStatus().equals(EngineStatus.ERROR)) {
+                        System.err.println(rs.getDescription());
+                    } else {
+                        reportSavedFiles(rs);
+                    }
+                }
+            } catch (ClaraException | TimeoutException | JSONException e) {
+                Logging.error("Could not save output chunks on %s: %s", name(), e.getMessage());
             }
+        }
+    }
+
 
-            return status;
+    /**
+     * Releases the staged input file used by this slot.
+     * Returns true if the file can be removed, because it is not kept
+     * and no slot is reading it.
+     */
+    private boolean releaseInput(boolean keep) {
+        String inputName = heldInputName;
+        if (inputName == null) {
+            return false;
+        }
+        heldInputName = null;
+        synchronized (pipelineLock) {
+            StagedInput staged = stagedInputs.get(inputName);
+            if (staged == null) {
+                return !keep;
+            }
+            staged.users--;
+            if (keep || staged.users > 0) {
+                return false;
+            }
+            stagedInputs.remove(inputName);
+            return true;
+        }
+    }
+
+
+    /**
+     * Removes the staged input files kept for ranges that were taken by
+     * another node, unless a slot is still reading them.
+     */
+    void removeKeptInput() {
+        List<String> unused;
+        synchronized (pipelineLock) {
+            unused = stagedInputs.entrySet().stream()
+                    .filter(e -> e.getValue().users == 0)
+                    .map(Entry::getKey)
+                    .collect(Collectors.toList());
+            unused.forEach(stagedInputs::remove);
+        }
+        for (String inputName : unused) {
+            try {
+                JSONObject request = new JSONObject();
+                request.put("type", "exec");
+                request.put("action", "remove_input");
+                request.put("file", inputName);
+                orchestrator.syncSend(stageName, request, 5, TimeUnit.MINUTES);
+            } catch (ClaraException | TimeoutException e) {
+                Logging.error("Could not remove staged file %s on %s: %s",
+                        inputName, name(), e.getMessage());
+            }
+        }
+    }
+
+
+    boolean flushOutputFiles() {
+        try {
+            JSONObject request = new JSONObject();
+            request.put("type", "exec");
+            request.put("action", "flush_output");
+            EngineData rs = orchestrator.syncSend(stageName, request, 30, TimeUnit.MINUTES);
+            return reportSavedFiles(rs);
         } catch (ClaraException | TimeoutException e) {
-            throw new OrchestratorException("Could not save output", e);
+            Logging.error("Failed to save output files on %s: %s", name(), e.getMessage());
+            return false;
         }
     }
 
 
+    private boolean reportSavedFiles(EngineData response) {
+        JSONObject data = new JSONObject((String) response.getData());
+        JSONArray saved = data.getJSONArray("saved");
+        boolean status = true;
+        for (int i = 0; i < saved.length(); i++) {
+            JSONObject file = saved.getJSONObject(i);
+            if (file.has("error")) {
+                Logging.error("Could not save output of %s on %s: %s",
+                        file.getString("file"), name(), file.getString("error"));
+                status = false;
+            } else {
+                Logging.info("Saved output of %s on %s", file.getString("file"), name());
+            }
+        }
+        return status;
+    }
+
+
     boolean removeStageDir() {
         try {
             JSONObject request = new JSONObject();
@@ -301,6 +723,42 @@ class WorkerNode {
     }
 
 
+    void setEventTimeout(int timeoutSeconds) {
+        this.eventTimeout.set(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+    }
+
+
+    void setBatchSize(int batchSize) {
+        this.batchSize.set(batchSize);
+    }
+
+
+    void setRangeSize(int rangeSize) {
+        this.rangeSize.set(rangeSize);
+    }
+
+
+    /**
+     * Adapts the number of requests in flight on this node to the observed
+     * latency of the events, starting from the number of cores.
+     *
+     * @param maxCores the maximum number of cores to be used
+     * @param maxRequests the maximum number of requests in flight,
+     *        or 0 to always use one request per core
+     */
+    void setEventWindow(int maxCores, int maxRequests) {
+        EventWindow window = null;
+        if (maxRequests > 0) {
+            window = new EventWindow(numCores(maxCores), maxRequests);
+        }
+        this.eventWindow = window;
+        WorkerNode other = otherSlot;
+        if (other != null) {
+            other.eventWindow = window;
+        }
+    }
+
+
     void openFiles() {
         startTime.set(0);
         lastReportTime.set(0);
@@ -313,18 +771,38 @@ class WorkerNode {
         int skipEv = skipEvents.get();
         int maxEv = maxEvents.get();
 
+        // only the first range is processed when the file is split
+        WorkerFile work = currentWork;
+        int range = rangeSize.get();
+        if (work.isRange()) {
+            skipEv = work.firstEvent;
+            maxEv = work.numEvents;
+        } else if (range > 0) {
+            maxEv = maxEv > 0 ? Math.min(maxEv, range) : range;
+        }
+
         // open input file
         try {
             Logging.info("Opening file %s on %s", currentInputFileName, name());
             JSONObject inputConfig = configuration.reader();
             inputConfig.put("action", "open");
             inputConfig.put("file", currentInputFile);
+            if (slot > 0) {
+                inputConfig.put("slot", slot);
+            }
             if (skipEv > 0) {
                 inputConfig.put("skip", skipEv);
             }
             if (maxEv > 0) {
                 inputConfig.put("max", maxEv);
             }
+            if (batchSize.get() > 0) {
+                inputConfig.put("batch_size", batchSize.get());
+            }
+            if (eventTimeout.get() > 0) {
+                // the reader sets the deadline of every event it reads
+                inputConfig.put("event_timeout", eventTimeout.get());
+            }
             orchestrator.syncConfig(readerName, inputConfig, 5, TimeUnit.MINUTES);
         } catch (OrchestratorConfigException e) {
             throw new OrchestratorException("Could not configure reader", e);
@@ -333,12 +811,28 @@ class WorkerNode {
         }
 
         // total number of events in the file
-        int numEv = requestNumberOfEvents() - skipEv;
+        int fileEv = requestNumberOfEvents();
+        int numEv = fileEv - skipEv;
         if (maxEv > 0 && maxEv < numEv) {
             numEv = maxEv;
         }
         totalEvents.set(numEv);
 
+        if (!work.isRange()) {
+            fileEv -= skipEvents.get();
+            if (maxEvents.get() > 0 && maxEvents.get() < fileEv) {
+                fileEv = maxEvents.get();
+            }
+            fileEvents = fileEv;
+            if (range > 0 && fileEv > range) {
+                work = work.range(0, skipEv, numEv);
+                currentWork = work;
+            }
+        }
+        currentOutputFile = work.isRange()
+                ? WorkerFile.rangeFileName(baseOutputFile, work.rangeIndex)
+                : baseOutputFile;
+
         // endiannes of the file
         String fileOrder = requestFileOrder();
 
@@ -347,8 +841,14 @@ class WorkerNode {
             JSONObject outputConfig = configuration.writer();
             outputConfig.put("action", "open");
             outputConfig.put("file", currentOutputFile);
+            if (slot > 0) {
+                outputConfig.put("slot", slot);
+            }
             outputConfig.put("order", fileOrder);
             outputConfig.put("overwrite", true);
+            if (skipEv > 0) {
+                outputConfig.put("first_event", skipEv);
+            }
             orchestrator.syncConfig(writerName, outputConfig, 5, TimeUnit.MINUTES);
         } catch (OrchestratorConfigException e) {
             throw new OrchestratorException("Could not configure writer", e);
@@ -376,6 +876,9 @@ class WorkerNode {
             JSONObject closeInput = new JSONObject();
             closeInput.put("action", "close");
             closeInput.put("file", currentInputFile);
+            if (slot > 0) {
+                closeInput.put("slot", slot);
+            }
             orchestrator.syncConfig(readerName, closeInput, 5, TimeUnit.MINUTES);
         } catch (ClaraException | TimeoutException e) {
             throw new OrchestratorException("Could not close input file", e);
@@ -385,6 +888,9 @@ class WorkerNode {
             JSONObject closeOutput = new JSONObject();
             closeOutput.put("action", "close");
             closeOutput.put("file", currentOutputFile);
+            if (slot > 0) {
+                closeOutput.put("slot", slot);
+            }
             orchestrator.syncConfig(writerName, closeOutput, 5, TimeUnit.MINUTES);
         } catch (ClaraException | TimeoutException e) {
             throw new OrchestratorException("Could not close output file", e);
@@ -394,7 +900,8 @@ class WorkerNode {
 
     private String requestFileOrder() {
         try {
-            EngineData output = orchestrator.syncSend(readerName, "order", 1, TimeUnit.MINUTES);
+            EngineData output = orchestrator.syncSend(readerName, slotRequest("order"),
+                                                      1, TimeUnit.MINUTES);
             return (String) output.getData();
         } catch (ClaraException | TimeoutException e) {
             throw new OrchestratorException("Could not get input file order", e);
@@ -404,7 +911,8 @@ class WorkerNode {
 
     private int requestNumberOfEvents() {
         try {
-            EngineData output = orchestrator.syncSend(readerName, "count", 1, TimeUnit.MINUTES);
+            EngineData output = orchestrator.syncSend(readerName, slotRequest("count"),
+                                                      1, TimeUnit.MINUTES);
             return (Integer) output.getData();
         } catch (ClaraException | TimeoutException e) {
             throw new OrchestratorException("Could not get number of input events", e);
@@ -412,6 +920,14 @@ class WorkerNode {
     }
 
 
+    private EngineData slotRequest(String request) {
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.STRING.mimeType(), request);
+        data.setSlot(slot);
+        return data;
+    }
+
+
     void configureServices() {
         ServiceConfig configuration = createServiceConfig(true);
 
@@ -439,6 +955,7 @@ class WorkerNode {
         long currentTime = System.currentTimeMillis();
         startTime.compareAndSet(0, currentTime);
         lastReportTime.compareAndSet(0, currentTime);
+        startBusy(currentTime);
 
         int requestCores = numCores(maxCores);
         int requestId = 1;
@@ -447,17 +964,182 @@ class WorkerNode {
                       requestCores, name(), totalEvents.get(), currentInputFileName,
                       currentFileCounter.get(), totalFilesCounter.get());
 
+        EventWindow window = eventWindow;
+        if (window != null) {
+            window.reset();
+            requestCores = window.size();
+            setReaderWindow(requestCores);
+        }
+
+        synchronized (pipelineLock) {
+            windowRequests = requestCores;
+            WorkerNode other = otherSlot;
+            if (other != null && other.currentFile() != null) {
+                // the cores are still used by the file of the other slot
+                Logging.info("Waiting for %s to finish on %s", other.currentFile(), name());
+                deferredRequests = requestCores;
+                return;
+            }
+        }
+
+        String request = batchSize.get() > 0 ? "next-batch" : "next";
         for (int i = 0; i < requestCores; i++) {
-            requestEvent(requestId++, "next");
+            requestEvent(requestId++, request);
+        }
+    }
+
+
+    /**
+     * Passes a free core to the file of the other slot, if it is waiting
+     * for cores. Called when a request of the current file reaches the end
+     * of the file.
+     */
+    void releaseCore() {
+        WorkerNode other = otherSlot;
+        if (other != null) {
+            other.sendDeferredEvents(1);
+        }
+    }
+
+
+    private void sendDeferredEvents(int maxRequests) {
+        int requests;
+        synchronized (pipelineLock) {
+            requests = Math.min(maxRequests, deferredRequests);
+            deferredRequests -= requests;
+        }
+        String request = batchSize.get() > 0 ? "next-batch" : "next";
+        try {
+            for (int i = 0; i < requests; i++) {
+                requestEvent(i + 1, request);
+            }
+        } catch (OrchestratorException e) {
+            Logging.error(e.getMessage());
+        }
+    }
+
+
+    /**
+     * Gets the number of requests in flight, when it is adapted to the
+     * latency of the events.
+     *
+     * @return the size of the window, or 0 if it is not adapted
+     */
+    int eventWindow() {
+        EventWindow window = eventWindow;
+        return window != null ? window.size() : 0;
+    }
+
+
+    /**
+     * Updates the number of requests in flight with the events processed
+     * since the last report. New requests are sent when the window grows,
+     * and the reader retires the requests over the window when it shrinks.
+     * The window is not changed while both slots have a file.
+     *
+     * @param events the number of processed events
+     * @param elapsedTime the time to process the events, in milliseconds
+     */
+    void updateEventWindow(int events, double elapsedTime) {
+        EventWindow window = eventWindow;
+        if (window == null) {
+            return;
+        }
+        WorkerNode node = activeSlot();
+        if (node != null) {
+            node.resizeWindow(window.update(events, elapsedTime));
+        }
+    }
+
+
+    private WorkerNode activeSlot() {
+        WorkerNode other = otherSlot;
+        synchronized (pipelineLock) {
+            if (other != null && other.currentFile() != null && currentFile() != null) {
+                return null;
+            }
+            if (windowRequests > 0 && deferredRequests == 0) {
+                return this;
+            }
+            if (other != null && other.windowRequests > 0 && other.deferredRequests == 0) {
+                return other;
+            }
+            return null;
         }
     }
 
 
+    private void resizeWindow(int size) {
+        int newRequests;
+        synchronized (pipelineLock) {
+            if (size == windowRequests || windowRequests == 0) {
+                return;
+            }
+            newRequests = size - windowRequests;
+            windowRequests = size;
+        }
+        setReaderWindow(size);
+        String request = batchSize.get() > 0 ? "next-batch" : "next";
+        for (int i = 0; i < newRequests; i++) {
+            requestEvent(size - i, request);
+        }
+    }
+
+
+    private void setReaderWindow(int size) {
+        try {
+            JSONObject windowConfig = new JSONObject();
+            windowConfig.put("action", "window");
+            windowConfig.put("file", currentInputFile);
+            windowConfig.put("window", size);
+            if (slot > 0) {
+                windowConfig.put("slot", slot);
+            }
+            orchestrator.syncConfig(readerName, windowConfig, 1, TimeUnit.MINUTES);
+        } catch (ClaraException | TimeoutException e) {
+            throw new OrchestratorException("Could not set the window of requests", e);
+        }
+    }
+
+
+    /**
+     * Estimates the events left on this node for the files being processed
+     * on both slots, from the given rate of events.
+     *
+     * @param eventRate the events per millisecond processed by this node
+     * @return the number of events left
+     */
+    double remainingEvents(double eventRate) {
+        double events = remainingFileEvents(eventRate);
+        WorkerNode other = otherSlot;
+        if (other != null) {
+            events += other.remainingFileEvents(eventRate);
+        }
+        return events;
+    }
+
+
+    private double remainingFileEvents(double eventRate) {
+        if (currentInputFileName == null) {
+            return 0;
+        }
+        long start = startTime.get();
+        double elapsedTime = start > 0 ? System.currentTimeMillis() - start : 0;
+        return Math.max(totalEvents.get() - eventRate * elapsedTime, 0);
+    }
+
+
+    String nextRecRequest() {
+        return batchSize.get() > 0 ? "next-batch-rec" : "next-rec";
+    }
+
+
     void requestEvent(int requestId, String type) {
         try {
             EngineData data = new EngineData();
             data.setData(EngineDataType.STRING.mimeType(), type);
             data.setCommunicationId(requestId);
+            data.setSlot(slot);
             orchestrator.send(application.composition(), data);
         } catch (ClaraException e) {
             throw new OrchestratorException("Could not send an event request to = " + name(), e);
@@ -504,6 +1186,7 @@ class WorkerNode {
         final int prime = 31;
         int result = 1;
         result = prime * result + application.hashCode();
+        result = prime * result + slot;
         return result;
     }
 
@@ -523,6 +1206,9 @@ class WorkerNode {
         if (!application.equals(other.application)) {
             return false;
         }
+        if (slot != other.slot) {
+            return false;
+        }
         return true;
     }
 
@@ -22,10 +22,15 @@
 
 package org.jlab.clara.std.services;
 
+import java.io.IOException;
 import java.nio.ByteOrder;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jlab.clara.base.ClaraUtil;
@@ -36,6 +41,49 @@ import org.json.JSONObject;
 
 /**
  * An abstract reader service that reads events from the configured input file.
+ * <p>
+ * The events can be read ahead of the requests by a background thread,
+ * setting the {@code prefetch} option to the number of events to keep ready
+ * when the file is opened. By default the events are read on demand.
+ * The {@code prefetch-stats} request returns the hit rate and the average
+ * occupancy of the prefetched events of the file, as JSON.
+ * <p>
+ * With the {@code index} option, the number of events of the file is saved
+ * into a {@code <file>.claraidx} sidecar the first time the file is opened,
+ * and read back from the sidecar in later openings of the same file.
+ * <p>
+ * A {@code next-batch} request returns up to {@code batch_size} events
+ * (16 by default) in a single {@link EngineDataType#batchOf batch}, instead of
+ * a single event per request.
+ * <p>
+ * Several files can be open at the same time, each one in its own slot,
+ * given by the {@code slot} option of the {@code open} and {@code close}
+ * actions (0 by default). The requests are served from the file of the slot
+ * set in the {@link EngineData#getSlot metadata} of the request, and the
+ * events keep that slot. Each slot has its own event limits and end-of-file
+ * accounting, so a new file can be started while the events of the previous
+ * file are still being processed.
+ * <p>
+ * With the {@code shards} option, the events of the file are split into the
+ * given number of shards, each one with its own reader of the file. The
+ * {@code shard_mode} option sets how the events are split: {@code interleaved}
+ * (the default, the file is split into blocks of {@code batch_size} events,
+ * and shard {@code i} reads every K-th block starting from block {@code i})
+ * or {@code contiguous} (every shard reads a consecutive range).
+ * The requests are balanced across the shards, and the events of different
+ * shards are read in parallel when the subclass overrides
+ * {@link #readEvent(Object, int)} to use the given reader. Prefetching is
+ * not used with more than one shard.
+ * <p>
+ * The {@code window} action limits the number of requests in flight for the
+ * file of the slot (no limit by default). While the window is full, the
+ * requests coming back from the writer are retired with a
+ * {@code Request retired} error instead of reading new events, so the
+ * orchestrator can reduce the requests in flight without stopping the file.
+ * <p>
+ * With the {@code event_timeout} option (in milliseconds), every event read
+ * from the file gets a {@link EngineData#setDeadline deadline}, so the
+ * services drop the events that could not be processed in time.
  *
  * @param <Reader> the class for the user-defined reader of the given data-type
  */
@@ -43,38 +91,58 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
 
     private static final String CONF_ACTION = "action";
     private static final String CONF_FILENAME = "file";
+    private static final String CONF_SLOT = "slot";
 
     private static final String CONF_ACTION_OPEN = "open";
     private static final String CONF_ACTION_CLOSE = "close";
+    private static final String CONF_ACTION_WINDOW = "window";
 
     private static final String CONF_EVENTS_SKIP = "skip";
     private static final String CONF_EVENTS_MAX = "max";
+    private static final String CONF_PREFETCH = "prefetch";
+    private static final String CONF_INDEX = "index";
+    private static final String CONF_BATCH_SIZE = "batch_size";
+    private static final String CONF_SHARDS = "shards";
+    private static final String CONF_SHARD_MODE = "shard_mode";
+    private static final String CONF_WINDOW = "window";
+    private static final String CONF_EVENT_TIMEOUT = "event_timeout";
+
+    private static final String SHARD_MODE_INTERLEAVED = "interleaved";
+    private static final String SHARD_MODE_CONTIGUOUS = "contiguous";
+
+    private static final int MAX_SLOTS = 64;
+    private static final int MAX_SHARDS = 64;
+    private static final int MAX_PREFETCH = 100_000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final int DEFAULT_BATCH_SIZE = 16;
+    private static final int MAX_WINDOW = 100_000;
 
     private static final String REQUEST_NEXT = "next";
     private static final String REQUEST_NEXT_REC = "next-rec";
+    private static final String REQUEST_NEXT_BATCH = "next-batch";
+    private static final String REQUEST_NEXT_BATCH_REC = "next-batch-rec";
     private static final String REQUEST_ORDER = "order";
     private static final String REQUEST_COUNT = "count";
+    private static final String REQUEST_PREFETCH_STATS = "prefetch-stats";
 
-    private static final String NO_NAME = "";
     private static final String NO_FILE = "No open file";
     private static final String END_OF_FILE = "End of file";
+    private static final String REQUEST_RETIRED = "Request retired";
 
     private static final int EOF_NOT_FROM_WRITER = 0;
     private static final int EOF_WAITING_REC = -1;
 
-    private String fileName = NO_NAME;
-    private String openError = NO_FILE;
-
-    /** The reader object. */
+    /**
+     * The reader object.
+     * When several files are open, this is the reader of the file being
+     * accessed by the current call to the abstract methods.
+     */
     protected Reader reader;
     private final Object readerLock = new Object();
+    private final Object ioLock = new Object();
 
-    private int currentEvent;
-    private int lastEvent;
-    private int eventCount;
-
-    private Set<Integer> processingEvents = new HashSet<>();
-    private int eofRequestCount;
+    // guarded by readerLock
+    private final Map<Integer, ReaderSlot> slots = new HashMap<>();
 
 
     @Override
@@ -85,10 +153,15 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
             JSONObject data = new JSONObject(source);
             if (data.has(CONF_ACTION) && data.has(CONF_FILENAME)) {
                 String action = data.getString(CONF_ACTION);
-                if (action.equals(CONF_ACTION_OPEN)) {
-                    openFile(data);
+                int slot = data.optInt(CONF_SLOT, 0);
+                if (slot < 0 || slot >= MAX_SLOTS) {
+                    logger.error("config: invalid value for '{}': {}", CONF_SLOT, slot);
+                } else if (action.equals(CONF_ACTION_OPEN)) {
+                    openFile(slot, data);
                 } else if (action.equals(CONF_ACTION_CLOSE)) {
-                    closeFile(data);
+                    closeFile(slot, data);
+                } else if (action.equals(CONF_ACTION_WINDOW)) {
+                    setWindow(slot, data);
                 } else {
                     logger.error("config: wrong '{}' parameter value = {}", CONF_ACTION, action);
                 }
@@ -103,42 +176,180 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
     }
 
 
-    private void openFile(JSONObject configData) {
+    private void openFile(int id, JSONObject configData) {
         synchronized (readerLock) {
-            if (reader != null) {
-                closeFile();
+            ReaderSlot previous = slots.remove(id);
+            if (previous != null) {
+                closeFile(previous);
             }
-            fileName = configData.getString(CONF_FILENAME);
-            logger.info("request to open file {}", fileName);
+            ReaderSlot slot = new ReaderSlot(id, configData.getString(CONF_FILENAME));
+            logger.info("request to open file {}", slot.fileName);
             try {
-                reader = createReader(Paths.get(fileName), configData);
-                setLimits(configData);
-                logger.info("opened file {}", fileName);
+                synchronized (ioLock) {
+                    slot.reader = createReader(Paths.get(slot.fileName), configData);
+                    reader = slot.reader;
+                }
+                setLimits(slot, configData);
+                createShards(slot, configData);
+                startPrefetch(slot, configData);
+                slots.put(id, slot);
+                logger.info("opened file {}", slot.fileName);
             } catch (EventReaderException e) {
-                logger.error("could not open file {}", fileName, e);
-                fileName = null;
+                logger.error("could not open file {}", slot.fileName, e);
+                closeReaders(slot);
             }
         }
     }
 
 
-    private void setLimits(JSONObject configData) throws EventReaderException {
-        eventCount = readEventCount();
-        int skipEvents = getValue(configData, CONF_EVENTS_SKIP, 0, 0, eventCount);
+    private void setLimits(ReaderSlot slot, JSONObject configData) throws EventReaderException {
+        slot.eventCount = getEventCount(slot, configData);
+        int skipEvents = getValue(configData, CONF_EVENTS_SKIP, 0, 0, slot.eventCount);
         if (skipEvents != 0) {
             logger.info("config: skip first {} events", skipEvents);
         }
-        currentEvent = skipEvents;
+        slot.firstEvent = skipEvents;
 
-        int remEvents = eventCount - skipEvents;
+        int remEvents = slot.eventCount - skipEvents;
         int maxEvents = getValue(configData, CONF_EVENTS_MAX, remEvents, 0, remEvents);
         if (maxEvents != remEvents) {
             logger.info("config: read {} events%n", maxEvents);
         }
-        lastEvent = skipEvents + maxEvents;
+        slot.lastEvent = skipEvents + maxEvents;
+
+        slot.batchSize = getValue(configData, CONF_BATCH_SIZE,
+                                  DEFAULT_BATCH_SIZE, 1, MAX_BATCH_SIZE);
+
+        slot.eventTimeout = Math.max(configData.optLong(CONF_EVENT_TIMEOUT, 0), 0);
+    }
+
+
+    private int getEventCount(ReaderSlot slot, JSONObject configData)
+            throws EventReaderException {
+        if (!configData.optBoolean(CONF_INDEX)) {
+            return withReader(slot, this::readEventCount);
+        }
+        Path file = Paths.get(slot.fileName);
+        try {
+            EventIndexFile sidecar = EventIndexFile.read(file);
+            if (sidecar != null) {
+                logger.info("config: read event count from {}", EventIndexFile.sidecar(file));
+                return sidecar.count();
+            }
+        } catch (IOException e) {
+            logger.warn("config: could not read index of file {}: {}",
+                        slot.fileName, e.getMessage());
+        }
+        int count = withReader(slot, this::readEventCount);
+        EventIndex index = withReader(slot, this::getEventIndex);
+        if (index != null && index.count() != count) {
+            logger.warn("config: index of file {} has {} events, not {}",
+                        slot.fileName, index.count(), count);
+            index = null;
+        }
+        try {
+            EventIndexFile.write(file, count, index);
+        } catch (IOException e) {
+            logger.warn("config: could not write index of file {}: {}",
+                        slot.fileName, e.getMessage());
+        }
+        return count;
+    }
+
+
+    private void createShards(ReaderSlot slot, JSONObject configData)
+            throws EventReaderException {
+        int numShards = getValue(configData, CONF_SHARDS, 1, 1, MAX_SHARDS);
+        int numEvents = slot.lastEvent - slot.firstEvent;
+        if (numShards > Math.max(numEvents, 1)) {
+            numShards = Math.max(numEvents, 1);
+        }
+        String mode = configData.optString(CONF_SHARD_MODE, SHARD_MODE_INTERLEAVED);
+        boolean interleaved = true;
+        if (mode.equals(SHARD_MODE_CONTIGUOUS)) {
+            interleaved = false;
+        } else if (!mode.equals(SHARD_MODE_INTERLEAVED)) {
+            logger.error("config: invalid value for '{}': {}", CONF_SHARD_MODE, mode);
+        }
+        if (numShards > 1) {
+            logger.info("config: read events from {} {} shards", numShards,
+                        interleaved ? SHARD_MODE_INTERLEAVED : SHARD_MODE_CONTIGUOUS);
+        }
+        for (int i = 0; i < numShards; i++) {
+            ReaderShard shard;
+            if (interleaved && numShards > 1) {
+                int blockSize = slot.batchSize;
+                int first = (int) Math.min(slot.firstEvent + (long) i * blockSize, slot.lastEvent);
+                shard = new ReaderShard(i, first, slot.lastEvent, blockSize, numShards);
+            } else {
+                int first = slot.firstEvent + (int) ((long) numEvents * i / numShards);
+                int last = slot.firstEvent + (int) ((long) numEvents * (i + 1) / numShards);
+                shard = new ReaderShard(i, first, last, Math.max(last - first, 1), 1);
+            }
+            if (i == 0) {
+                shard.reader = slot.reader;
+            } else {
+                synchronized (ioLock) {
+                    shard.reader = createReader(Paths.get(slot.fileName), configData);
+                }
+            }
+            slot.shards.add(shard);
+        }
+    }
+
+
+    /**
+     * Gets the position of the events in the opened file, to be saved into
+     * the index sidecar of the file. By default the position of the events is
+     * unknown and only the number of events is saved.
+     *
+     * @return the index of the opened file, or null if it is not available
+     */
+    protected EventIndex getEventIndex() {
+        return null;
+    }
+
+
+    private void startPrefetch(ReaderSlot slot, JSONObject configData) {
+        int prefetch = getValue(configData, CONF_PREFETCH, 0, 0, MAX_PREFETCH);
+        if (prefetch > 0 && slot.shards.size() > 1) {
+            logger.warn("config: prefetch is not used with shards");
+        } else if (prefetch > 0) {
+            logger.info("config: prefetch {} events", prefetch);
+            String name = slot.id == 0 ? getName() : getName() + "-" + slot.id;
+            Reader shardReader = slot.reader;
+            slot.prefetcher = new EventPrefetcher(name, n -> readEvent(shardReader, n),
+                                                  prefetch, slot.firstEvent, slot.lastEvent);
+            slot.prefetcher.start();
+        }
+    }
 
-        processingEvents.clear();
-        eofRequestCount = 0;
+
+    private void stopPrefetch(ReaderSlot slot) {
+        EventPrefetcher prefetcher = slot.prefetcher;
+        if (prefetcher != null) {
+            prefetcher.stop();
+            logger.info("prefetch: {} hits  {} misses  hit rate = {}%  "
+                        + "average occupancy = {}/{}",
+                        prefetcher.hits(), prefetcher.misses(),
+                        String.format("%.1f", prefetcher.hitRate() * 100),
+                        String.format("%.1f", prefetcher.averageOccupancy()),
+                        prefetcher.capacity());
+            slot.prefetcher = null;
+        }
+    }
+
+
+    /**
+     * Runs an abstract method on the reader of the given slot.
+     * The calls are serialized, since the subclass accesses the reader
+     * through the shared {@link #reader} field.
+     */
+    private <T> T withReader(ReaderSlot slot, ReaderCall<T> call) throws EventReaderException {
+        synchronized (ioLock) {
+            reader = slot.reader;
+            return call.call();
+        }
     }
 
 
@@ -158,25 +369,72 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
     }
 
 
-    private void closeFile(JSONObject configData) {
+    private void setWindow(int id, JSONObject configData) {
         synchronized (readerLock) {
-            fileName = configData.getString(CONF_FILENAME);
+            ReaderSlot slot = slots.get(id);
+            if (slot == null) {
+                logger.error("config: no open file on slot {}", id);
+                return;
+            }
+            slot.window = getValue(configData, CONF_WINDOW, slot.window, 0, MAX_WINDOW);
+        }
+    }
+
+
+    private void closeFile(int id, JSONObject configData) {
+        synchronized (readerLock) {
+            String fileName = configData.getString(CONF_FILENAME);
             logger.info("request to close file {}", fileName);
-            if (reader != null) {
-                closeFile();
+            ReaderSlot slot = slots.remove(id);
+            if (slot != null) {
+                closeFile(slot);
             } else {
                 logger.error("file {} not open", fileName);
             }
-            openError = NO_FILE;
-            fileName = null;
         }
     }
 
 
-    private void closeFile() {
-        closeReader();
-        reader = null;
-        logger.info("closed file {}", fileName);
+    private void closeFile(ReaderSlot slot) {
+        stopPrefetch(slot);
+        closeReaders(slot);
+        logger.info("closed file {}", slot.fileName);
+    }
+
+
+    private void closeReaders(ReaderSlot slot) {
+        for (ReaderShard shard : slot.shards) {
+            // wait for any event being read from the shard
+            synchronized (shard.lock) {
+                if (shard.reader != null && shard.reader != slot.reader) {
+                    closeReader(shard.reader);
+                }
+                shard.reader = null;
+            }
+        }
+        if (slot.reader != null) {
+            closeReader(slot.reader);
+            slot.reader = null;
+        }
+    }
+
+
+    private void closeReader(Reader shardReader) {
+        synchronized (ioLock) {
+            reader = shardReader;
+            closeReader();
+            reader = null;
+        }
+    }
+
+
+    private void closeAll() {
+        synchronized (readerLock) {
+            for (ReaderSlot slot : slots.values()) {
+                closeFile(slot);
+            }
+            slots.clear();
+        }
     }
 
 
@@ -204,13 +462,18 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
         if (dt.equalsIgnoreCase(EngineDataType.STRING.mimeType())) {
             String request = (String) input.getData();
             if (request.equals(REQUEST_NEXT) || request.equals(REQUEST_NEXT_REC)) {
-                getNextEvent(input, output);
+                getNextEvent(input, output, false);
+            } else if (request.equals(REQUEST_NEXT_BATCH)
+                    || request.equals(REQUEST_NEXT_BATCH_REC)) {
+                getNextEvent(input, output, true);
             } else if (request.equals(REQUEST_ORDER)) {
                 logger.info("execute request {}", REQUEST_ORDER);
-                getFileByteOrder(output);
+                getFileByteOrder(input, output);
             } else if (request.equals(REQUEST_COUNT)) {
                 logger.info("execute request {}", REQUEST_COUNT);
-                getEventCount(output);
+                getEventCount(input, output);
+            } else if (request.equals(REQUEST_PREFETCH_STATS)) {
+                getPrefetchStats(input, output);
             } else {
                 ServiceUtils.setError(output, String.format("Wrong input data = '%s'", request));
             }
@@ -218,6 +481,7 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
             String errorMsg = String.format("Wrong input type '%s'", dt);
             ServiceUtils.setError(output, errorMsg);
         }
+        output.setSlot(input.getSlot());
 
         return output;
     }
@@ -225,66 +489,157 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
 
     private boolean isReconstructionRequest(EngineData input) {
         String requestType = (String) input.getData();
-        return requestType.equalsIgnoreCase(REQUEST_NEXT_REC);
+        return requestType.equalsIgnoreCase(REQUEST_NEXT_REC)
+                || requestType.equalsIgnoreCase(REQUEST_NEXT_BATCH_REC);
     }
 
 
-    private void getNextEvent(EngineData input, EngineData output) {
+    private void getNextEvent(EngineData input, EngineData output, boolean batch) {
+        ReaderSlot slot;
+        ReaderShard shard;
+        int count;
         synchronized (readerLock) {
+            slot = slots.get(input.getSlot());
             boolean fromRec = isReconstructionRequest(input);
+            if (slot == null) {
+                ServiceUtils.setError(output, NO_FILE, 1);
+                return;
+            }
             if (fromRec) {
-                processingEvents.remove(input.getCommunicationId());
+                slot.processingEvents.remove(input.getCommunicationId());
             }
-            if (reader == null) {
-                ServiceUtils.setError(output, openError, 1);
-            } else if (currentEvent < lastEvent) {
-                returnNextEvent(output);
-            } else {
-                ServiceUtils.setError(output, END_OF_FILE, 1);
-                if (fromRec) {
-                    if (processingEvents.isEmpty()) {
-                        eofRequestCount++;
-                        ServiceUtils.setError(output, END_OF_FILE, eofRequestCount + 1);
-                        output.setData(EngineDataType.SFIXED32.mimeType(), eofRequestCount);
-                    } else {
-                        output.setData(EngineDataType.SFIXED32.mimeType(), EOF_WAITING_REC);
-                    }
+            shard = slot.nextShard();
+            if (shard == null) {
+                returnEndOfFile(slot, fromRec, output);
+                return;
+            }
+            if (fromRec && isWindowFull(slot)) {
+                ServiceUtils.setError(output, REQUEST_RETIRED, 1);
+                return;
+            }
+            count = batch ? Math.min(slot.batchSize, shard.available) : 1;
+            shard.available -= count;
+            shard.requests++;
+            slot.readingRequests++;
+        }
+
+        // the events are read outside the reader lock,
+        // so different shards can be read in parallel
+        List<Object> events = new ArrayList<>(count);
+        int firstEvent;
+        int readEvents = 0;
+        synchronized (shard.lock) {
+            firstEvent = shard.nextEvent;
+            // a batch must have consecutive events, so it ends with the block
+            int blockEvents = Math.min(count, shard.remainingInBlock());
+            int eventNumber = firstEvent;
+            try {
+                for (int i = 0; i < blockEvents; i++) {
+                    eventNumber = shard.advance();
+                    readEvents++;
+                    events.add(readNextEvent(slot, shard, eventNumber));
+                }
+            } catch (EventReaderException e) {
+                String msg = String.format("Error requesting event %d from file %s%n%n%s",
+                        eventNumber, slot.fileName, ClaraUtil.reportException(e));
+                if (events.isEmpty()) {
+                    ServiceUtils.setError(output, msg, 1);
                 } else {
-                    output.setData(EngineDataType.SFIXED32.mimeType(), EOF_NOT_FROM_WRITER);
+                    // return the events already read, the failed event is skipped
+                    logger.error(msg);
                 }
             }
         }
+        output.setCommunicationId(firstEvent);
+
+        synchronized (readerLock) {
+            // the events not read are left for the next requests
+            shard.available += count - readEvents;
+            shard.requests--;
+            slot.readingRequests--;
+            if (!events.isEmpty()) {
+                slot.processingEvents.add(firstEvent);
+            }
+        }
+        if (!events.isEmpty()) {
+            if (batch) {
+                output.setData(EngineDataType.batchOf(getDataType()).mimeType(), events);
+            } else {
+                output.setData(getDataType().toString(), events.get(0));
+            }
+            output.setDescription("data");
+            if (slot.eventTimeout > 0) {
+                // every event has its own time, starting when it is read
+                output.setDeadline(System.currentTimeMillis() + slot.eventTimeout);
+            }
+        }
+    }
+
+
+    private boolean isWindowFull(ReaderSlot slot) {
+        // the request coming back is not counted anymore
+        int inFlight = slot.processingEvents.size() + slot.readingRequests;
+        return slot.window > 0 && inFlight >= slot.window;
+    }
+
+
+    private void returnEndOfFile(ReaderSlot slot, boolean fromRec, EngineData output) {
+        ServiceUtils.setError(output, END_OF_FILE, 1);
+        if (fromRec) {
+            if (slot.processingEvents.isEmpty() && slot.readingRequests == 0) {
+                slot.eofRequestCount++;
+                ServiceUtils.setError(output, END_OF_FILE, slot.eofRequestCount + 1);
+                output.setData(EngineDataType.SFIXED32.mimeType(), slot.eofRequestCount);
+            } else {
+                output.setData(EngineDataType.SFIXED32.mimeType(), EOF_WAITING_REC);
+            }
+        } else {
+            output.setData(EngineDataType.SFIXED32.mimeType(), EOF_NOT_FROM_WRITER);
+        }
     }
 
 
-    private void returnNextEvent(EngineData output) {
+    private Object readNextEvent(ReaderSlot slot, ReaderShard shard, int eventNumber)
+            throws EventReaderException {
+        if (shard.reader == null) {
+            throw new EventReaderException("file " + slot.fileName + " has been closed");
+        }
+        EventPrefetcher prefetcher = slot.prefetcher;
+        if (prefetcher == null) {
+            return readEvent(shard.reader, eventNumber);
+        }
         try {
-            Object event = readEvent(currentEvent);
-            output.setData(getDataType().toString(), event);
-            output.setDescription("data");
-            processingEvents.add(currentEvent);
-        } catch (EventReaderException e) {
-            String msg = String.format("Error requesting event %d from file %s%n%n%s",
-                    currentEvent, fileName, ClaraUtil.reportException(e));
-            ServiceUtils.setError(output, msg, 1);
-        } finally {
-            output.setCommunicationId(currentEvent);
-            currentEvent++;
+            EventPrefetcher.Event event = prefetcher.next();
+            Object data = event.get();
+            if (event.number() != eventNumber) {
+                throw new EventReaderException("prefetched event " + event.number()
+                        + " does not match requested event " + eventNumber);
+            }
+            return data;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventReaderException("interrupted while waiting for prefetched event");
         }
     }
 
 
-    private void getFileByteOrder(EngineData output) {
+    private void getFileByteOrder(EngineData input, EngineData output) {
         synchronized (readerLock) {
-            if (reader == null) {
-                ServiceUtils.setError(output, openError, 1);
+            ReaderSlot slot = slots.get(input.getSlot());
+            if (slot == null) {
+                ServiceUtils.setError(output, NO_FILE, 1);
             } else {
                 try {
-                    output.setData(EngineDataType.STRING.mimeType(), readByteOrder().toString());
+                    ByteOrder order;
+                    // the first shard uses the same reader
+                    synchronized (slot.shards.get(0).lock) {
+                        order = withReader(slot, this::readByteOrder);
+                    }
+                    output.setData(EngineDataType.STRING.mimeType(), order.toString());
                     output.setDescription("byte order");
                 } catch (EventReaderException e) {
                     String msg = String.format("Error requesting byte-order from file %s%n%n%s",
-                            fileName, ClaraUtil.reportException(e));
+                            slot.fileName, ClaraUtil.reportException(e));
                     ServiceUtils.setError(output, msg, 1);
                 }
             }
@@ -292,18 +647,35 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
     }
 
 
-    private void getEventCount(EngineData output) {
+    private void getEventCount(EngineData input, EngineData output) {
         synchronized (readerLock) {
-            if (reader == null) {
-                ServiceUtils.setError(output, openError, 1);
+            ReaderSlot slot = slots.get(input.getSlot());
+            if (slot == null) {
+                ServiceUtils.setError(output, NO_FILE, 1);
             } else {
-                output.setData(EngineDataType.SFIXED32.mimeType(), eventCount);
+                output.setData(EngineDataType.SFIXED32.mimeType(), slot.eventCount);
                 output.setDescription("event count");
             }
         }
     }
 
 
+    private void getPrefetchStats(EngineData input, EngineData output) {
+        synchronized (readerLock) {
+            ReaderSlot slot = slots.get(input.getSlot());
+            if (slot == null) {
+                ServiceUtils.setError(output, NO_FILE, 1);
+            } else {
+                EventPrefetcher prefetcher = slot.prefetcher;
+                JSONObject stats = prefetcher != null ? prefetcher.stats() : new JSONObject();
+                stats.put("enabled", prefetcher != null);
+                output.setData(EngineDataType.JSON.mimeType(), stats.toString());
+                output.setDescription("prefetch stats");
+            }
+        }
+    }
+
+
     @Override
     public EngineData executeGroup(Set<EngineData> inputs) {
         return null;
@@ -337,6 +709,29 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
      */
     protected abstract Object readEvent(int eventNumber) throws EventReaderException;
 
+    /**
+     * Reads an event from the input file, using the given reader.
+     * <p>
+     * When the file is read from several shards, every shard calls this
+     * method with its own reader. The default implementation sets the
+     * {@link #reader} field and calls {@link #readEvent(int)}, so the events
+     * of all shards are read one at a time. Subclasses can override this
+     * method to use the given reader directly, so the events of different
+     * shards are read in parallel. The method is never called concurrently
+     * for the same reader.
+     *
+     * @param eventReader the reader of the shard
+     * @param eventNumber the index of the event in the file (starts from zero)
+     * @return the read event as a Java object
+     * @throws EventReaderException if the file could not be read
+     */
+    protected Object readEvent(Reader eventReader, int eventNumber) throws EventReaderException {
+        synchronized (ioLock) {
+            reader = eventReader;
+            return readEvent(eventNumber);
+        }
+    }
+
     /**
      * Gets the CLARA engine data-type for the type of the events.
      * The data-type will be used to serialize the events when the engine data
@@ -358,27 +753,140 @@ public abstract class AbstractEventReaderService<Reader> extends AbstractService
     public Set<EngineDataType> getOutputDataTypes() {
         return ClaraUtil.buildDataTypes(
                 getDataType(),
+                EngineDataType.batchOf(getDataType()),
                 EngineDataType.STRING,
-                EngineDataType.SFIXED32);
+                EngineDataType.SFIXED32,
+                EngineDataType.JSON);
     }
 
 
     @Override
     public void reset() {
-        synchronized (readerLock) {
-            if (reader != null) {
-                closeFile();
-            }
-        }
+        closeAll();
     }
 
 
     @Override
     public void destroy() {
-        synchronized (readerLock) {
-            if (reader != null) {
-                closeFile();
+        closeAll();
+    }
+
+
+    @FunctionalInterface
+    private interface ReaderCall<T> {
+        T call() throws EventReaderException;
+    }
+
+
+    /**
+     * The state of an open input file.
+     * Guarded by the reader lock, unless noted.
+     */
+    private final class ReaderSlot {
+
+        private final int id;
+        private final String fileName;
+
+        private Reader reader;
+        private volatile EventPrefetcher prefetcher;
+        private final List<ReaderShard> shards = new ArrayList<>();
+        private int shardIndex;
+
+        private int firstEvent;
+        private int lastEvent;
+        private int eventCount;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+
+        private final Set<Integer> processingEvents = new HashSet<>();
+        private int readingRequests;
+        private int eofRequestCount;
+        private int window;
+        private long eventTimeout;
+
+        ReaderSlot(int id, String fileName) {
+            this.id = id;
+            this.fileName = fileName;
+        }
+
+        /**
+         * Selects the shard for the next request: the one with events left
+         * and the fewest requests being read, starting from the shard after
+         * the last selected one.
+         *
+         * @return the selected shard, or null if all events have been requested
+         */
+        ReaderShard nextShard() {
+            ReaderShard selected = null;
+            int size = shards.size();
+            for (int i = 0; i < size; i++) {
+                ReaderShard shard = shards.get((shardIndex + i) % size);
+                if (shard.available > 0
+                        && (selected == null || shard.requests < selected.requests)) {
+                    selected = shard;
+                }
+            }
+            if (selected != null) {
+                shardIndex = (selected.index + 1) % size;
+            }
+            return selected;
+        }
+    }
+
+
+    /**
+     * The events of an input file read with its own reader.
+     * The shard reads blocks of consecutive events, skipping the blocks of
+     * the other shards between them.
+     */
+    private final class ReaderShard {
+
+        private final int index;
+        private final int firstEvent;
+        private final int lastEvent;
+        private final int blockSize;
+        private final int stride;
+        private final Object lock = new Object();
+
+        // guarded by lock
+        private Reader reader;
+        private int nextEvent;
+
+        // guarded by the reader lock
+        private int available;
+        private int requests;
+
+        ReaderShard(int index, int firstEvent, int lastEvent, int blockSize, int stride) {
+            this.index = index;
+            this.firstEvent = firstEvent;
+            this.lastEvent = lastEvent;
+            this.blockSize = blockSize;
+            this.stride = stride;
+            this.nextEvent = firstEvent;
+            long step = (long) stride * blockSize;
+            for (long start = firstEvent; start < lastEvent; start += step) {
+                available += (int) Math.min(blockSize, lastEvent - start);
+            }
+        }
+
+        /**
+         * Gets the number of events left in the current block.
+         */
+        int remainingInBlock() {
+            int inBlock = blockSize - (nextEvent - firstEvent) % blockSize;
+            return Math.min(inBlock, lastEvent - nextEvent);
+        }
+
+        /**
+         * Moves to the next event of the shard.
+         *
+         * @return the current event
+         */
+        int advance() {
+            int current = nextEvent++;
+            if ((nextEvent - firstEvent) % blockSize == 0) {
+                nextEvent += (stride - 1) * blockSize;
             }
+            return current;
         }
     }
 }
@@ -1,45 +1,462 @@
 package org.jlab.clara.std.services;
 
+import org.jlab.clara.base.ClaraUtil;
+import org.jlab.clara.base.core.ClaraConstants;
 import org.jlab.clara.engine.EngineData;
 import org.jlab.clara.engine.EngineDataType;
+import org.json.JSONObject;
 
+import java.nio.ByteOrder;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An abstract data streaming service that reads events from the stream of data.
+ * <p>
+ * The stream is an unbounded source of events, like a socket, a FIFO or a
+ * directory where the DAQ is writing new files. When the stream is opened,
+ * a background thread pulls the events continuously from the source and
+ * keeps them in a bounded buffer, that the {@code next} requests consume.
+ * <p>
+ * The flow is controlled by credits: every {@code next} (or {@code next-rec})
+ * request is a credit to push one event into the composition, so the
+ * orchestrator controls the number of events in flight, as with the reader
+ * service. When the buffer is full the source thread stops pulling events
+ * until the requests consume them. The {@code max_rate} option limits the
+ * number of events per second pulled from the source. With the
+ * {@code event_timeout} option (in milliseconds), every event pushed into the
+ * composition gets a {@link EngineData#setDeadline deadline}.
+ * <p>
+ * A request waits for a new event at most {@code idle_wait} milliseconds
+ * (1000 by default). If the source has no event by then, the request gets an
+ * {@code Event not ready} error, that the orchestrator requests again later.
+ * So an idle source does not keep the engines busy, and they are free to run
+ * the {@code close} request or the {@code stats} query.
+ * <p>
+ * When the source has no more events, or it fails, the requests get the
+ * same {@code End of file} replies as the reader service, so the orchestrator
+ * finishes the stream instead of requesting events again. The error of a
+ * failed source is logged, and shown by the {@code stats} request.
+ * <p>
+ * A {@code stats} request returns the throughput and latency counters of the
+ * stream as JSON. The latency is the time an event waited in the buffer.
  *
  * @param <Streamer> the class for the user-defined streamer of a given source
  */
-public class AbstractEventStreamerService<Streamer> extends AbstractService {
+public abstract class AbstractEventStreamerService<Streamer> extends AbstractService {
+
+    private static final String CONF_ACTION = "action";
+    private static final String CONF_ACTION_OPEN = "open";
+    private static final String CONF_ACTION_CLOSE = "close";
+
+    private static final String CONF_BUFFER = "buffer";
+    private static final String CONF_MAX_RATE = "max_rate";
+    private static final String CONF_EVENT_TIMEOUT = "event_timeout";
+    private static final String CONF_IDLE_WAIT = "idle_wait";
+
+    private static final String REQUEST_NEXT = "next";
+    private static final String REQUEST_NEXT_REC = "next-rec";
+    private static final String REQUEST_ORDER = "order";
+    private static final String REQUEST_STATS = "stats";
+
+    private static final String NO_STREAM = "No open stream";
+    private static final String END_OF_FILE = "End of file";
+
+    private static final int DEFAULT_BUFFER = 1000;
+    private static final long DEFAULT_IDLE_WAIT = 1000;
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private static final int EOF_NOT_FROM_WRITER = 0;
+    private static final int EOF_WAITING_REC = -1;
+
+    /** The streamer object. */
+    protected Streamer streamer;
+    private final Object streamerLock = new Object();
+
+    private volatile Stream stream;
 
 
     @Override
     public EngineData configure(EngineData input) {
+        final long startTime = System.currentTimeMillis();
+        if (input.getMimeType().equalsIgnoreCase(EngineDataType.JSON.mimeType())) {
+            String source = (String) input.getData();
+            JSONObject data = new JSONObject(source);
+            if (data.has(CONF_ACTION)) {
+                String action = data.getString(CONF_ACTION);
+                if (action.equals(CONF_ACTION_OPEN)) {
+                    openStream(data);
+                } else if (action.equals(CONF_ACTION_CLOSE)) {
+                    closeStream();
+                } else {
+                    logger.error("config: wrong '{}' parameter value = {}", CONF_ACTION, action);
+                }
+            } else {
+                logger.error("config: missing '{}' parameter", CONF_ACTION);
+            }
+        } else {
+            logger.error("config: wrong mime-type {}", input.getMimeType());
+        }
+        logger.info("config time: {} [ms]", System.currentTimeMillis() - startTime);
         return null;
     }
 
+
+    private void openStream(JSONObject configData) {
+        synchronized (streamerLock) {
+            if (stream != null) {
+                closeStream();
+            }
+            logger.info("request to open stream");
+            try {
+                streamer = createStreamer(configData);
+                int capacity = configData.optInt(CONF_BUFFER, DEFAULT_BUFFER);
+                double maxRate = configData.optDouble(CONF_MAX_RATE, 0);
+                long eventTimeout = Math.max(configData.optLong(CONF_EVENT_TIMEOUT, 0), 0);
+                long idleWait = configData.optLong(CONF_IDLE_WAIT, DEFAULT_IDLE_WAIT);
+                if (capacity <= 0) {
+                    logger.error("config: invalid value for '{}': {}", CONF_BUFFER, capacity);
+                    capacity = DEFAULT_BUFFER;
+                }
+                if (idleWait <= 0) {
+                    logger.error("config: invalid value for '{}': {}", CONF_IDLE_WAIT, idleWait);
+                    idleWait = DEFAULT_IDLE_WAIT;
+                }
+                stream = new Stream(capacity, maxRate, eventTimeout, idleWait);
+                stream.start();
+                logger.info("opened stream  buffer = {}  max rate = {} events/s",
+                            capacity, maxRate > 0 ? maxRate : "unlimited");
+            } catch (EventStreamerException e) {
+                logger.error("could not open stream", e);
+                streamer = null;
+            }
+        }
+    }
+
+
+    private void closeStream() {
+        synchronized (streamerLock) {
+            Stream current = stream;
+            if (current == null) {
+                logger.error("stream not open");
+                return;
+            }
+            current.stop();
+            closeStreamer();
+            streamer = null;
+            stream = null;
+            logger.info("closed stream  {}", current.stats());
+        }
+    }
+
+
+    /**
+     * Creates a new streamer and connects it to the source of events.
+     *
+     * @param opts extra options for the streamer
+     * @return a new streamer ready to receive events from the source
+     * @throws EventStreamerException if the streamer could not be created
+     */
+    protected abstract Streamer createStreamer(JSONObject opts) throws EventStreamerException;
+
+    /**
+     * Closes the streamer and disconnects it from the source.
+     */
+    protected abstract void closeStreamer();
+
+    /**
+     * Receives the next event from the source, waiting until it is available.
+     * This is only called by the background thread of the stream.
+     * The event should be a Java object with the same type as the one defined
+     * by the CLARA engine data-type returned by {@link #getDataType()}.
+     *
+     * @return the received event as a Java object,
+     *         or null if the source has no more events
+     * @throws EventStreamerException if the event could not be received
+     * @throws InterruptedException if the stream is being closed
+     */
+    protected abstract Object receiveEvent() throws EventStreamerException, InterruptedException;
+
+    /**
+     * Gets the CLARA engine data-type for the type of the events.
+     *
+     * @return the data-type of the events
+     */
+    protected abstract EngineDataType getDataType();
+
+    /**
+     * Gets the byte order of the events received from the source.
+     * The default is big-endian.
+     *
+     * @return the byte order of the events
+     */
+    protected ByteOrder getByteOrder() {
+        return ByteOrder.BIG_ENDIAN;
+    }
+
+
     @Override
     public EngineData execute(EngineData input) {
-        return null;
+        EngineData output = new EngineData();
+
+        String dt = input.getMimeType();
+        if (dt.equalsIgnoreCase(EngineDataType.STRING.mimeType())) {
+            String request = (String) input.getData();
+            if (request.equals(REQUEST_NEXT) || request.equals(REQUEST_NEXT_REC)) {
+                getNextEvent(input, output);
+            } else if (request.equals(REQUEST_ORDER)) {
+                output.setData(EngineDataType.STRING.mimeType(), getByteOrder().toString());
+                output.setDescription("byte order");
+            } else if (request.equals(REQUEST_STATS)) {
+                getStats(output);
+            } else {
+                ServiceUtils.setError(output, String.format("Wrong input data = '%s'", request));
+            }
+        } else {
+            String errorMsg = String.format("Wrong input type '%s'", dt);
+            ServiceUtils.setError(output, errorMsg);
+        }
+
+        return output;
+    }
+
+
+    private void getNextEvent(EngineData input, EngineData output) {
+        Stream current = stream;
+        if (current == null) {
+            ServiceUtils.setError(output, NO_STREAM, 1);
+            return;
+        }
+        boolean fromRec = input.getData().equals(REQUEST_NEXT_REC);
+        try {
+            current.nextEvent(input.getCommunicationId(), fromRec, output);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ServiceUtils.setError(output, "interrupted while waiting for the stream", 1);
+        }
     }
 
+
+    private void getStats(EngineData output) {
+        Stream current = stream;
+        if (current == null) {
+            ServiceUtils.setError(output, NO_STREAM, 1);
+            return;
+        }
+        output.setData(EngineDataType.JSON.mimeType(), current.stats().toString());
+        output.setDescription("stream stats");
+    }
+
+
     @Override
     public Set<EngineDataType> getInputDataTypes() {
-        return null;
+        return ClaraUtil.buildDataTypes(
+                EngineDataType.JSON,
+                EngineDataType.STRING);
     }
 
     @Override
     public Set<EngineDataType> getOutputDataTypes() {
-        return null;
+        return ClaraUtil.buildDataTypes(
+                getDataType(),
+                EngineDataType.JSON,
+                EngineDataType.STRING,
+                EngineDataType.SFIXED32);
     }
 
     @Override
     public void reset() {
-
+        synchronized (streamerLock) {
+            if (stream != null) {
+                closeStream();
+            }
+        }
     }
 
     @Override
     public void destroy() {
+        synchronized (streamerLock) {
+            if (stream != null) {
+                closeStream();
+            }
+        }
+    }
+
+
+    private static final class StreamEvent {
+
+        private final Object data;
+        private final long receivedTime;
+
+        private StreamEvent(Object data, long receivedTime) {
+            this.data = data;
+            this.receivedTime = receivedTime;
+        }
+    }
+
+
+    /**
+     * The events pulled from the open source.
+     */
+    private final class Stream {
+
+        private final BlockingQueue<StreamEvent> buffer;
+        private final long minInterval;
+        private final long eventTimeout;
+        private final long idleWait;
+        private final Thread thread;
+        private final long startTime = System.nanoTime();
+
+        private volatile boolean finished = false;
+        private volatile String error;
+
+        private final AtomicLong eventNumber = new AtomicLong();
+        private final AtomicLong receivedEvents = new AtomicLong();
+        private final AtomicLong deliveredEvents = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+        private final AtomicLong idleReplies = new AtomicLong();
+
+        // guarded by this
+        private final Set<Integer> processingEvents = new HashSet<>();
+        private int eofRequestCount;
+
+        Stream(int capacity, double maxRate, long eventTimeout, long idleWait) {
+            this.buffer = new ArrayBlockingQueue<>(capacity);
+            this.minInterval = maxRate > 0 ? (long) (1e9 / maxRate) : 0;
+            this.eventTimeout = eventTimeout;
+            this.idleWait = idleWait;
+            this.thread = new Thread(this::pullEvents, getName() + "-stream");
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void pullEvents() {
+            long nextTime = System.nanoTime();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (minInterval > 0) {
+                        long delay = nextTime - System.nanoTime();
+                        if (delay > 0) {
+                            TimeUnit.NANOSECONDS.sleep(delay);
+                        }
+                        nextTime = Math.max(nextTime, System.nanoTime()) + minInterval;
+                    }
+                    Object event = receiveEvent();
+                    if (event == null) {
+                        logger.info("end of stream");
+                        break;
+                    }
+                    receivedEvents.incrementAndGet();
+                    buffer.put(new StreamEvent(event, System.nanoTime()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (EventStreamerException | RuntimeException e) {
+                logger.error("could not receive events from the stream", e);
+                error = String.format("Error receiving events from the stream%n%n%s",
+                                      ClaraUtil.reportException(e));
+            } finally {
+                finished = true;
+            }
+        }
+
+        void nextEvent(int requestId, boolean fromRec, EngineData output)
+                throws InterruptedException {
+            if (fromRec) {
+                synchronized (this) {
+                    processingEvents.remove(requestId);
+                }
+            }
+            long waitEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleWait);
+            while (true) {
+                long wait = Math.min(waitEnd - System.nanoTime(),
+                                     TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT_MS));
+                StreamEvent event = buffer.poll(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+                if (event != null) {
+                    returnEvent(event, output);
+                    return;
+                }
+                if (finished && buffer.isEmpty()) {
+                    returnEndOfStream(fromRec, output);
+                    return;
+                }
+                if (wait <= 0) {
+                    // free the engine, the orchestrator requests the event again
+                    idleReplies.incrementAndGet();
+                    ServiceUtils.setError(output, ClaraConstants.EVENT_NOT_READY, 1);
+                    return;
+                }
+            }
+        }
+
+        private void returnEvent(StreamEvent event, EngineData output) {
+            int id = (int) eventNumber.getAndIncrement();
+            long latency = System.nanoTime() - event.receivedTime;
+            totalLatency.addAndGet(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+            deliveredEvents.incrementAndGet();
+
+            output.setData(getDataType().toString(), event.data);
+            output.setDescription("data");
+            output.setCommunicationId(id);
+            if (eventTimeout > 0) {
+                output.setDeadline(System.currentTimeMillis() + eventTimeout);
+            }
+            synchronized (this) {
+                processingEvents.add(id);
+            }
+        }
+
+        private synchronized void returnEndOfStream(boolean fromRec, EngineData output) {
+            // a failed source also ends the stream: an error reply would be
+            // requested again by the orchestrator, with the source still failed
+            ServiceUtils.setError(output, END_OF_FILE, 1);
+            if (fromRec) {
+                if (processingEvents.isEmpty()) {
+                    eofRequestCount++;
+                    ServiceUtils.setError(output, END_OF_FILE, eofRequestCount + 1);
+                    output.setData(EngineDataType.SFIXED32.mimeType(), eofRequestCount);
+                } else {
+                    output.setData(EngineDataType.SFIXED32.mimeType(), EOF_WAITING_REC);
+                }
+            } else {
+                output.setData(EngineDataType.SFIXED32.mimeType(), EOF_NOT_FROM_WRITER);
+            }
+        }
 
+        JSONObject stats() {
+            long delivered = deliveredEvents.get();
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+            JSONObject stats = new JSONObject();
+            stats.put("received_events", receivedEvents.get());
+            stats.put("delivered_events", delivered);
+            stats.put("buffered_events", buffer.size());
+            stats.put("throughput", elapsed > 0 ? delivered / elapsed : 0);
+            stats.put("avg_latency_ms", delivered > 0 ? totalLatency.get() / 1e6 / delivered : 0);
+            stats.put("max_latency_ms", maxLatency.get() / 1e6);
+            stats.put("idle_replies", idleReplies.get());
+            stats.put("finished", finished);
+            if (error != null) {
+                stats.put("error", error);
+            }
+            return stats;
+        }
     }
 }
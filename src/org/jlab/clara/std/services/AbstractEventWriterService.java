@@ -26,17 +26,56 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jlab.clara.base.ClaraUtil;
 import org.jlab.clara.engine.EngineData;
 import org.jlab.clara.engine.EngineDataType;
 import org.jlab.clara.util.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  * An abstract writer service that writes all received events into the
  * configured output file.
+ * <p>
+ * The writer also accepts {@link EngineDataType#batchOf batches} of events.
+ * All the events of a batch are written in order, and the next batch is
+ * requested to the reader.
+ * <p>
+ * With the {@code write_behind} option, the received events are added into a
+ * queue of the given size and written by a background thread, so the request
+ * does not wait for the file I/O. The output is then flushed every
+ * {@code flush_events} events and/or every {@code flush_interval}
+ * milliseconds, and when the file is closed.
+ * <p>
+ * With the {@code ordered} option, the events are written in the same order
+ * as in the input file, using their communication ID (the event number set by
+ * the reader, starting from {@code first_event}). Events received ahead of
+ * time are kept in a reorder buffer. When the buffer holds more than
+ * {@code reorder_window} entries, the missing events are given up.
+ * <p>
+ * Several files can be open at the same time, each one in its own slot,
+ * given by the {@code slot} option of the {@code open} and {@code close}
+ * actions (0 by default). Every event is written into the file of the slot
+ * set in its {@link EngineData#getSlot metadata}, and the reply to the reader
+ * keeps that slot.
+ * <p>
+ * With the {@code roll_events} and/or {@code roll_bytes} options, the output
+ * is split into chunks of the given number of events or bytes, named after
+ * the output file: {@code out.hipo} is written as {@code out.part00000.hipo},
+ * {@code out.part00001.hipo}, etc. The size of a chunk is checked on disk,
+ * so the bytes buffered by the writer are not counted until they are written.
+ * <p>
+ * A JSON request with the {@code get_chunks} action returns the
+ * {@code chunks} completed since the last request for the given
+ * {@code slot}, so they can be saved while the writer keeps writing
+ * the next chunks.
  *
  * @param <Writer> the class for the user-defined writer of the given data-type
  */
@@ -44,26 +83,47 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
 
     private static final String CONF_ACTION = "action";
     private static final String CONF_FILENAME = "file";
+    private static final String CONF_SLOT = "slot";
 
     private static final String CONF_ACTION_OPEN = "open";
     private static final String CONF_ACTION_CLOSE = "close";
     private static final String CONF_ACTION_SKIP = "skip";
 
+    private static final String CONF_WRITE_BEHIND = "write_behind";
+    private static final String CONF_FLUSH_EVENTS = "flush_events";
+    private static final String CONF_FLUSH_INTERVAL = "flush_interval";
+
+    private static final String CONF_ORDERED = "ordered";
+    private static final String CONF_REORDER_WINDOW = "reorder_window";
+    private static final String CONF_FIRST_EVENT = "first_event";
+
+    private static final String CONF_ROLL_EVENTS = "roll_events";
+    private static final String CONF_ROLL_BYTES = "roll_bytes";
+
+    private static final String REQUEST_CHUNKS = "get_chunks";
+
+    private static final int MAX_SLOTS = 64;
+    private static final int DEFAULT_REORDER_WINDOW = 1000;
+
     private static final String OUTPUT_NEXT = "next-rec";
+    private static final String OUTPUT_NEXT_BATCH = "next-batch-rec";
     private static final String EVENT_SKIP = "skip";
 
-    private static final String NO_NAME = "";
     private static final String NO_FILE = "No open file";
 
-    private String fileName = NO_NAME;
     private boolean skipEvents = false;
 
-    private String openError = NO_FILE;
-    private int eventCounter;
-
-    /** The writer object. */
+    /**
+     * The writer object.
+     * When several files are open, this is the writer of the file being
+     * accessed by the current call to the abstract methods.
+     */
     protected Writer writer;
     private final Object writerLock = new Object();
+    private final Object ioLock = new Object();
+
+    // guarded by writerLock
+    private final Map<Integer, WriterSlot> slots = new HashMap<>();
 
 
     @Override
@@ -74,15 +134,18 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
             JSONObject configData = new JSONObject(source);
             if (configData.has(CONF_ACTION)) {
                 String action = configData.getString(CONF_ACTION);
-                if (action.equals(CONF_ACTION_OPEN)) {
+                int slot = configData.optInt(CONF_SLOT, 0);
+                if (slot < 0 || slot >= MAX_SLOTS) {
+                    logger.error("config: invalid value for '{}': {}", CONF_SLOT, slot);
+                } else if (action.equals(CONF_ACTION_OPEN)) {
                     if (configData.has(CONF_FILENAME)) {
-                        openFile(configData);
+                        openFile(slot, configData);
                     } else {
                         logger.error("config: missing '{}' parameter", CONF_FILENAME);
                     }
                 } else if (action.equals(CONF_ACTION_CLOSE)) {
                     if (configData.has(CONF_FILENAME)) {
-                        closeFile(configData);
+                        closeFile(slot, configData);
                     } else {
                         logger.error("config: missing '{}' parameter", CONF_FILENAME);
                     }
@@ -102,26 +165,31 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
     }
 
 
-    private void openFile(JSONObject configData) {
+    private void openFile(int id, JSONObject configData) {
         synchronized (writerLock) {
-            if (writer != null) {
-                writeAndClose();
+            WriterSlot previous = slots.remove(id);
+            if (previous != null) {
+                writeAndClose(previous);
             }
-            fileName = configData.getString(CONF_FILENAME);
-            logger.info("request to open file {}", fileName);
+            WriterSlot slot = new WriterSlot(id, configData.getString(CONF_FILENAME));
+            logger.info("request to open file {}", slot.fileName);
             try {
-                File file = new File(fileName);
+                File file = new File(slot.fileName);
                 File outputDir = file.getParentFile();
                 if (outputDir != null) {
                     FileUtils.createDirectories(outputDir.toPath());
                 }
-                writer = createWriter(Paths.get(fileName), configData);
-                eventCounter = 0;
-                logger.info("opened file {}", fileName);
+                Path outputFile = startRolling(slot, configData);
+                synchronized (ioLock) {
+                    slot.writer = createWriter(outputFile, configData);
+                    writer = slot.writer;
+                }
+                startWriteBehind(slot, configData);
+                startReorder(slot, configData);
+                slots.put(id, slot);
+                logger.info("opened file {}", slot.fileName);
             } catch (IOException | EventWriterException e) {
-                logger.error("could not open file {}", fileName, e);
-                fileName = null;
-                eventCounter = 0;
+                logger.error("could not open file {}", slot.fileName, e);
             }
 
             skipEvents = false;
@@ -129,39 +197,194 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
     }
 
 
-    private void closeFile(JSONObject data) {
+    private void closeFile(int id, JSONObject data) {
         synchronized (writerLock) {
-            fileName = data.getString(CONF_FILENAME);
+            String fileName = data.getString(CONF_FILENAME);
             logger.info("request to close file {}", fileName);
-            if (writer != null) {
-                writeAndClose();
+            WriterSlot slot = slots.remove(id);
+            if (slot != null) {
+                writeAndClose(slot);
             } else {
                 logger.error("file {} not open", fileName);
             }
-            openError = NO_FILE;
-            fileName = null;
-            eventCounter = 0;
         }
     }
 
 
-    private void writeAndClose() {
-        if (eventCounter > 0) {
-            closeWriter();
+    private Path startRolling(WriterSlot slot, JSONObject configData) {
+        Path file = Paths.get(slot.fileName);
+        int rollEvents = configData.optInt(CONF_ROLL_EVENTS, 0);
+        long rollBytes = configData.optLong(CONF_ROLL_BYTES, 0);
+        if (rollEvents <= 0 && rollBytes <= 0) {
+            return file;
+        }
+        logger.info("config: rolling output every {} events  {} bytes",
+                    rollEvents > 0 ? rollEvents : "-", rollBytes > 0 ? rollBytes : "-");
+        slot.options = configData;
+        slot.chunks = new OutputChunks(file, rollEvents, rollBytes);
+        return slot.chunks.next();
+    }
+
+
+    private void startWriteBehind(WriterSlot slot, JSONObject configData) {
+        int queueSize = configData.optInt(CONF_WRITE_BEHIND, 0);
+        if (queueSize <= 0) {
+            return;
+        }
+        int flushEvents = configData.optInt(CONF_FLUSH_EVENTS, 0);
+        long flushInterval = configData.optLong(CONF_FLUSH_INTERVAL, 0);
+        logger.info("config: write-behind queue of {} events", queueSize);
+        String name = slot.id == 0 ? getName() : getName() + "-" + slot.id;
+        slot.writeBehind = new EventWriteBehind(name, new EventWriteBehind.EventSink() {
+            @Override
+            public void write(Object event) throws EventWriterException {
+                writeToFile(slot, event);
+            }
+
+            @Override
+            public void flush() throws EventWriterException {
+                synchronized (ioLock) {
+                    if (slot.writer != null) {
+                        writer = slot.writer;
+                        flushWriter();
+                    }
+                }
+            }
+        }, queueSize, flushEvents, flushInterval);
+        slot.writeBehind.start();
+    }
+
+
+    private void startReorder(WriterSlot slot, JSONObject configData) {
+        if (!configData.optBoolean(CONF_ORDERED)) {
+            return;
+        }
+        int window = configData.optInt(CONF_REORDER_WINDOW, DEFAULT_REORDER_WINDOW);
+        int firstEvent = configData.optInt(CONF_FIRST_EVENT, 0);
+        if (window <= 0) {
+            logger.error("config: invalid value for '{}': {}", CONF_REORDER_WINDOW, window);
+            window = DEFAULT_REORDER_WINDOW;
+        }
+        logger.info("config: ordered output with a reorder window of {} events", window);
+        slot.reorderBuffer = new ReorderBuffer(firstEvent, window);
+    }
+
+
+    private void stopReorder(WriterSlot slot) {
+        ReorderBuffer reorderBuffer = slot.reorderBuffer;
+        if (reorderBuffer == null) {
+            return;
+        }
+        try {
+            reorderBuffer.flush(event -> saveEvent(slot, event));
+        } catch (EventWriterException e) {
+            logger.error("could not write all events to file {}", slot.fileName, e);
+        }
+        logger.info("reorder: {} events reordered  max buffered = {}  "
+                    + "{} missing events  {} late events",
+                    reorderBuffer.reorderedEvents(), reorderBuffer.maxBuffered(),
+                    reorderBuffer.missingEvents(), reorderBuffer.lateEvents());
+        slot.reorderBuffer = null;
+    }
+
+
+    private void stopWriteBehind(WriterSlot slot) {
+        EventWriteBehind writeBehind = slot.writeBehind;
+        if (writeBehind == null) {
+            return;
+        }
+        try {
+            writeBehind.close();
+        } catch (EventWriterException e) {
+            logger.error("could not write all events to file {}", slot.fileName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("write-behind: {} events  max queue depth = {}/{}  "
+                    + "average queue depth = {}  {} flushes  average flush latency = {} ms",
+                    writeBehind.writtenEvents(),
+                    writeBehind.maxQueueDepth(), writeBehind.capacity(),
+                    String.format("%.1f", writeBehind.averageQueueDepth()),
+                    writeBehind.flushCount(),
+                    String.format("%.2f", writeBehind.averageFlushLatency()));
+        slot.writeBehind = null;
+    }
+
+
+    private void writeAndClose(WriterSlot slot) {
+        stopReorder(slot);
+        stopWriteBehind(slot);
+        synchronized (ioLock) {
+            writer = slot.writer;
+            if (slot.chunks != null) {
+                if (writer != null && slot.chunks.events() > 0) {
+                    completeChunk(slot);
+                }
+                logger.info("rolled output into {} chunks", slot.chunks.completedChunks());
+            } else if (slot.eventCounter > 0) {
+                closeWriter();
+            }
+            writer = null;
+            slot.writer = null;
+        }
+        logger.info("closed file {}", slot.fileName);
+    }
+
+
+    private void closeAll() {
+        synchronized (writerLock) {
+            for (WriterSlot slot : slots.values()) {
+                writeAndClose(slot);
+            }
+            slots.clear();
+        }
+    }
+
+
+    /**
+     * Writes the event into the current output file of the slot,
+     * rolling to a new chunk when the current one is full.
+     */
+    private void writeToFile(WriterSlot slot, Object event) throws EventWriterException {
+        synchronized (ioLock) {
+            OutputChunks chunks = slot.chunks;
+            if (chunks != null && slot.writer == null) {
+                slot.writer = createWriter(chunks.next(), slot.options);
+            }
+            writer = slot.writer;
+            writeEvent(event);
+            if (chunks != null) {
+                chunks.added();
+                try {
+                    if (chunks.isFull()) {
+                        completeChunk(slot);
+                    }
+                } catch (IOException e) {
+                    throw new EventWriterException(e);
+                }
+            }
         }
-        logger.info("closed file {}", fileName);
+    }
+
+
+    private void completeChunk(WriterSlot slot) {
+        OutputChunks chunks = slot.chunks;
+        closeWriter();
         writer = null;
+        slot.writer = null;
+        chunks.complete();
+        logger.info("completed chunk {} with {} events", chunks.current(), chunks.events());
     }
 
 
     private void skipAll() {
         logger.info("request to skip events");
         synchronized (writerLock) {
-            if (writer == null) {
+            if (slots.isEmpty()) {
                 skipEvents = true;
                 logger.info("skipping all events");
             } else {
-                logger.error("file {} is already open", fileName);
+                logger.error("file {} is already open", slots.values().iterator().next().fileName);
             }
         }
     }
@@ -186,32 +409,54 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
     @Override
     public EngineData execute(EngineData input) {
         EngineData output = new EngineData();
+        output.setSlot(input.getSlot());
+        // the reply asks the reader for a new event, with its own deadline
+        output.setDeadline(0);
 
         String dt = input.getMimeType();
-        if (!dt.equalsIgnoreCase(getDataType().mimeType())) {
+        if (dt.equalsIgnoreCase(EngineDataType.JSON.mimeType())) {
+            runRequest(input, output);
+            return output;
+        }
+        boolean isBatch = dt.equalsIgnoreCase(EngineDataType.batchOf(getDataType()).mimeType());
+        if (!dt.equalsIgnoreCase(getDataType().mimeType()) && !isBatch) {
             ServiceUtils.setError(output, String.format("Wrong input type '%s'", dt));
             return output;
         }
+        String next = isBatch ? OUTPUT_NEXT_BATCH : OUTPUT_NEXT;
+
+        List<?> events = isBatch
+                ? (List<?>) input.getData()
+                : Collections.singletonList(input.getData());
 
         if (skipEvents || input.getDescription().equals(EVENT_SKIP)) {
-            output.setData(EngineDataType.STRING.mimeType(), OUTPUT_NEXT);
+            skipEvents(input.getSlot(), input.getCommunicationId(), events.size());
+            output.setData(EngineDataType.STRING.mimeType(), next);
             output.setDescription("event skipped");
             return output;
         }
 
         synchronized (writerLock) {
-            if (writer == null) {
-                ServiceUtils.setError(output, openError);
+            WriterSlot slot = slots.get(input.getSlot());
+            if (slot == null) {
+                ServiceUtils.setError(output, NO_FILE);
             } else {
                 try {
-                    writeEvent(input.getData());
-                    eventCounter++;
-                    output.setData(EngineDataType.STRING.mimeType(), OUTPUT_NEXT);
+                    if (slot.reorderBuffer != null) {
+                        int id = input.getCommunicationId();
+                        slot.reorderBuffer.add(id, events.size(), events,
+                                               event -> saveEvent(slot, event));
+                    } else {
+                        for (Object event : events) {
+                            saveEvent(slot, event);
+                        }
+                    }
+                    output.setData(EngineDataType.STRING.mimeType(), next);
                     output.setDescription("event saved");
 
                 } catch (EventWriterException e) {
                     String msg = String.format("Error saving event to file %s%n%n%s",
-                            fileName, ClaraUtil.reportException(e));
+                            slot.fileName, ClaraUtil.reportException(e));
                     ServiceUtils.setError(output, msg);
                 }
             }
@@ -221,6 +466,68 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
     }
 
 
+    private void runRequest(EngineData input, EngineData output) {
+        String source = (String) input.getData();
+        try {
+            JSONObject request = new JSONObject(source);
+            String action = request.getString(CONF_ACTION);
+            if (action.equals(REQUEST_CHUNKS)) {
+                JSONObject data = new JSONObject();
+                data.put("chunks", takeCompletedChunks(request.optInt(CONF_SLOT, 0)));
+                output.setData(EngineDataType.JSON.mimeType(), data.toString());
+            } else {
+                ServiceUtils.setError(output, "invalid %s value: %s", CONF_ACTION, action);
+            }
+        } catch (JSONException e) {
+            ServiceUtils.setError(output, "invalid request: " + source);
+        }
+    }
+
+
+    private JSONArray takeCompletedChunks(int slotId) {
+        JSONArray chunks = new JSONArray();
+        synchronized (writerLock) {
+            WriterSlot slot = slots.get(slotId);
+            if (slot != null && slot.chunks != null) {
+                synchronized (ioLock) {
+                    slot.chunks.takeCompleted().forEach(c -> chunks.put(c.toString()));
+                }
+            }
+        }
+        return chunks;
+    }
+
+
+    private void skipEvents(int slotId, int id, int count) {
+        synchronized (writerLock) {
+            WriterSlot slot = slots.get(slotId);
+            if (slot != null && slot.reorderBuffer != null) {
+                try {
+                    // the following events must not wait for the skipped events
+                    slot.reorderBuffer.add(id, count, null, event -> saveEvent(slot, event));
+                } catch (EventWriterException e) {
+                    logger.error("could not write events to file {}", slot.fileName, e);
+                }
+            }
+        }
+    }
+
+
+    private void saveEvent(WriterSlot slot, Object event) throws EventWriterException {
+        if (slot.writeBehind != null) {
+            try {
+                slot.writeBehind.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EventWriterException("interrupted while queueing the event");
+            }
+        } else {
+            writeToFile(slot, event);
+        }
+        slot.eventCounter++;
+    }
+
+
     @Override
     public EngineData executeGroup(Set<EngineData> inputs) {
         return null;
@@ -237,6 +544,17 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
      */
     protected abstract void writeEvent(Object event) throws EventWriterException;
 
+    /**
+     * Flushes the events written so far into the output file.
+     * It is called by the write-behind thread, according to the configured
+     * flush policy. The default implementation does nothing.
+     *
+     * @throws EventWriterException if the file could not be flushed
+     */
+    protected void flushWriter() throws EventWriterException {
+        // nothing
+    }
+
     /**
      * Gets the CLARA engine data-type for the type of the events.
      * The data-type will be used to deserialize the events when the engine data
@@ -249,29 +567,47 @@ public abstract class AbstractEventWriterService<Writer> extends AbstractService
 
     @Override
     public Set<EngineDataType> getInputDataTypes() {
-        return ClaraUtil.buildDataTypes(getDataType(), EngineDataType.JSON);
+        return ClaraUtil.buildDataTypes(getDataType(),
+                                        EngineDataType.batchOf(getDataType()),
+                                        EngineDataType.JSON);
     }
 
     @Override
     public Set<EngineDataType> getOutputDataTypes() {
-        return ClaraUtil.buildDataTypes(EngineDataType.STRING);
+        return ClaraUtil.buildDataTypes(EngineDataType.STRING, EngineDataType.JSON);
     }
 
     @Override
     public void reset() {
-        synchronized (writerLock) {
-            if (writer != null) {
-                writeAndClose();
-            }
-        }
+        closeAll();
     }
 
     @Override
     public void destroy() {
-        synchronized (writerLock) {
-            if (writer != null) {
-                writeAndClose();
-            }
+        closeAll();
+    }
+
+
+    /**
+     * The state of an open output file.
+     */
+    private final class WriterSlot {
+
+        private final int id;
+        private final String fileName;
+
+        private Writer writer;
+        private int eventCounter;
+
+        private EventWriteBehind writeBehind;
+        private ReorderBuffer reorderBuffer;
+
+        private OutputChunks chunks;
+        private JSONObject options;
+
+        WriterSlot(int id, String fileName) {
+            this.id = id;
+            this.fileName = fileName;
         }
     }
 }
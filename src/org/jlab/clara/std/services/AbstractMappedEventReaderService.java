@@ -0,0 +1,172 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jlab.clara.engine.EngineDataType;
+import org.json.JSONObject;
+
+/**
+ * An abstract reader service that maps the input file into memory.
+ * <p>
+ * The subclass only has to find the position of the events in the file when
+ * it is opened, and optionally decode the events. Every event is then passed
+ * to {@link #decodeEvent} as a read-only view of the mapped file, without
+ * copying its bytes. By default the view itself is returned as the event,
+ * using the {@link EngineDataType#BYTES BYTES} data-type.
+ * <p>
+ * With the {@code index} option, the position of the events is also saved
+ * into the {@code <file>.claraidx} sidecar, so the file does not have to be
+ * scanned again when it is opened later.
+ */
+public abstract class AbstractMappedEventReaderService
+        extends AbstractEventReaderService<MappedEventFile> {
+
+    private final Map<MappedEventFile, EventIndex> indexes = new ConcurrentHashMap<>();
+
+    @Override
+    protected MappedEventFile createReader(Path file, JSONObject opts)
+            throws EventReaderException {
+        MappedEventFile mappedFile;
+        try {
+            mappedFile = MappedEventFile.open(file, getWindowSize());
+        } catch (IOException e) {
+            throw new EventReaderException(e);
+        }
+        try {
+            indexes.put(mappedFile, loadIndex(file, mappedFile, opts));
+            return mappedFile;
+        } catch (EventReaderException | RuntimeException e) {
+            closeQuietly(mappedFile);
+            throw e;
+        }
+    }
+
+    @Override
+    protected void closeReader() {
+        if (reader != null) {
+            indexes.remove(reader);
+            closeQuietly(reader);
+        }
+    }
+
+    private EventIndex loadIndex(Path file, MappedEventFile mappedFile, JSONObject opts)
+            throws EventReaderException {
+        if (opts.optBoolean("index")) {
+            try {
+                EventIndexFile sidecar = EventIndexFile.read(file);
+                if (sidecar != null && sidecar.index() != null) {
+                    return sidecar.index();
+                }
+            } catch (IOException e) {
+                logger.warn("could not read index of file {}: {}", file, e.getMessage());
+            }
+        }
+        return indexEvents(mappedFile, opts);
+    }
+
+    private void closeQuietly(MappedEventFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            logger.error("could not close file {}", file.path(), e);
+        }
+    }
+
+    /**
+     * Finds the position of all events in the file.
+     * This is called only once, when the file is opened. The subclass should
+     * read the headers of the file with {@link MappedEventFile#slice} and add
+     * every event to the index in order.
+     *
+     * @param file the opened input file
+     * @param opts extra options for the reader
+     * @return the index of the events in the file
+     * @throws EventReaderException if the file could not be indexed
+     */
+    protected abstract EventIndex indexEvents(MappedEventFile file, JSONObject opts)
+            throws EventReaderException;
+
+    /**
+     * Converts the bytes of an event into the event object.
+     * The default implementation returns the buffer as it is, to be published
+     * as {@link EngineDataType#BYTES BYTES}.
+     * The buffer is a view into the mapped file, using big-endian byte order.
+     *
+     * @param eventNumber the index of the event in the file (starts from zero)
+     * @param event the bytes of the event
+     * @return the event as a Java object
+     * @throws EventReaderException if the event could not be decoded
+     */
+    protected Object decodeEvent(int eventNumber, ByteBuffer event) throws EventReaderException {
+        return event;
+    }
+
+    /**
+     * Gets the size of the regions of the file mapped into memory.
+     *
+     * @return the window size, in bytes
+     */
+    protected int getWindowSize() {
+        return MappedEventFile.DEFAULT_WINDOW_SIZE;
+    }
+
+    @Override
+    protected EventIndex getEventIndex() {
+        return reader != null ? indexes.get(reader) : null;
+    }
+
+    @Override
+    protected int readEventCount() throws EventReaderException {
+        return getEventIndex().count();
+    }
+
+    @Override
+    protected Object readEvent(int eventNumber) throws EventReaderException {
+        return readEvent(reader, eventNumber);
+    }
+
+    @Override
+    protected Object readEvent(MappedEventFile file, int eventNumber)
+            throws EventReaderException {
+        // the mapped file can be read concurrently, so shards run in parallel
+        EventIndex events = indexes.get(file);
+        try {
+            ByteBuffer event = file.slice(events.offset(eventNumber),
+                                          events.length(eventNumber));
+            return decodeEvent(eventNumber, event);
+        } catch (IOException e) {
+            throw new EventReaderException(e);
+        }
+    }
+
+    @Override
+    protected EngineDataType getDataType() {
+        return EngineDataType.BYTES;
+    }
+}
@@ -22,23 +22,26 @@
 
 package org.jlab.clara.std.services;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.PumpStreamHandler;
 import org.jlab.clara.base.ClaraUtil;
 import org.jlab.clara.engine.Engine;
 import org.jlab.clara.engine.EngineData;
 import org.jlab.clara.engine.EngineDataType;
 import org.jlab.clara.util.EnvUtils;
 import org.jlab.clara.util.FileUtils;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -54,6 +57,23 @@ public class DataManager implements Engine {
     private static final String CONF_OUTPUT_PATH = "output_path";
     private static final String CONF_STAGE_PATH = "stage_path";
     private static final String CONF_OUT_PREFIX = "out_prefix";
+    private static final String CONF_VERIFY_COPY = "verify_copy";
+    private static final String CONF_STAGE_RESERVE = "stage_reserve";
+
+    private static final String CONF_STAGE_OUT_QUEUE = "stage_out_queue";
+    private static final String CONF_STAGE_WATERMARK = "stage_watermark";
+    private static final String CONF_STAGE_CACHE = "stage_cache";
+    private static final String CONF_COPY_STREAMS = "copy_streams";
+    private static final String CONF_COPY_THRESHOLD = "copy_threshold";
+
+    private static final String CACHE_DIR = ".cache";
+
+    private static final long DEFAULT_STAGE_RESERVE = 1024;
+    private static final int DEFAULT_STAGE_OUT_QUEUE = 4;
+    private static final int DEFAULT_STAGE_WATERMARK = 90;
+    private static final int DEFAULT_COPY_THRESHOLD = 256;
+
+    private static final int MAX_COPY_STREAMS = 64;
 
     private static final String REQUEST_TYPE = "type";
     private static final String REQUEST_EXEC = "exec";
@@ -61,21 +81,42 @@ public class DataManager implements Engine {
 
     private static final String REQUEST_ACTION = "action";
     private static final String REQUEST_FILENAME = "file";
+    private static final String REQUEST_OUTPUT = "output";
 
     private static final String REQUEST_EXEC_STAGE = "stage_input";
     private static final String REQUEST_EXEC_REMOVE = "remove_input";
     private static final String REQUEST_EXEC_SAVE = "save_output";
     private static final String REQUEST_EXEC_CLEAR = "clear_stage";
+    private static final String REQUEST_EXEC_PREFETCH = "prefetch_input";
+    private static final String REQUEST_EXEC_FLUSH = "flush_output";
+
+    private static final String REQUEST_FILES = "files";
+    private static final String REQUEST_ASYNC = "async";
 
     private static final String REQUEST_QUERY_CONFIG = "get_config";
+    private static final String REQUEST_QUERY_CACHE = "get_cache";
 
     private static final String REQUEST_INPUT_FILE = "input_file";
     private static final String REQUEST_OUTPUT_FILE = "output_file";
+    private static final String REQUEST_TRANSFER = "transfer";
+    private static final String REQUEST_SAVED = "saved";
+    private static final String REQUEST_PENDING = "pending";
 
     private final String baseDir;
 
     private volatile DirectoryPaths directoryPaths;
     private volatile String outputPrefix = "out_";
+    private volatile boolean verifyCopy = true;
+    private volatile int stageWatermark = DEFAULT_STAGE_WATERMARK;
+    private volatile int copyStreams = 1;
+    private volatile long copyThreshold = DEFAULT_COPY_THRESHOLD * 1024L * 1024L;
+
+    private final StagePrefetcher prefetcher =
+            new StagePrefetcher(this::copyInputFile, NAME);
+
+    private final StageOutQueue stageOut = new StageOutQueue(DEFAULT_STAGE_OUT_QUEUE, NAME);
+
+    private final StageCache stageCache = new StageCache();
 
     /**
      * Creates a new data manager service.
@@ -102,6 +143,26 @@ public class DataManager implements Engine {
      * <li> {@code output_path}: destination path of the output-data file.</li>
      * <li> {@code staging_path} (optional): data-file staging location,
      * that is also used by the orchestrator to configure RW services.</li>
+     * <li> {@code verify_copy} (optional): verify the checksum of the copied
+     * files (true by default).</li>
+     * <li> {@code stage_reserve} (optional): the free space in MB that must
+     * be left in the stage file-system by the files staged in background
+     * (1024 MB by default).</li>
+     * <li> {@code stage_out_queue} (optional): the maximum number of outputs
+     * waiting to be saved in background (4 by default).</li>
+     * <li> {@code stage_watermark} (optional): the percentage of the stage
+     * file-system in use above which saving a new output in background waits
+     * until all pending outputs are saved (90 by default).</li>
+     * <li> {@code stage_cache} (optional): the size in MB of the cache of
+     * staged input files, kept in the {@code .cache} subdirectory of the
+     * stage path. Removed input files are kept in the cache, and staging
+     * them again is instant if the input file did not change. The least
+     * recently used files are evicted (disabled by default).</li>
+     * <li> {@code copy_streams} (optional): the number of parallel streams
+     * used to copy large files, each one copying a byte range of the file
+     * (1 by default).</li>
+     * <li> {@code copy_threshold} (optional): the minimum size in MB of the
+     * files copied with parallel streams (256 MB by default).</li>
      * </ol>
      *
      * @param input JSON text containing the configuration parameters
@@ -142,6 +203,46 @@ public class DataManager implements Engine {
         }
         directoryPaths = paths;
         outputPrefix = data.getString(CONF_OUT_PREFIX);
+        verifyCopy = data.optBoolean(CONF_VERIFY_COPY, true);
+        long reserve = data.optLong(CONF_STAGE_RESERVE, DEFAULT_STAGE_RESERVE);
+        prefetcher.setReservedSpace(reserve * 1024 * 1024);
+        int queueSize = data.optInt(CONF_STAGE_OUT_QUEUE, DEFAULT_STAGE_OUT_QUEUE);
+        if (queueSize < 1) {
+            String msg = String.format("invalid %s value: %d", CONF_STAGE_OUT_QUEUE, queueSize);
+            throw new IllegalArgumentException(msg);
+        }
+        stageOut.setCapacity(queueSize);
+        int watermark = data.optInt(CONF_STAGE_WATERMARK, DEFAULT_STAGE_WATERMARK);
+        if (watermark < 1 || watermark > 100) {
+            String msg = String.format("invalid %s value: %d", CONF_STAGE_WATERMARK, watermark);
+            throw new IllegalArgumentException(msg);
+        }
+        stageWatermark = watermark;
+        int streams = data.optInt(CONF_COPY_STREAMS, 1);
+        if (streams < 1 || streams > MAX_COPY_STREAMS) {
+            String msg = String.format("invalid %s value: %d", CONF_COPY_STREAMS, streams);
+            throw new IllegalArgumentException(msg);
+        }
+        long threshold = data.optLong(CONF_COPY_THRESHOLD, DEFAULT_COPY_THRESHOLD);
+        if (threshold < 0) {
+            String msg = String.format("invalid %s value: %d", CONF_COPY_THRESHOLD, threshold);
+            throw new IllegalArgumentException(msg);
+        }
+        copyStreams = streams;
+        copyThreshold = threshold * 1024 * 1024;
+        long cacheSize = data.optLong(CONF_STAGE_CACHE, 0);
+        if (cacheSize < 0) {
+            String msg = String.format("invalid %s value: %d", CONF_STAGE_CACHE, cacheSize);
+            throw new IllegalArgumentException(msg);
+        }
+        try {
+            stageCache.configure(paths.stagePath.resolve(CACHE_DIR), cacheSize * 1024 * 1024);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not load stage cache: " + e.getMessage());
+        }
+        if (cacheSize > 0) {
+            System.out.printf("%s service: stage cache set to %d MB%n", NAME, cacheSize);
+        }
     }
 
     JSONObject getConfiguration() {
@@ -163,14 +264,44 @@ public class DataManager implements Engine {
      * configure the reader and writer services.
      * <li>
      * If the <em>action</em> is {@code remove_input} the input file will be
-     * removed from the staging directory.
+     * removed from the staging directory, or moved into the stage cache
+     * if it is enabled.
      * <li>
      * If the <em>action</em> is {@code save_output} the output file will be
      * saved to the final location and removed from the staging directory.
+     * By default the output file is named after the input file. The request
+     * can set the {@code output} file name instead, when several outputs
+     * are written for the same input file, or to save a single chunk
+     * completed by the writer. Only that output file and its chunks are
+     * saved. The chunks saved before the output file are not needed again.
+     * If the request sets {@code async} to true, the output is queued to be
+     * saved in background and the request returns immediately, unless the
+     * queue is full or the stage file-system usage is above the watermark.
+     * The result contains the number of {@code pending} outputs and the
+     * {@code saved} array with the outputs finished since the last report,
+     * with either the {@code transfer} or the {@code error} of each file.
+     * <li>
+     * If the <em>action</em> is {@code flush_output} the request waits until
+     * all queued outputs are saved, and returns the {@code saved} array.
+     * <li>
+     * If the <em>action</em> is {@code prefetch_input} the input files in the
+     * {@code files} array will be copied to the staging directory in background,
+     * in order. The list replaces any previous list of upcoming files. When
+     * one of these files is requested later by {@code stage_input}, the
+     * background copy is used.
      * </ul>
      * <p>
+     * The files are copied and moved within the JVM. The result of the
+     * {@code stage_input} and {@code save_output} actions also contains a
+     * {@code transfer} object with the number of bytes, the time and the
+     * throughput of the transfer.
+     * <p>
      * The data can also be the string {@code get_config}, in which case a JSON text
      * with the configured paths will be returned.
+     * <p>
+     * If the <em>type</em> is {@code query} and the <em>action</em> is
+     * {@code get_cache}, the occupancy and the hit rate of the stage cache
+     * will be returned.
      *
      * @param input JSON text
      * @return paths, file names or error
@@ -218,11 +349,21 @@ public class DataManager implements Engine {
                 removeStagedInputFile(getFiles(request), output);
                 break;
             case REQUEST_EXEC_SAVE:
-                saveOutputFile(getFiles(request), output);
+                if (request.optBoolean(REQUEST_ASYNC, false)) {
+                    queueOutputFile(getFiles(request), output);
+                } else {
+                    saveOutputFile(getFiles(request), output);
+                }
                 break;
             case REQUEST_EXEC_CLEAR:
                 clearStageDir(output);
                 break;
+            case REQUEST_EXEC_PREFETCH:
+                prefetchInputFiles(request, output);
+                break;
+            case REQUEST_EXEC_FLUSH:
+                flushOutputFiles(output);
+                break;
             default:
                 ServiceUtils.setError(output, "invalid %s value: %s", REQUEST_ACTION, action);
         }
@@ -234,6 +375,9 @@ public class DataManager implements Engine {
             case REQUEST_QUERY_CONFIG:
                 returnData(output, getConfiguration());
                 break;
+            case REQUEST_QUERY_CACHE:
+                returnData(output, stageCache.stats());
+                break;
             default:
                 ServiceUtils.setError(output, "invalid %s value: %s", REQUEST_ACTION, action);
         }
@@ -241,112 +385,240 @@ public class DataManager implements Engine {
 
     private void stageInputFile(FilePaths files, EngineData output) {
         Path stagePath = FileUtils.getParent(files.stagedInputFile);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         try {
             FileUtils.createDirectories(stagePath);
 
-            CommandLine cmdLine = new CommandLine("cp");
-            cmdLine.addArgument(files.inputFile.toString());
-            cmdLine.addArgument(files.stagedInputFile.toString());
-
-            DefaultExecutor executor = new DefaultExecutor();
-            PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream);
-            executor.setStreamHandler(streamHandler);
-
-            executor.execute(cmdLine);
-            System.out.printf("%s service: input file '%s' copied to '%s'%n",
-                NAME, files.inputFile, stagePath);
-            returnFilePaths(output, files);
+            FileStaging.Transfer transfer = prefetcher.take(files.stagedInputFile);
+            boolean prefetched = transfer != null;
+            if (!prefetched) {
+                transfer = copyInputFile(files.inputFile, files.stagedInputFile);
+            }
+            System.out.printf("%s service: input file '%s' %s to '%s': %s%n",
+                NAME, files.inputFile, prefetched ? "prefetched" : "copied", stagePath, transfer);
+            JSONObject transferData = transfer.toJson();
+            transferData.put("prefetched", prefetched);
+            transferData.put("cached", transfer.renamed());
+            returnFilePaths(output, files, transferData);
 
-        } catch (ExecuteException e) {
-            ServiceUtils.setError(output,
-                "could not complete request: " + outputStream.toString().trim());
         } catch (IOException e) {
             ServiceUtils.setError(output, "could not complete request: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ServiceUtils.setError(output, "could not complete request: interrupted");
         }
     }
 
-    private void removeStagedInputFile(FilePaths files, EngineData output) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try {
-            CommandLine cmdLine = new CommandLine("rm");
-            cmdLine.addArgument(files.stagedInputFile.toString());
+    private FileStaging.Transfer copyInputFile(Path source, Path target) throws IOException {
+        FileStaging.Transfer transfer = stageCache.stage(source, target);
+        if (transfer == null) {
+            transfer = FileStaging.copy(source, target, verifyCopy, getCopyStreams(source));
+        }
+        return transfer;
+    }
 
-            DefaultExecutor executor = new DefaultExecutor();
-            PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream);
-            executor.setStreamHandler(streamHandler);
+    private int getCopyStreams(Path file) throws IOException {
+        return Files.size(file) >= copyThreshold ? copyStreams : 1;
+    }
 
-            executor.execute(cmdLine);
+    private void prefetchInputFiles(JSONObject request, EngineData output) {
+        JSONArray fileNames = request.getJSONArray(REQUEST_FILES);
+        List<Path> sources = new ArrayList<>();
+        List<Path> targets = new ArrayList<>();
+        for (int i = 0; i < fileNames.length(); i++) {
+            String fileName = fileNames.getString(i);
+            FilePaths files = new FilePaths(directoryPaths, fileName, outputPrefix + fileName);
+            sources.add(files.inputFile);
+            targets.add(files.stagedInputFile);
+        }
+        int scheduled = prefetcher.prefetch(sources, targets);
+        System.out.printf("%s service: prefetching %d input files (%d new)%n",
+            NAME, targets.size(), scheduled);
+
+        JSONObject data = new JSONObject();
+        data.put("scheduled", scheduled);
+        data.put("pending", prefetcher.pending());
+        data.put("hits", prefetcher.hits());
+        data.put("misses", prefetcher.misses());
+        returnData(output, data);
+    }
+
+    private void removeStagedInputFile(FilePaths files, EngineData output) {
+        try {
+            stageCache.keep(files.inputFile, files.stagedInputFile);
             System.out.printf("%s service: staged input file %s removed%n",
                 NAME, files.stagedInputFile);
             returnFilePaths(output, files);
 
-        } catch (ExecuteException e) {
-            ServiceUtils.setError(output,
-                "could not complete request: " + outputStream.toString().trim());
         } catch (IOException e) {
             ServiceUtils.setError(output, "could not complete request: " + e.getMessage());
         }
     }
 
     private void saveOutputFile(FilePaths files, EngineData output) {
-        Path outputPath = FileUtils.getParent(files.outputFile);
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         try {
-            FileUtils.createDirectories(outputPath);
+            FileStaging.Transfer transfer = moveOutputFiles(files);
+            returnFilePaths(output, files, transfer.toJson());
 
-            CommandLine cmdLine = new CommandLine("mv");
+        } catch (IOException e) {
+            ServiceUtils.setError(output, "could not complete request: " + e.getMessage());
+        }
+    }
 
-//            cmdLine.addArgument(files.stagedOutputFile.toString());
-//            cmdLine.addArgument(files.outputFile.toString());
+    private void queueOutputFile(FilePaths files, EngineData output) {
+        try {
+            stageOut.submit(files.inputFileName, () -> moveOutputFiles(files));
+            if (getStageUsage() > stageWatermark) {
+                System.out.printf("%s service: stage usage above %d%%, waiting for %d outputs%n",
+                    NAME, stageWatermark, stageOut.pending());
+                stageOut.flush();
+            }
+            JSONObject data = getFilePaths(files);
+            data.put(REQUEST_PENDING, stageOut.pending());
+            data.put(REQUEST_SAVED, getSavedFiles());
+            returnData(output, data);
 
-//             modified 09.12.18. Stage back multiple output files. vg
-            Files.list(directoryPaths.stagePath).forEach(name -> {
-                    name.startsWith(files.stagedOutputFile.toString());
-                    cmdLine.addArgument(name.toString());
-                }
-            );
-            cmdLine.addArgument(outputPath.toString());
-//                                                                  vg
+        } catch (IOException e) {
+            ServiceUtils.setError(output, "could not complete request: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ServiceUtils.setError(output, "could not complete request: interrupted");
+        }
+    }
 
-            DefaultExecutor executor = new DefaultExecutor();
-            PumpStreamHandler streamHandler = new PumpStreamHandler(outputStream);
-            executor.setStreamHandler(streamHandler);
+    private void flushOutputFiles(EngineData output) {
+        try {
+            stageOut.flush();
+            JSONObject data = new JSONObject();
+            data.put(REQUEST_PENDING, stageOut.pending());
+            data.put(REQUEST_SAVED, getSavedFiles());
+            returnData(output, data);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ServiceUtils.setError(output, "could not complete request: interrupted");
+        }
+    }
 
-            executor.execute(cmdLine);
-            System.out.printf("%s service: output file '%s' saved to '%s'%n",
-                NAME, files.stagedOutputFile, outputPath);
-            returnFilePaths(output, files);
+    private FileStaging.Transfer moveOutputFiles(FilePaths files) throws IOException {
+        Path outputPath = FileUtils.getParent(files.outputFile);
+        FileUtils.createDirectories(outputPath);
+
+        // the writer can split the output into several chunk files
+        FileStaging.Transfer transfer = FileStaging.Transfer.empty();
+        for (Path stagedFile : getStagedOutputFiles(files)) {
+            Path outputFile = outputPath.resolve(stagedFile.getFileName());
+            int streams = getCopyStreams(stagedFile);
+            transfer = transfer.plus(FileStaging.move(stagedFile, outputFile, verifyCopy, streams));
+        }
+        if (transfer.files() == 0 && !hasSavedChunks(files, outputPath)) {
+            throw new IOException("no such file: " + files.stagedOutputFile);
+        }
+        System.out.printf("%s service: output file '%s' saved to '%s': %s%n",
+            NAME, files.stagedOutputFile, outputPath, transfer);
+        return transfer;
+    }
 
-        } catch (ExecuteException e) {
-            ServiceUtils.setError(output,
-                "could not complete request: " + outputStream.toString().trim());
-        } catch (IOException e) {
-            ServiceUtils.setError(output, "could not complete request: " + e.getMessage());
+    private JSONArray getSavedFiles() {
+        JSONArray saved = new JSONArray();
+        for (StageOutQueue.Result result : stageOut.drainResults()) {
+            if (result.failed()) {
+                System.err.printf("%s service: could not save output of '%s'%n",
+                    NAME, result.file());
+            }
+            saved.put(result.toJson());
+        }
+        return saved;
+    }
+
+    private double getStageUsage() throws IOException {
+        FileStore store = Files.getFileStore(directoryPaths.stagePath);
+        long total = store.getTotalSpace();
+        if (total == 0) {
+            return 0;
         }
+        return 100.0 * (total - store.getUsableSpace()) / total;
+    }
+
+    private List<Path> getStagedOutputFiles(FilePaths files) throws IOException {
+        Path stagePath = FileUtils.getParent(files.stagedOutputFile);
+        String name = files.stagedOutputFile.getFileName().toString();
+        Pattern chunk = getChunkPattern(name);
+        Pattern sidecar = Pattern.compile(Pattern.quote(name) + "\\.\\w+");
+        try (Stream<Path> stageFiles = Files.list(stagePath)) {
+            return stageFiles.filter(f -> {
+                String fileName = f.getFileName().toString();
+                return fileName.equals(name)
+                        || chunk.matcher(fileName).matches()
+                        || sidecar.matcher(fileName).matches();
+            }).sorted().collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    // the chunks completed by the writer can be saved before the output file
+    private boolean hasSavedChunks(FilePaths files, Path outputPath) throws IOException {
+        Pattern chunk = getChunkPattern(files.outputFile.getFileName().toString());
+        try (Stream<Path> outputFiles = Files.list(outputPath)) {
+            return outputFiles.anyMatch(f -> chunk.matcher(f.getFileName().toString()).matches());
+        }
+    }
+
+    private static Pattern getChunkPattern(String name) {
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        return Pattern.compile(Pattern.quote(stem) + "\\.part\\d+" + Pattern.quote(ext));
     }
 
     private void clearStageDir(EngineData output) {
         Path stagePath = directoryPaths.stagePath;
+        prefetcher.clear();
         try {
-            FileUtils.deleteFileTree(stagePath);
+            stageOut.flush();
+            if (stageCache.enabled()) {
+                // keep the cached input files
+                Path cacheDir = stageCache.directory();
+                try (Stream<Path> stageFiles = Files.list(stagePath)) {
+                    for (Path file : (Iterable<Path>) stageFiles::iterator) {
+                        if (!file.equals(cacheDir)) {
+                            FileUtils.deleteFileTree(file);
+                        }
+                    }
+                } catch (NoSuchFileException e) {
+                    // nothing to remove
+                }
+            } else {
+                FileUtils.deleteFileTree(stagePath);
+            }
             System.out.printf("%s service: removed stage directory '%s'%n", NAME, stagePath);
             returnData(output, getConfiguration());
         } catch (IOException e) {
             ServiceUtils.setError(output, "could not complete request: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ServiceUtils.setError(output, "could not complete request: interrupted");
         }
     }
 
     private FilePaths getFiles(JSONObject request) {
         String inputFileName = request.getString(REQUEST_FILENAME);
-        return new FilePaths(directoryPaths, outputPrefix, inputFileName);
+        String outputFileName = request.optString(REQUEST_OUTPUT, outputPrefix + inputFileName);
+        return new FilePaths(directoryPaths, inputFileName, outputFileName);
     }
 
     private void returnFilePaths(EngineData output, FilePaths files) {
+        returnData(output, getFilePaths(files));
+    }
+
+    private void returnFilePaths(EngineData output, FilePaths files, JSONObject transfer) {
+        JSONObject fileNames = getFilePaths(files);
+        fileNames.put(REQUEST_TRANSFER, transfer);
+        returnData(output, fileNames);
+    }
+
+    private JSONObject getFilePaths(FilePaths files) {
         JSONObject fileNames = new JSONObject();
         fileNames.put(REQUEST_INPUT_FILE, files.stagedInputFile.toString());
         fileNames.put(REQUEST_OUTPUT_FILE, files.stagedOutputFile.toString());
-        returnData(output, fileNames);
+        return fileNames;
     }
 
     private void returnData(EngineData output, JSONObject data) {
@@ -390,12 +662,14 @@ public class DataManager implements Engine {
         private final Path outputFile;
         private final Path stagedInputFile;
         private final Path inputFile;
+        private final String inputFileName;
 
-        FilePaths(DirectoryPaths dirPaths, String outputPrefix, String inputFileName) {
+        FilePaths(DirectoryPaths dirPaths, String inputFileName, String outputFileName) {
             if (inputFileName.isEmpty()) {
                 throw new IllegalArgumentException("empty input file name");
             }
-            String outputFileName = outputPrefix + inputFileName;
+
+            this.inputFileName = inputFileName;
 
             inputFile = dirPaths.inputPath.resolve(inputFileName);
             outputFile = dirPaths.outputPath.resolve(outputFileName);
@@ -404,6 +678,11 @@ public class DataManager implements Engine {
             if (resolvedFileName == null || !inputFileName.equals(resolvedFileName.toString())) {
                 throw new IllegalArgumentException("invalid input file name: " + inputFileName);
             }
+            Path resolvedOutputName = outputFile.getFileName();
+            if (outputFileName.isEmpty() || resolvedOutputName == null
+                    || !outputFileName.equals(resolvedOutputName.toString())) {
+                throw new IllegalArgumentException("invalid output file name: " + outputFileName);
+            }
 
             stagedInputFile = dirPaths.stagePath.resolve(inputFileName);
             stagedOutputFile = dirPaths.stagePath.resolve(outputFileName);
@@ -471,6 +750,7 @@ public class DataManager implements Engine {
 
     @Override
     public void destroy() {
-        // nothing
+        prefetcher.clear();
+        stageOut.shutdown();
     }
 }
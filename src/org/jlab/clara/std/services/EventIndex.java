@@ -0,0 +1,124 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.util.Arrays;
+
+/**
+ * The position of every event in an input file.
+ * <p>
+ * The index is built once when the file is opened, and then any event can be
+ * accessed directly by its number, without scanning the file again.
+ */
+public final class EventIndex {
+
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private EventIndex(long[] offsets, int[] lengths) {
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Creates a builder to add the events of a file in order.
+     *
+     * @return a new empty builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the number of indexed events.
+     *
+     * @return the number of events in the file
+     */
+    public int count() {
+        return offsets.length;
+    }
+
+    /**
+     * Gets the position of the given event in the file.
+     *
+     * @param eventNumber the index of the event in the file (starts from zero)
+     * @return the offset of the first byte of the event
+     */
+    public long offset(int eventNumber) {
+        return offsets[eventNumber];
+    }
+
+    /**
+     * Gets the size of the given event.
+     *
+     * @param eventNumber the index of the event in the file (starts from zero)
+     * @return the number of bytes of the event
+     */
+    public int length(int eventNumber) {
+        return lengths[eventNumber];
+    }
+
+
+    /**
+     * Helps building the index of a file.
+     */
+    public static final class Builder {
+
+        private long[] offsets = new long[1024];
+        private int[] lengths = new int[1024];
+        private int count = 0;
+
+        private Builder() { }
+
+        /**
+         * Adds the next event of the file.
+         *
+         * @param offset the offset of the first byte of the event
+         * @param length the number of bytes of the event
+         * @return this builder, so methods can be chained
+         */
+        public Builder add(long offset, int length) {
+            if (offset < 0 || length < 0) {
+                throw new IllegalArgumentException("Invalid event: offset = " + offset
+                                                   + " length = " + length);
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+            return this;
+        }
+
+        /**
+         * Creates the index with all the added events.
+         *
+         * @return the index of the file
+         */
+        public EventIndex build() {
+            return new EventIndex(Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count));
+        }
+    }
+}
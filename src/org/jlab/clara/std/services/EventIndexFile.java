@@ -0,0 +1,148 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A sidecar file that keeps the number of events of an input file,
+ * and optionally the position of every event.
+ * <p>
+ * The sidecar is saved next to the input file, as {@code <file>.claraidx}.
+ * It is only valid while the size and the modification time of the input
+ * file are the same as when the sidecar was written.
+ */
+final class EventIndexFile {
+
+    static final String EXTENSION = ".claraidx";
+
+    private static final int MAGIC = 0x434c4958; // CLIX
+    private static final int VERSION = 1;
+
+    private final int count;
+    private final EventIndex index;
+
+    private EventIndexFile(int count, EventIndex index) {
+        this.count = count;
+        this.index = index;
+    }
+
+    /**
+     * Gets the number of events of the input file.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Gets the position of the events, or null if the sidecar only keeps
+     * the number of events.
+     */
+    EventIndex index() {
+        return index;
+    }
+
+    static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Reads the sidecar of the given input file.
+     *
+     * @return the sidecar data, or null if there is no valid sidecar
+     */
+    static EventIndexFile read(Path file) throws IOException {
+        Path sidecar = sidecar(file);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            if (size != Files.size(file) || lastModified != lastModified(file)) {
+                return null;
+            }
+            int count = in.readInt();
+            if (!in.readBoolean()) {
+                return new EventIndexFile(count, null);
+            }
+            EventIndex.Builder builder = EventIndex.builder();
+            for (int i = 0; i < count; i++) {
+                long offset = in.readLong();
+                int length = in.readInt();
+                builder.add(offset, length);
+            }
+            return new EventIndexFile(count, builder.build());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the sidecar of the given input file.
+     * The index can be null when only the number of events is known.
+     *
+     * @throws IllegalArgumentException if the index has not the given number of events
+     */
+    static void write(Path file, int count, EventIndex index) throws IOException {
+        if (index != null && index.count() != count) {
+            throw new IllegalArgumentException(String.format(
+                    "the index has %d events, not %d", index.count(), count));
+        }
+        Path sidecar = sidecar(file);
+        Path temp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Files.size(file));
+            out.writeLong(lastModified(file));
+            out.writeInt(count);
+            out.writeBoolean(index != null);
+            if (index != null) {
+                for (int i = 0; i < index.count(); i++) {
+                    out.writeLong(index.offset(i));
+                    out.writeInt(index.length(i));
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING,
+                                  StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long lastModified(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+
+/**
+ * Reads events ahead of demand in a background thread.
+ * <p>
+ * The events are read in order, from the first to the last configured event,
+ * and stored in a bounded ring. Requests for the next event are served from
+ * the ring, and only wait for the reader thread when the ring is empty.
+ * <p>
+ * The reader thread is never interrupted, since interrupting a thread that
+ * is reading a NIO channel closes the channel. It is stopped cooperatively,
+ * and {@link #stop} waits until it is done before the file can be closed.
+ */
+class EventPrefetcher {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    /**
+     * Reads a single event from the input file.
+     */
+    @FunctionalInterface
+    interface EventSource {
+        Object readEvent(int eventNumber) throws EventReaderException;
+    }
+
+    /**
+     * An event read by the prefetch thread.
+     */
+    static final class Event {
+
+        private final int number;
+        private final Object data;
+        private final EventReaderException error;
+
+        private Event(int number, Object data, EventReaderException error) {
+            this.number = number;
+            this.data = data;
+            this.error = error;
+        }
+
+        int number() {
+            return number;
+        }
+
+        Object get() throws EventReaderException {
+            if (error != null) {
+                throw error;
+            }
+            return data;
+        }
+    }
+
+    private final EventSource source;
+    private final BlockingQueue<Event> ring;
+    private final int capacity;
+    private final int firstEvent;
+    private final int lastEvent;
+    private final Thread thread;
+
+    private volatile boolean stopped = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong occupancy = new AtomicLong();
+
+    EventPrefetcher(String name, EventSource source, int capacity, int firstEvent, int lastEvent) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid prefetch capacity: " + capacity);
+        }
+        this.source = source;
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.firstEvent = firstEvent;
+        this.lastEvent = lastEvent;
+        this.thread = new Thread(this::readEvents, name + "-prefetch");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the reader thread and waits until it is done,
+     * so the reader is not used anymore after this returns.
+     */
+    void stop() {
+        stopped = true;
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        ring.clear();
+        // wake up any request waiting for the next event
+        ring.offer(new Event(-1, null, new EventReaderException("prefetch stopped")));
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readEvents() {
+        try {
+            for (int i = firstEvent; i < lastEvent && !stopped; i++) {
+                Event event = readEvent(i);
+                while (!ring.offer(event, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (stopped) {
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Event readEvent(int eventNumber) {
+        try {
+            return new Event(eventNumber, source.readEvent(eventNumber), null);
+        } catch (EventReaderException e) {
+            return new Event(eventNumber, null, e);
+        } catch (Exception e) {
+            return new Event(eventNumber, null, new EventReaderException(e));
+        }
+    }
+
+    /**
+     * Gets the next event in order, waiting for the reader thread if the ring
+     * is empty. Only a single thread should request events at a time.
+     * If the reader thread is not running anymore, an event with an error is
+     * returned instead of waiting forever.
+     */
+    Event next() throws InterruptedException {
+        occupancy.addAndGet(ring.size());
+        Event event = ring.poll();
+        if (event != null) {
+            hits.incrementAndGet();
+            return event;
+        }
+        misses.incrementAndGet();
+        while (event == null) {
+            event = ring.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (event == null && !thread.isAlive()) {
+                // the last event could be added just before the thread ended
+                event = ring.poll();
+                if (event == null) {
+                    String msg = stopped ? "prefetch stopped" : "prefetch thread is not running";
+                    event = new Event(-1, null, new EventReaderException(msg));
+                }
+            }
+        }
+        return event;
+    }
+
+    int size() {
+        return ring.size();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    double hitRate() {
+        long total = hits.get() + misses.get();
+        return total > 0 ? hits.get() / (double) total : 0;
+    }
+
+    double averageOccupancy() {
+        long total = hits.get() + misses.get();
+        return total > 0 ? occupancy.get() / (double) total : 0;
+    }
+
+    JSONObject stats() {
+        JSONObject data = new JSONObject();
+        data.put("capacity", capacity);
+        data.put("size", ring.size());
+        data.put("hits", hits());
+        data.put("misses", misses());
+        data.put("hit_rate", Math.round(1000.0 * hitRate()) / 1000.0);
+        data.put("average_occupancy", Math.round(10.0 * averageOccupancy()) / 10.0);
+        return data;
+    }
+}
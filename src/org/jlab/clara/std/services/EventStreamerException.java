@@ -1,7 +1,35 @@
 package org.jlab.clara.std.services;
 
 /**
- * Event Stream Exception class.
+ * A problem in the event streamer implementation.
  */
-public class EventStreamerException {
+public class EventStreamerException extends Exception {
+
+    /**
+     * Constructs a new exception.
+     *
+     * @param message the detail message
+     */
+    public EventStreamerException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a new exception.
+     *
+     * @param cause the cause of the exception
+     */
+    public EventStreamerException(Throwable cause) {
+        super(cause);
+    }
+
+    /**
+     * Constructs a new exception.
+     *
+     * @param message the detail message
+     * @param cause the cause of the exception
+     */
+    public EventStreamerException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes events in a background thread.
+ * <p>
+ * The events are added into a bounded queue, and the writer thread drains the
+ * queue in batches. The output is flushed every given number of events,
+ * and/or when the given interval has passed since the last flush.
+ * When the queue is full, adding an event waits until there is free space.
+ * <p>
+ * If an event cannot be written, the error is reported when the next event is
+ * added, and the remaining events in the queue are discarded.
+ */
+class EventWriteBehind {
+
+    /**
+     * Writes the events into the output file.
+     */
+    interface EventSink {
+        void write(Object event) throws EventWriterException;
+
+        void flush() throws EventWriterException;
+    }
+
+    private static final Object END = new Object();
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_POLL_MS = 1000;
+
+    private final EventSink sink;
+    private final BlockingQueue<Object> queue;
+    private final int capacity;
+    private final int flushEvents;
+    private final long flushInterval;
+    private final Thread thread;
+
+    private volatile EventWriterException failure;
+
+    private final AtomicLong writtenEvents = new AtomicLong();
+    private final AtomicLong queuedEvents = new AtomicLong();
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushTime = new AtomicLong();
+
+    EventWriteBehind(String name, EventSink sink,
+                     int capacity, int flushEvents, long flushInterval) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid queue capacity: " + capacity);
+        }
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.flushEvents = flushEvents;
+        this.flushInterval = flushInterval;
+        this.thread = new Thread(this::writeEvents, name + "-write-behind");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Adds the event to the queue, waiting if the queue is full.
+     *
+     * @throws EventWriterException if a previous event could not be written
+     */
+    void put(Object event) throws EventWriterException, InterruptedException {
+        EventWriterException error = failure;
+        if (error != null) {
+            throw error;
+        }
+        int depth = queue.size();
+        queueDepth.addAndGet(depth);
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+        queuedEvents.incrementAndGet();
+        queue.put(event);
+    }
+
+    /**
+     * Writes all queued events, flushes the output and stops the thread.
+     *
+     * @throws EventWriterException if an event could not be written
+     */
+    void close() throws EventWriterException, InterruptedException {
+        queue.put(END);
+        thread.join();
+        EventWriterException error = failure;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void writeEvents() {
+        List<Object> batch = new ArrayList<>();
+        long lastFlush = System.nanoTime();
+        int unflushed = 0;
+        try {
+            while (true) {
+                long timeout = flushInterval > 0 ? flushInterval : IDLE_POLL_MS;
+                Object first = queue.poll(timeout, TimeUnit.MILLISECONDS);
+                boolean end = false;
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH);
+                    for (Object event : batch) {
+                        if (event == END) {
+                            end = true;
+                            break;
+                        }
+                        if (write(event)) {
+                            unflushed++;
+                        }
+                        if (flushEvents > 0 && unflushed >= flushEvents) {
+                            flush();
+                            unflushed = 0;
+                            lastFlush = System.nanoTime();
+                        }
+                    }
+                    batch.clear();
+                }
+                boolean expired = flushInterval > 0 && System.nanoTime() - lastFlush
+                        >= TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                if (unflushed > 0 && (end || expired)) {
+                    flush();
+                    unflushed = 0;
+                    lastFlush = System.nanoTime();
+                }
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean write(Object event) {
+        if (failure != null) {
+            return false;
+        }
+        try {
+            sink.write(event);
+            writtenEvents.incrementAndGet();
+            return true;
+        } catch (EventWriterException e) {
+            failure = e;
+        } catch (Exception e) {
+            failure = new EventWriterException(e);
+        }
+        return false;
+    }
+
+    private void flush() {
+        if (failure != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            sink.flush();
+        } catch (EventWriterException e) {
+            failure = e;
+        } catch (Exception e) {
+            failure = new EventWriterException(e);
+        }
+        flushTime.addAndGet(System.nanoTime() - start);
+        flushCount.incrementAndGet();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long writtenEvents() {
+        return writtenEvents.get();
+    }
+
+    long maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    double averageQueueDepth() {
+        long total = queuedEvents.get();
+        return total > 0 ? queueDepth.get() / (double) total : 0;
+    }
+
+    long flushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Gets the average time to flush the output, in milliseconds.
+     */
+    double averageFlushLatency() {
+        long total = flushCount.get();
+        return total > 0 ? flushTime.get() / (double) total / 1e6 : 0;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+import org.json.JSONObject;
+
+/**
+ * Copies and moves files for the data manager, within the JVM.
+ * <p>
+ * Files are copied into a hidden {@code .<name>.part} file next to the target,
+ * and renamed to the target only when the copy is complete, so a partial
+ * copy is never seen as a staged file. The copy can be verified by comparing
+ * the CRC32C checksum of the source, computed while copying, with the
+ * checksum of the written file.
+ * Files are moved with an atomic rename when the source and the target are in
+ * the same file-system, or copied and removed otherwise.
+ * <p>
+ * Large files can be copied with several streams in parallel, each one
+ * copying a contiguous byte range of the file with positional reads and
+ * writes. The checksum of every range is verified separately.
+ */
+final class FileStaging {
+
+    static final int BUFFER_SIZE = 8 * 1024 * 1024;
+
+    @FunctionalInterface
+    private interface RangeTask {
+        long run(long from, long to) throws IOException;
+    }
+
+    private FileStaging() { }
+
+    /**
+     * The statistics of a file transfer.
+     */
+    static final class Transfer {
+
+        private final int files;
+        private final long bytes;
+        private final long nanos;
+        private final boolean renamed;
+
+        Transfer(int files, long bytes, long nanos, boolean renamed) {
+            this.files = files;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.renamed = renamed;
+        }
+
+        static Transfer empty() {
+            return new Transfer(0, 0, 0, true);
+        }
+
+        int files() {
+            return files;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        double millis() {
+            return nanos / 1e6;
+        }
+
+        /**
+         * Gets if all files were renamed instead of copied.
+         */
+        boolean renamed() {
+            return renamed;
+        }
+
+        /**
+         * Gets the throughput of the transfer, in MB/s.
+         */
+        double rate() {
+            return nanos > 0 ? (bytes / 1e6) / (nanos / 1e9) : 0;
+        }
+
+        Transfer plus(Transfer other) {
+            return new Transfer(files + other.files,
+                                bytes + other.bytes,
+                                nanos + other.nanos,
+                                renamed && other.renamed);
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("files", files);
+            json.put("bytes", bytes);
+            json.put("time_ms", Math.round(millis()));
+            json.put("rate_mb_s", Math.round(rate() * 10) / 10.0);
+            json.put("renamed", renamed);
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes in %.1f ms (%.1f MB/s)", bytes, millis(), rate());
+        }
+    }
+
+
+    /**
+     * Copies the source file into the target file, replacing the target if it
+     * exists.
+     *
+     * @param source the file to be copied
+     * @param target the path of the copy
+     * @param verify if the checksum of the copy should be verified
+     * @return the statistics of the copy
+     * @throws IOException if the file could not be copied, or the copy does
+     *         not match the source
+     */
+    static Transfer copy(Path source, Path target, boolean verify) throws IOException {
+        long start = System.nanoTime();
+        Path part = partFile(target);
+        long bytes = 0;
+        long checksum;
+        try {
+            CRC32C crc = new CRC32C();
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize(size));
+                while (in.read(buffer) >= 0) {
+                    buffer.flip();
+                    bytes += buffer.remaining();
+                    crc.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                if (bytes != size) {
+                    throw new IOException(String.format("copied %d bytes of %d from %s",
+                                                        bytes, size, source));
+                }
+            }
+            checksum = crc.getValue();
+            if (verify) {
+                long copyChecksum = checksum(part);
+                if (copyChecksum != checksum) {
+                    throw new IOException(String.format("checksum of %s does not match %s",
+                                                        target, source));
+                }
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING,
+                                     StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        return new Transfer(1, bytes, System.nanoTime() - start, false);
+    }
+
+
+    /**
+     * Copies the source file into the target file with several parallel
+     * streams, replacing the target if it exists.
+     * The file is split into one byte range per stream. Small files are
+     * copied with fewer streams, so every range has at least the size of
+     * the copy buffer.
+     *
+     * @param source the file to be copied
+     * @param target the path of the copy
+     * @param verify if the checksums of the copied ranges should be verified
+     * @param streams the number of parallel streams
+     * @return the statistics of the copy
+     * @throws IOException if the file could not be copied, or the copy does
+     *         not match the source
+     */
+    static Transfer copy(Path source, Path target, boolean verify, int streams)
+            throws IOException {
+        long size = Files.size(source);
+        int ranges = (int) Math.max(1, Math.min(streams, size / BUFFER_SIZE));
+        if (ranges == 1) {
+            return copy(source, target, verify);
+        }
+        long start = System.nanoTime();
+        Path part = partFile(target);
+        long[] bounds = new long[ranges + 1];
+        for (int i = 0; i <= ranges; i++) {
+            bounds[i] = size * i / ranges;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(ranges, r -> {
+            Thread thread = new Thread(r, "stage-copy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long[] checksums;
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (in.size() != size) {
+                    throw new IOException("size of " + source + " changed while copying");
+                }
+                checksums = runRanges(pool, bounds, (from, to) -> copyRange(in, out, from, to));
+            }
+            if (verify) {
+                long[] copyChecksums;
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    copyChecksums = runRanges(pool, bounds,
+                                              (from, to) -> copyRange(in, null, from, to));
+                }
+                if (!Arrays.equals(copyChecksums, checksums)) {
+                    throw new IOException(String.format("checksum of %s does not match %s",
+                                                        target, source));
+                }
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING,
+                                     StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Transfer(1, size, System.nanoTime() - start, false);
+    }
+
+
+    /**
+     * Copies the given byte range, or just reads it if there is no output.
+     * Returns the checksum of the range.
+     */
+    private static long copyRange(FileChannel in, FileChannel out, long from, long to)
+            throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize(to - from));
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int n = in.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("unexpected end of file at byte " + position);
+            }
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            long writePosition = position;
+            while (out != null && buffer.hasRemaining()) {
+                writePosition += out.write(buffer, writePosition);
+            }
+            position += n;
+        }
+        return crc.getValue();
+    }
+
+
+    private static long[] runRanges(ExecutorService pool, long[] bounds, RangeTask task)
+            throws IOException {
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            long from = bounds[i];
+            long to = bounds[i + 1];
+            futures.add(pool.submit(() -> task.run(from, to)));
+        }
+        long[] results = new long[futures.size()];
+        try {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("copy interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+
+    /**
+     * Moves the source file into the target file, replacing the target if it
+     * exists. If both files are in different file-systems, the source is
+     * copied and then removed.
+     *
+     * @param source the file to be moved
+     * @param target the new path of the file
+     * @param verify if the checksum of the copy should be verified
+     * @return the statistics of the move
+     * @throws IOException if the file could not be moved
+     */
+    static Transfer move(Path source, Path target, boolean verify) throws IOException {
+        return move(source, target, verify, 1);
+    }
+
+
+    /**
+     * Moves the source file into the target file, replacing the target if it
+     * exists. If both files are in different file-systems, the source is
+     * copied with the given number of parallel streams and then removed.
+     *
+     * @param source the file to be moved
+     * @param target the new path of the file
+     * @param verify if the checksum of the copy should be verified
+     * @param streams the number of parallel streams for the copy
+     * @return the statistics of the move
+     * @throws IOException if the file could not be moved
+     */
+    static Transfer move(Path source, Path target, boolean verify, int streams)
+            throws IOException {
+        long start = System.nanoTime();
+        long size = Files.size(source);
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return new Transfer(1, size, System.nanoTime() - start, true);
+        } catch (AtomicMoveNotSupportedException e) {
+            Transfer transfer = copy(source, target, verify, streams);
+            Files.delete(source);
+            return transfer;
+        }
+    }
+
+
+    /**
+     * Computes the CRC32C checksum of the given file.
+     *
+     * @param file the file to be read
+     * @return the checksum of the content of the file
+     * @throws IOException if the file could not be read
+     */
+    static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize(in.size()));
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+
+    private static Path partFile(Path target) {
+        return target.resolveSibling("." + target.getFileName() + ".part");
+    }
+
+
+    private static int bufferSize(long fileSize) {
+        return (int) Math.max(4096, Math.min(BUFFER_SIZE, fileSize));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only input file mapped into memory.
+ * <p>
+ * The file is mapped in large windows, created the first time a region of
+ * the file is accessed. The returned buffers are views into the mapped
+ * windows, so reading an event does not copy its bytes.
+ */
+public final class MappedEventFile implements Closeable {
+
+    /** The default size of the mapped windows. */
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    // the windows overlap, so most events crossing the window limit fit in one window
+    private static final int WINDOW_OVERLAP = 16 * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+
+    private final Map<Long, MappedByteBuffer> windows = new HashMap<>();
+
+    private MappedEventFile(Path path, FileChannel channel, int windowSize) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Opens the given file to be mapped into memory.
+     *
+     * @param path the path to the file
+     * @param windowSize the size of the mapped windows
+     * @return the opened file
+     * @throws IOException if the file could not be opened
+     */
+    public static MappedEventFile open(Path path, int windowSize) throws IOException {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE - WINDOW_OVERLAP) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedEventFile(path, channel, windowSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the path to the mapped file.
+     *
+     * @return the path of the file
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Gets the size of the mapped file.
+     *
+     * @return the number of bytes of the file
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gets a read-only view of the given region of the file.
+     * The bytes are not copied.
+     * The returned buffer uses big-endian byte order.
+     *
+     * @param offset the position of the first byte of the region
+     * @param length the number of bytes of the region
+     * @return a buffer with the content of the region
+     * @throws IOException if the file could not be mapped
+     */
+    public ByteBuffer slice(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IOException(String.format("invalid region [%d, %d) of file %s (size %d)",
+                                                offset, offset + length, path, size));
+        }
+        long start = (offset / windowSize) * windowSize;
+        long end = Math.min(size, start + windowSize + WINDOW_OVERLAP);
+        ByteBuffer buffer;
+        if (offset + length <= end) {
+            buffer = window(start, (int) (end - start)).duplicate();
+            buffer.position((int) (offset - start));
+        } else {
+            // very large event crossing the window overlap
+            buffer = channel.map(MapMode.READ_ONLY, offset, length);
+        }
+        buffer.limit(buffer.position() + length);
+        return buffer.slice();
+    }
+
+    private synchronized MappedByteBuffer window(long start, int length) throws IOException {
+        MappedByteBuffer window = windows.get(start);
+        if (window == null) {
+            window = channel.map(MapMode.READ_ONLY, start, length);
+            windows.put(start, window);
+        }
+        return window;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        // the mapped memory is released when the buffers are garbage collected
+        windows.clear();
+        channel.close();
+    }
+}
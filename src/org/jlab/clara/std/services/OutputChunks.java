@@ -0,0 +1,144 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The chunks of a rolling output file.
+ * <p>
+ * The events are written into a sequence of chunk files named after the
+ * output file: {@code run.hipo} is written as {@code run.part00000.hipo},
+ * {@code run.part00001.hipo}, etc. A new chunk is started when the current
+ * one reaches the maximum number of events or bytes. Every completed chunk
+ * is kept until it is taken to be saved, so it can be moved to the output
+ * directory while the next chunks are written.
+ */
+final class OutputChunks {
+
+    private final Path file;
+    private final int maxEvents;
+    private final long maxBytes;
+
+    private int index = -1;
+    private Path current;
+    private int events;
+    private int completed;
+    private final List<Path> finished = new ArrayList<>();
+
+    OutputChunks(Path file, int maxEvents, long maxBytes) {
+        if (maxEvents <= 0 && maxBytes <= 0) {
+            throw new IllegalArgumentException("no limit for the chunks");
+        }
+        this.file = file;
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the path of the chunk with the given index.
+     */
+    Path chunk(int chunkIndex) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        return file.resolveSibling(String.format("%s.part%05d%s", stem, chunkIndex, ext));
+    }
+
+    /**
+     * Starts the next chunk.
+     *
+     * @return the path of the new chunk
+     */
+    Path next() {
+        index++;
+        events = 0;
+        current = chunk(index);
+        return current;
+    }
+
+    /**
+     * Gets the path of the current chunk.
+     */
+    Path current() {
+        return current;
+    }
+
+    /**
+     * Counts a new event written into the current chunk.
+     */
+    void added() {
+        events++;
+    }
+
+    /**
+     * Gets the number of events written into the current chunk.
+     */
+    int events() {
+        return events;
+    }
+
+    /**
+     * Checks if the current chunk has reached the limits.
+     * The size is the size of the chunk on disk, so it does not include the
+     * bytes still buffered by the writer.
+     */
+    boolean isFull() throws IOException {
+        if (maxEvents > 0 && events >= maxEvents) {
+            return true;
+        }
+        return maxBytes > 0 && Files.size(current) >= maxBytes;
+    }
+
+    /**
+     * Counts the current chunk as completed.
+     * It must be called after the chunk has been closed.
+     */
+    void complete() {
+        completed++;
+        finished.add(current);
+    }
+
+    /**
+     * Gets the chunks completed since the last call.
+     *
+     * @return the completed chunks, in order
+     */
+    List<Path> takeCompleted() {
+        List<Path> chunks = new ArrayList<>(finished);
+        finished.clear();
+        return chunks;
+    }
+
+    /**
+     * Gets the number of completed chunks.
+     */
+    int completedChunks() {
+        return completed;
+    }
+}
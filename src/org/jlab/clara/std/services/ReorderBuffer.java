@@ -0,0 +1,162 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Restores the input order of the events received by a writer.
+ * <p>
+ * The events are identified by their communication ID, which is the position
+ * of the event in the input file. An event received before the previous
+ * events is kept in the buffer until all the previous events have been
+ * written. If the buffer gets more than {@code window} entries, the missing
+ * events are given up (they may have failed) and the buffered events are
+ * written, keeping their order.
+ * <p>
+ * This class is not thread-safe.
+ */
+class ReorderBuffer {
+
+    /**
+     * Writes an event into the output file.
+     */
+    @FunctionalInterface
+    interface EventSink {
+        void write(Object event) throws EventWriterException;
+    }
+
+    private static final class Entry {
+        private final int count;
+        private final List<?> events;
+
+        private Entry(int count, List<?> events) {
+            this.count = count;
+            this.events = events;
+        }
+    }
+
+    private final TreeMap<Integer, Entry> pending = new TreeMap<>();
+    private final int window;
+    private int nextId;
+
+    private long reorderedEvents;
+    private long missingEvents;
+    private long lateEvents;
+    private int maxBuffered;
+
+    ReorderBuffer(int firstId, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid reorder window: " + window);
+        }
+        this.nextId = firstId;
+        this.window = window;
+    }
+
+    /**
+     * Adds the consecutive events starting at the given ID, and writes all
+     * events that are now in order.
+     *
+     * @param id the ID of the first event
+     * @param count the number of consecutive events
+     * @param events the events to be written, or null if the events were
+     *               skipped and there is nothing to write
+     * @param sink where the events are written
+     * @throws EventWriterException if an event could not be written
+     */
+    void add(int id, int count, List<?> events, EventSink sink) throws EventWriterException {
+        if (id < nextId) {
+            // the missing event was already given up
+            lateEvents += count;
+            write(new Entry(count, events), sink);
+            return;
+        }
+        if (id != nextId) {
+            reorderedEvents += count;
+        }
+        pending.put(id, new Entry(count, events));
+        maxBuffered = Math.max(maxBuffered, pending.size());
+        writeInOrder(sink);
+        while (pending.size() > window) {
+            skipMissing(sink);
+        }
+    }
+
+    /**
+     * Writes all buffered events in order, giving up all missing events.
+     *
+     * @param sink where the events are written
+     * @throws EventWriterException if an event could not be written
+     */
+    void flush(EventSink sink) throws EventWriterException {
+        while (!pending.isEmpty()) {
+            skipMissing(sink);
+        }
+    }
+
+    private void skipMissing(EventSink sink) throws EventWriterException {
+        int id = pending.firstKey();
+        missingEvents += id - nextId;
+        nextId = id;
+        writeInOrder(sink);
+    }
+
+    private void writeInOrder(EventSink sink) throws EventWriterException {
+        while (!pending.isEmpty() && pending.firstKey() == nextId) {
+            Map.Entry<Integer, Entry> first = pending.pollFirstEntry();
+            Entry entry = first.getValue();
+            nextId += entry.count;
+            write(entry, sink);
+        }
+    }
+
+    private void write(Entry entry, EventSink sink) throws EventWriterException {
+        if (entry.events != null) {
+            for (Object event : entry.events) {
+                sink.write(event);
+            }
+        }
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    long reorderedEvents() {
+        return reorderedEvents;
+    }
+
+    long missingEvents() {
+        return missingEvents;
+    }
+
+    long lateEvents() {
+        return lateEvents;
+    }
+
+    int maxBuffered() {
+        return maxBuffered;
+    }
+}
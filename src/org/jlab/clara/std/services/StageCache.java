@@ -0,0 +1,305 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jlab.clara.util.FileUtils;
+import org.json.JSONObject;
+
+/**
+ * Keeps staged input files in the stage directory for later reuse.
+ * <p>
+ * When a staged input file is removed, it is moved into the cache directory
+ * instead, and staging the same input file again just links the cached copy
+ * into the stage directory. A cached file is only used if the size and the
+ * modification time of the input file did not change. The least recently
+ * used files are removed when the cached files exceed the size budget.
+ * <p>
+ * The list of cached files is saved into an index file in the cache
+ * directory, so the cache is kept when the service is restarted.
+ */
+final class StageCache {
+
+    static final String INDEX_FILE = "index.tsv";
+
+    private static final class Entry {
+
+        private final Path source;
+        private final long size;
+        private final long modified;
+        private final Path file;
+
+        Entry(Path source, long size, long modified, Path file) {
+            this.source = source;
+            this.size = size;
+            this.modified = modified;
+            this.file = file;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return attrs.size() == size && attrs.lastModifiedTime().toMillis() == modified;
+        }
+    }
+
+    // guarded by this, in access order
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private Path cacheDir;
+    private long capacity;
+    private long used;
+    private int hits;
+    private int misses;
+
+    /**
+     * Sets the cache directory and the size budget.
+     * The index of the directory is loaded if the directory changed.
+     * A zero capacity disables the cache.
+     *
+     * @param cacheDir the directory for the cached files
+     * @param capacity the maximum size of the cached files, in bytes
+     * @throws IOException if the index could not be loaded
+     */
+    synchronized void configure(Path cacheDir, long capacity) throws IOException {
+        if (!cacheDir.equals(this.cacheDir)) {
+            entries.clear();
+            used = 0;
+            this.cacheDir = cacheDir;
+            if (capacity > 0) {
+                loadIndex();
+            }
+        }
+        this.capacity = capacity;
+        evict();
+        if (capacity > 0) {
+            saveIndex();
+        }
+    }
+
+    synchronized boolean enabled() {
+        return capacity > 0;
+    }
+
+    synchronized Path directory() {
+        return cacheDir;
+    }
+
+    /**
+     * Stages the input file from the cache, if a valid copy is cached.
+     *
+     * @param source the input file
+     * @param target the path of the staged file
+     * @return the statistics of the transfer, or null if the file is not cached
+     * @throws IOException if the cached copy could not be staged
+     */
+    FileStaging.Transfer stage(Path source, Path target) throws IOException {
+        long startTime = System.nanoTime();
+        Entry entry;
+        synchronized (this) {
+            if (capacity <= 0) {
+                return null;
+            }
+            entry = entries.get(source);
+            if (entry == null || !isValid(entry)) {
+                if (entry != null) {
+                    remove(entry);
+                    saveIndex();
+                }
+                misses++;
+                return null;
+            }
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, entry.file);
+                hits++;
+                saveIndex();
+                return new FileStaging.Transfer(1, entry.size,
+                                                System.nanoTime() - startTime, true);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // the cached copy must be copied
+            }
+        }
+        // do not block the other stage requests while the file is copied
+        try {
+            FileStaging.copy(entry.file, target, false);
+        } catch (NoSuchFileException e) {
+            // the cached copy was evicted before the copy started
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+        synchronized (this) {
+            hits++;
+            saveIndex();
+        }
+        return new FileStaging.Transfer(1, entry.size, System.nanoTime() - startTime, true);
+    }
+
+    /**
+     * Keeps the staged input file in the cache.
+     * The staged file is removed from the stage directory.
+     *
+     * @param source the input file
+     * @param staged the staged file
+     * @throws IOException if the staged file could not be removed or cached
+     */
+    synchronized void keep(Path source, Path staged) throws IOException {
+        Entry entry = entries.get(source);
+        if (capacity <= 0 || entry != null && isValid(entry)) {
+            Files.delete(staged);
+            return;
+        }
+        if (entry != null) {
+            remove(entry);
+        }
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        if (attrs.size() > capacity) {
+            Files.delete(staged);
+            saveIndex();
+            return;
+        }
+        FileUtils.createDirectories(cacheDir);
+        Path file = cacheDir.resolve(cacheName(source, staged));
+        Files.move(staged, file, StandardCopyOption.REPLACE_EXISTING);
+        entry = new Entry(source, attrs.size(), attrs.lastModifiedTime().toMillis(), file);
+        entries.put(source, entry);
+        used += entry.size;
+        evict();
+        saveIndex();
+    }
+
+    /**
+     * Removes all cached files.
+     *
+     * @throws IOException if the cache directory could not be removed
+     */
+    synchronized void clear() throws IOException {
+        entries.clear();
+        used = 0;
+        if (cacheDir != null) {
+            FileUtils.deleteFileTree(cacheDir);
+        }
+    }
+
+    synchronized JSONObject stats() {
+        JSONObject data = new JSONObject();
+        int requests = hits + misses;
+        data.put("enabled", capacity > 0);
+        data.put("capacity", capacity);
+        data.put("used", used);
+        data.put("files", entries.size());
+        data.put("hits", hits);
+        data.put("misses", misses);
+        data.put("hit_rate", requests > 0 ? Math.round(1000.0 * hits / requests) / 1000.0 : 0);
+        return data;
+    }
+
+    private static String cacheName(Path source, Path staged) {
+        // a digest of the full path, so files with the same name never collide
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(source.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return name.append('_').append(staged.getFileName()).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isValid(Entry entry) throws IOException {
+        if (!Files.exists(entry.file) || !Files.exists(entry.source)) {
+            return false;
+        }
+        return entry.matches(Files.readAttributes(entry.source, BasicFileAttributes.class));
+    }
+
+    private void evict() throws IOException {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (used > capacity && iter.hasNext()) {
+            Entry eldest = iter.next();
+            iter.remove();
+            used -= eldest.size;
+            Files.deleteIfExists(eldest.file);
+        }
+    }
+
+    private void remove(Entry entry) throws IOException {
+        entries.remove(entry.source);
+        used -= entry.size;
+        Files.deleteIfExists(entry.file);
+    }
+
+    private void loadIndex() throws IOException {
+        Path index = cacheDir.resolve(INDEX_FILE);
+        if (!Files.exists(index)) {
+            return;
+        }
+        for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+            String[] cols = line.split("\t");
+            if (cols.length != 4) {
+                continue;
+            }
+            Path file = cacheDir.resolve(cols[3]);
+            if (Files.exists(file)) {
+                Entry entry = new Entry(Paths.get(cols[0]),
+                                        Long.parseLong(cols[1]),
+                                        Long.parseLong(cols[2]),
+                                        file);
+                entries.put(entry.source, entry);
+                used += entry.size;
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        FileUtils.createDirectories(cacheDir);
+        List<String> lines = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            lines.add(String.format("%s\t%d\t%d\t%s", entry.source, entry.size, entry.modified,
+                                    entry.file.getFileName()));
+        }
+        Path index = cacheDir.resolve(INDEX_FILE);
+        Path temp = cacheDir.resolve("." + INDEX_FILE + ".part");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.json.JSONObject;
+
+/**
+ * Saves the output files from the stage directory in a background thread.
+ * <p>
+ * The data manager queues the output of every finished file and returns,
+ * so the node can start the next file while the output is moved to the final
+ * location. The number of pending outputs is bounded: queuing a new output
+ * blocks while the queue is full. The result of every saved output is kept
+ * until it is reported back to the orchestrator.
+ */
+final class StageOutQueue {
+
+    /**
+     * Moves the output files of an input file to the final location.
+     */
+    @FunctionalInterface
+    interface Task {
+        FileStaging.Transfer run() throws IOException;
+    }
+
+    /**
+     * The result of a saved output.
+     */
+    static final class Result {
+
+        private final String file;
+        private final FileStaging.Transfer transfer;
+        private final String error;
+
+        private Result(String file, FileStaging.Transfer transfer, String error) {
+            this.file = file;
+            this.transfer = transfer;
+            this.error = error;
+        }
+
+        String file() {
+            return file;
+        }
+
+        boolean failed() {
+            return error != null;
+        }
+
+        JSONObject toJson() {
+            JSONObject data = new JSONObject();
+            data.put("file", file);
+            if (error != null) {
+                data.put("error", error);
+            } else {
+                data.put("transfer", transfer.toJson());
+            }
+            return data;
+        }
+    }
+
+    private final ExecutorService executor;
+
+    // guarded by this
+    private final List<Result> results = new ArrayList<>();
+    private int capacity;
+    private int pending;
+
+    StageOutQueue(int capacity, String name) {
+        this.capacity = capacity;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name + "-stage-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the maximum number of pending outputs.
+     *
+     * @param capacity the size of the queue
+     */
+    synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        notifyAll();
+    }
+
+    /**
+     * Queues the output of the given input file.
+     * Blocks while the queue is full.
+     *
+     * @param file the name of the input file
+     * @param task the task that saves the output
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    void submit(String file, Task task) throws InterruptedException {
+        synchronized (this) {
+            while (pending >= capacity) {
+                wait();
+            }
+            pending++;
+        }
+        executor.execute(() -> save(file, task));
+    }
+
+    private void save(String file, Task task) {
+        Result result;
+        try {
+            result = new Result(file, task.run(), null);
+        } catch (IOException | RuntimeException e) {
+            result = new Result(file, null, e.getMessage());
+        }
+        synchronized (this) {
+            results.add(result);
+            pending--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all queued outputs are saved.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized void flush() throws InterruptedException {
+        while (pending > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Gets the results of the outputs saved since the last call.
+     *
+     * @return the new results, in completion order
+     */
+    synchronized List<Result> drainResults() {
+        List<Result> saved = new ArrayList<>(results);
+        results.clear();
+        return saved;
+    }
+
+    synchronized int pending() {
+        return pending;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
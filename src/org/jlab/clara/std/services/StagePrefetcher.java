@@ -0,0 +1,226 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stages upcoming input files in a background thread.
+ * <p>
+ * The data manager receives the list of the next files that the node will
+ * process, and this class copies them into the stage directory in order,
+ * one at a time. A file is only staged when the stage file-system keeps the
+ * configured free space after the copy. When the file is requested later, the
+ * finished copy is returned, a running copy is awaited, and a copy that has
+ * not started is cancelled, so the file is staged on demand.
+ * <p>
+ * A discarded file that was already copied is removed in background, unless
+ * it is requested or scheduled again before it is removed.
+ */
+final class StagePrefetcher {
+
+    /**
+     * Copies a file into the stage directory.
+     */
+    @FunctionalInterface
+    interface Stager {
+        FileStaging.Transfer stage(Path source, Path target) throws IOException;
+    }
+
+    private final Stager stager;
+    private final ExecutorService executor;
+
+    // guarded by this
+    private final Map<Path, Future<FileStaging.Transfer>> files = new LinkedHashMap<>();
+    private final Map<Path, Future<FileStaging.Transfer>> discarded = new HashMap<>();
+    private long reservedSpace;
+    private int hits;
+    private int misses;
+
+    StagePrefetcher(Stager stager, String name) {
+        this.stager = stager;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name + "-stage-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the free space that must be left in the stage file-system.
+     *
+     * @param bytes the minimum free space, in bytes
+     */
+    synchronized void setReservedSpace(long bytes) {
+        this.reservedSpace = bytes;
+    }
+
+    /**
+     * Replaces the list of upcoming files.
+     * The files that are not in the new list are cancelled, or removed from
+     * the stage directory if they were already staged.
+     *
+     * @param sources the upcoming input files, in processing order
+     * @param targets the paths of the staged files
+     * @return the number of new files scheduled for staging
+     */
+    synchronized int prefetch(List<Path> sources, List<Path> targets) {
+        Iterator<Map.Entry<Path, Future<FileStaging.Transfer>>> iter = files.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Path, Future<FileStaging.Transfer>> entry = iter.next();
+            if (!targets.contains(entry.getKey())) {
+                discard(entry.getKey(), entry.getValue());
+                iter.remove();
+            }
+        }
+        int scheduled = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            Path source = sources.get(i);
+            Path target = targets.get(i);
+            if (!files.containsKey(target)) {
+                Future<FileStaging.Transfer> copy = discarded.remove(target);
+                if (copy != null) {
+                    // keep the discarded copy, it is not removed anymore
+                    files.put(target, copy);
+                } else {
+                    files.put(target, executor.submit(() -> stage(source, target)));
+                    scheduled++;
+                }
+            }
+        }
+        return scheduled;
+    }
+
+    private FileStaging.Transfer stage(Path source, Path target) throws IOException {
+        Path stageDir = target.getParent();
+        if (stageDir != null) {
+            Files.createDirectories(stageDir);
+        }
+        FileStore store = Files.getFileStore(stageDir != null ? stageDir : target);
+        long reserved;
+        synchronized (this) {
+            reserved = reservedSpace;
+        }
+        long size = Files.size(source);
+        if (store.getUsableSpace() - size < reserved) {
+            throw new IOException("not enough space to stage " + source);
+        }
+        return stager.stage(source, target);
+    }
+
+    private void discard(Path target, Future<FileStaging.Transfer> future) {
+        if (!future.cancel(false)) {
+            // running or done, the file is removed when the copy completes,
+            // unless the file is taken or scheduled again before that
+            discarded.put(target, future);
+            executor.execute(() -> {
+                try {
+                    future.get();
+                    synchronized (this) {
+                        if (discarded.remove(target, future)) {
+                            Files.deleteIfExists(target);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | IOException e) {
+                    // nothing staged
+                    synchronized (this) {
+                        discarded.remove(target, future);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the prefetched copy of the given file.
+     * Waits for the copy if it is running.
+     *
+     * @param target the path of the staged file
+     * @return the statistics of the copy, or null if the file was not staged
+     *         in background and must be staged on demand
+     * @throws InterruptedException if interrupted while waiting for the copy
+     */
+    FileStaging.Transfer take(Path target) throws InterruptedException {
+        Future<FileStaging.Transfer> future;
+        synchronized (this) {
+            future = files.remove(target);
+            if (future == null) {
+                // a discarded copy is used instead of staging the file again
+                future = discarded.remove(target);
+            }
+        }
+        FileStaging.Transfer transfer = null;
+        if (future != null && !future.cancel(false)) {
+            try {
+                transfer = future.get();
+            } catch (ExecutionException | CancellationException e) {
+                transfer = null;
+            }
+        }
+        synchronized (this) {
+            if (transfer != null && Files.exists(target)) {
+                hits++;
+                return transfer;
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Cancels all upcoming files.
+     */
+    synchronized void clear() {
+        for (Map.Entry<Path, Future<FileStaging.Transfer>> entry : files.entrySet()) {
+            discard(entry.getKey(), entry.getValue());
+        }
+        files.clear();
+    }
+
+    synchronized int pending() {
+        return files.size();
+    }
+
+    synchronized int hits() {
+        return hits;
+    }
+
+    synchronized int misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops the execution of requests by a service engine that keeps failing.
+ * <p>
+ * The breaker counts the requests and the failures (unhandled exceptions)
+ * of the engine over a fixed time window. When the failure rate of a window
+ * passes the threshold, the breaker opens and all requests are rejected
+ * without calling the engine. After the open period, a single trial request
+ * is allowed: the breaker closes if it succeeds, or opens again if it fails.
+ * <p>
+ * The breaker is shared by all the engines of the service pool.
+ */
+class CircuitBreaker {
+
+    static final long DEFAULT_WINDOW_MS = 10_000;
+    static final int DEFAULT_MIN_REQUESTS = 20;
+    static final double DEFAULT_FAILURE_RATE = 0.5;
+    static final long DEFAULT_OPEN_MS = 30_000;
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final String name;
+    private final long windowTime;
+    private final int minRequests;
+    private final double failureRate;
+    private final long openTime;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+
+    private long windowStart;
+    private int windowRequests;
+    private int windowFailures;
+
+    private long openedAt;
+    private boolean trialRunning;
+
+    private long rejectedCount;
+
+
+    CircuitBreaker(String name) {
+        this(name, DEFAULT_WINDOW_MS, DEFAULT_MIN_REQUESTS, DEFAULT_FAILURE_RATE,
+             DEFAULT_OPEN_MS, System::nanoTime);
+    }
+
+    CircuitBreaker(String name,
+                   long windowMs,
+                   int minRequests,
+                   double failureRate,
+                   long openMs,
+                   LongSupplier clock) {
+        if (windowMs <= 0 || openMs <= 0) {
+            throw new IllegalArgumentException("invalid circuit breaker times");
+        }
+        if (minRequests <= 0) {
+            throw new IllegalArgumentException("invalid minimum requests: " + minRequests);
+        }
+        if (failureRate <= 0 || failureRate > 1) {
+            throw new IllegalArgumentException("invalid failure rate: " + failureRate);
+        }
+        this.name = name;
+        this.windowTime = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.minRequests = minRequests;
+        this.failureRate = failureRate;
+        this.openTime = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.clock = clock;
+        this.windowStart = clock.getAsLong();
+    }
+
+
+    /**
+     * Checks if the next request can be executed by the engine.
+     * Every allowed request must be followed by a call to
+     * {@link #recordSuccess} or {@link #recordFailure}.
+     *
+     * @return false if the request must be rejected
+     */
+    synchronized boolean allowRequest() {
+        long now = clock.getAsLong();
+        switch (state) {
+            case CLOSED:
+                if (now - windowStart >= windowTime) {
+                    resetWindow(now);
+                }
+                return true;
+            case OPEN:
+                if (now - openedAt >= openTime) {
+                    setState(State.HALF_OPEN);
+                    trialRunning = true;
+                    return true;
+                }
+                rejectedCount++;
+                return false;
+            case HALF_OPEN:
+                if (!trialRunning) {
+                    trialRunning = true;
+                    return true;
+                }
+                rejectedCount++;
+                return false;
+            default:
+                throw new IllegalStateException("unknown state: " + state);
+        }
+    }
+
+
+    synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            trialRunning = false;
+            setState(State.CLOSED);
+            resetWindow(clock.getAsLong());
+        } else if (state == State.CLOSED) {
+            windowRequests++;
+        }
+    }
+
+
+    synchronized void recordFailure() {
+        long now = clock.getAsLong();
+        if (state == State.HALF_OPEN) {
+            trialRunning = false;
+            Logging.error("service = %s: trial request failed", name);
+            open(now);
+        } else if (state == State.CLOSED) {
+            windowRequests++;
+            windowFailures++;
+            if (windowRequests >= minRequests
+                    && windowFailures >= failureRate * windowRequests) {
+                Logging.error("service = %s: %d of %d requests failed",
+                              name, windowFailures, windowRequests);
+                open(now);
+            }
+        }
+    }
+
+
+    synchronized State state() {
+        return state;
+    }
+
+
+    synchronized long rejectedCount() {
+        return rejectedCount;
+    }
+
+
+    private void open(long now) {
+        Logging.error("service = %s: circuit breaker is open, rejecting requests for %d s",
+                      name, TimeUnit.NANOSECONDS.toSeconds(openTime));
+        openedAt = now;
+        setState(State.OPEN);
+    }
+
+
+    private void setState(State newState) {
+        if (state != newState) {
+            state = newState;
+            if (newState != State.OPEN) {
+                Logging.info("service = %s: circuit breaker is %s", name, newState);
+            }
+        }
+    }
+
+
+    private void resetWindow(long now) {
+        windowStart = now;
+        windowRequests = 0;
+        windowFailures = 0;
+    }
+}
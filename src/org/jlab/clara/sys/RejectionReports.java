@@ -0,0 +1,196 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.error.ClaraException;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Limits the error reports of the requests rejected without calling the engine,
+ * because the circuit breaker is open or the request queue is full.
+ * <p>
+ * The first rejection is reported right away. The next rejections are
+ * collected, and reported together at most once per interval. The data of
+ * the report has the communication IDs of all the rejected requests,
+ * separated by commas, so the orchestrator can request them again.
+ * Every pipeline slot gets its own report.
+ * <p>
+ * The reports are shared by all the engines of the service pool.
+ */
+class RejectionReports {
+
+    static final long DEFAULT_INTERVAL_MS = 1_000;
+
+    @FunctionalInterface
+    interface Publisher {
+        void publish(EngineData report) throws ClaraException;
+    }
+
+    private static final class Rejections {
+        private final List<Integer> ids = new ArrayList<>();
+        private EngineData last;
+    }
+
+    private final String name;
+    private final long interval;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService timer;
+
+    private final Map<Integer, Rejections> pending = new TreeMap<>();
+
+    private Publisher publisher;
+    private boolean reported;
+    private long lastReport;
+    private boolean flushScheduled;
+
+    private long suppressedCount;
+
+
+    RejectionReports(String name) {
+        this(name, DEFAULT_INTERVAL_MS, System::nanoTime,
+             Executors.newSingleThreadScheduledExecutor());
+    }
+
+
+    RejectionReports(String name,
+                     long intervalMs,
+                     LongSupplier clock,
+                     ScheduledExecutorService timer) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("invalid report interval: " + intervalMs);
+        }
+        this.name = name;
+        this.interval = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.clock = clock;
+        this.timer = timer;
+    }
+
+
+    /**
+     * Adds a request rejected by the circuit breaker.
+     * The rejection is published now if no report was published during the
+     * last interval. Otherwise it is published with the next report.
+     *
+     * @param rejected the rejected data, with the metadata of the request
+     * @param publisher sends the error report
+     * @throws ClaraException if the report could not be sent
+     */
+    void reject(EngineData rejected, Publisher publisher) throws ClaraException {
+        List<EngineData> reports;
+        synchronized (this) {
+            Rejections rejections = pending.computeIfAbsent(rejected.getSlot(),
+                                                            k -> new Rejections());
+            rejections.ids.add(rejected.getCommunicationId());
+            rejections.last = rejected;
+            this.publisher = publisher;
+
+            long now = clock.getAsLong();
+            if (reported && now - lastReport < interval) {
+                suppressedCount++;
+                scheduleFlush(lastReport + interval - now);
+                return;
+            }
+            reports = takeReports(now);
+        }
+        for (EngineData report : reports) {
+            publisher.publish(report);
+        }
+    }
+
+
+    /**
+     * Publishes the rejections collected since the last report.
+     */
+    void flush() {
+        List<EngineData> reports;
+        Publisher current;
+        synchronized (this) {
+            flushScheduled = false;
+            reports = takeReports(clock.getAsLong());
+            current = publisher;
+        }
+        for (EngineData report : reports) {
+            try {
+                current.publish(report);
+            } catch (ClaraException e) {
+                Logging.error("service = %s: could not report the rejected requests: %s",
+                              name, e.getMessage());
+            }
+        }
+    }
+
+
+    synchronized long suppressedCount() {
+        return suppressedCount;
+    }
+
+
+    void close() {
+        timer.shutdownNow();
+    }
+
+
+    private void scheduleFlush(long delay) {
+        if (flushScheduled) {
+            return;
+        }
+        try {
+            timer.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+            flushScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // the service is being destroyed
+        }
+    }
+
+
+    private List<EngineData> takeReports(long now) {
+        List<EngineData> reports = new ArrayList<>();
+        for (Rejections rejections : pending.values()) {
+            EngineData report = rejections.last;
+            report.setData(EngineDataType.STRING.mimeType(),
+                           rejections.ids.stream()
+                                         .map(String::valueOf)
+                                         .collect(Collectors.joining(",")));
+            reports.add(report);
+        }
+        if (!reports.isEmpty()) {
+            reported = true;
+            lastReport = now;
+        }
+        pending.clear();
+        return reports;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMetaOrBuilder;
+
+/**
+ * The priority class of a request received by a service.
+ * <p>
+ * The class is obtained from the metadata of the request and the mime-type
+ * of its data (for requests passed through the shared memory, the mime-type
+ * of the shared data).
+ * Control requests (report setup and configuration) have no action or a
+ * {@code CONFIGURE} action. Short text requests, like the {@code next} and
+ * {@code next-rec} requests sent to the reader service, ask for more work and
+ * are served before the bulk of the data events.
+ * <p>
+ * Lower ordinal means higher priority.
+ */
+enum RequestPriority {
+
+    CONTROL,
+    REQUEST,
+    DATA;
+
+    static RequestPriority of(xMsgMetaOrBuilder metadata, String mimeType) {
+        if (!metadata.hasAction()) {
+            return CONTROL;
+        }
+        switch (metadata.getAction()) {
+            case CONFIGURE:
+                return CONTROL;
+            default:
+                if (mimeType.equals(EngineDataType.STRING.mimeType())) {
+                    return REQUEST;
+                }
+                return DATA;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The requests of a service waiting for a free engine.
+ * <p>
+ * The requests are served by {@link RequestPriority priority class}, and in
+ * arrival order within the same class. The number of queued requests that
+ * are not control requests is bounded: when the queue is full, a new request
+ * is not accepted, and the caller must reject it, so a slow engine does not
+ * grow the queue. Adding a request never blocks the caller. Control
+ * requests are always accepted.
+ *
+ * @param <T> the type of the requests
+ */
+class RequestQueue<T> {
+
+    private final int capacity;
+    private final PriorityQueue<Entry<T>> queue = new PriorityQueue<>();
+
+    // guarded by this
+    private long sequence;
+    private int boundedRequests;
+    private boolean closed;
+
+    RequestQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid queue capacity: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+
+    /**
+     * Adds a request to the queue, if it is not full.
+     *
+     * @param priority the priority class of the request
+     * @param request the request
+     * @return true if the request was queued,
+     *         false if the queue is full or closed
+     */
+    synchronized boolean offer(RequestPriority priority, T request) {
+        boolean bounded = priority != RequestPriority.CONTROL;
+        if (closed || bounded && boundedRequests >= capacity) {
+            return false;
+        }
+        if (bounded) {
+            boundedRequests++;
+        }
+        queue.add(new Entry<>(priority, sequence++, request));
+        notifyAll();
+        return true;
+    }
+
+
+    /**
+     * Takes the request with highest priority, waiting until one is queued.
+     *
+     * @return the request
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized T take() throws InterruptedException {
+        while (queue.isEmpty()) {
+            wait();
+        }
+        return remove();
+    }
+
+
+    private T remove() {
+        Entry<T> entry = queue.poll();
+        if (entry.priority != RequestPriority.CONTROL) {
+            boundedRequests--;
+        }
+        return entry.request;
+    }
+
+
+    /**
+     * Closes the queue. New requests are not accepted anymore.
+     *
+     * @return the requests that were still queued, by priority
+     */
+    synchronized List<T> close() {
+        closed = true;
+        List<T> requests = new ArrayList<>(queue.size());
+        while (!queue.isEmpty()) {
+            requests.add(remove());
+        }
+        return requests;
+    }
+
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+
+    private static final class Entry<T> implements Comparable<Entry<T>> {
+
+        private final RequestPriority priority;
+        private final long sequence;
+        private final T request;
+
+        Entry(RequestPriority priority, long sequence, T request) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.request = request;
+        }
+
+        @Override
+        public int compareTo(Entry<T> other) {
+            int cmp = priority.compareTo(other.priority);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -24,8 +24,10 @@ package org.jlab.clara.sys;
 
 import org.jlab.clara.base.core.ClaraConstants;
 import org.jlab.clara.base.core.ClaraComponent;
+import org.jlab.clara.base.core.MetadataUtil;
 import org.jlab.clara.base.error.ClaraException;
 import org.jlab.clara.engine.Engine;
+import org.jlab.clara.engine.EngineData;
 import org.jlab.clara.sys.RequestParser.RequestException;
 import org.jlab.clara.util.report.ServiceReport;
 import org.jlab.coda.xmsg.core.xMsgCallBack;
@@ -37,8 +39,14 @@ import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -49,16 +57,46 @@ import java.util.concurrent.TimeUnit;
  * A thread pool contains threads to run each object within.
  * Number of threads in the pool is equal to the size of the object pool.
  * Thread pool is fixed size, however object pool is capable of expanding.
+ * <p>
+ * Received requests are queued by {@link RequestPriority priority class},
+ * and a dispatcher thread passes the highest priority request to the next
+ * free engine. Control requests are served before the data events waiting
+ * in the queue. The queue is bounded to a few requests per engine: when it
+ * is full, the new requests are rejected with a retryable error, so the
+ * subscription thread never waits and control requests are always received.
+ * The requests still queued when the service is removed are
+ * answered with an error, and their shared data is released.
+ * <p>
+ * All engines share a {@link CircuitBreaker}, that rejects the requests
+ * without calling the engine when it keeps failing. While it is open,
+ * the rejected requests are reported together, once per second.
+ * <p>
+ * If the user engine provides {@link Engine#getWarmUpData() warm-up samples},
+ * all engines execute them in the threads of the service pool, before the
+ * service is registered.
+ * <p>
+ * When the engine returns a fatal error (severity 13) the service is
+ * quarantined: the running requests are completed, but every new request is
+ * rejected with an error. The service must be redeployed to recover.
  */
 class Service extends AbstractActor {
 
+    private static final int QUEUED_REQUESTS_PER_ENGINE = 4;
+
     private final String name;
     private final Engine userEngine;
 
     private final ExecutorService executionPool;
     private final ServiceEngine[] enginePool;
+    private final Semaphore freeEngines;
+
+    private final RequestQueue<xMsgMessage> requestQueue;
+    private final Thread dispatcher;
+
     private final ServiceSysConfig sysConfig;
     private final ServiceReport sysReport;
+    private final CircuitBreaker circuitBreaker;
+    private final RejectionReports rejectionReports;
 
     private xMsgSubscription subscription;
 
@@ -87,6 +125,8 @@ class Service extends AbstractActor {
         userEngine = cl.load(comp.getEngineClass());
 
         sysReport = new ServiceReport(comp, userEngine, session);
+        circuitBreaker = new CircuitBreaker(name);
+        rejectionReports = new RejectionReports(name);
 
         // Creating thread pool
         executionPool = xMsgUtil.newThreadPool(comp.getSubscriptionPoolSize(), name);
@@ -97,8 +137,16 @@ class Service extends AbstractActor {
         // Fill the object pool
         ServiceActor engineActor = new ServiceActor(comp, frontEnd, connectionPools);
         for (int i = 0; i < comp.getSubscriptionPoolSize(); i++) {
-            enginePool[i] = new ServiceEngine(userEngine, engineActor, sysConfig, sysReport);
+            enginePool[i] = new ServiceEngine(userEngine, engineActor,
+                                              sysConfig, sysReport,
+                                              circuitBreaker, rejectionReports);
         }
+        freeEngines = new Semaphore(enginePool.length);
+
+        // Creating the dispatcher of queued requests
+        requestQueue = new RequestQueue<>(QUEUED_REQUESTS_PER_ENGINE * enginePool.length);
+        dispatcher = new Thread(this::dispatchRequests, name + "-dispatcher");
+        dispatcher.setDaemon(true);
 
         // Register with the shared memory
         SharedMemory.addReceiver(name);
@@ -122,6 +170,12 @@ class Service extends AbstractActor {
             throw e.getCause();
         }
 
+        // run the warm-up samples before accepting requests
+        warmUpEngines();
+
+        // start serving queued requests
+        dispatcher.start();
+
         // subscribe and register
         xMsgTopic topic = base.getMe().getTopic();
         xMsgCallBack callback = new ServiceCallBack();
@@ -149,43 +203,164 @@ class Service extends AbstractActor {
     }
 
 
-    private void configure(final xMsgMessage msg) throws Exception {
-        while (true) {
-            for (final ServiceEngine engine : enginePool) {
-                if (engine.tryAcquire()) {
-                    executionPool.submit(() -> {
-                        try {
-                            engine.configure(msg);
-                        } catch (Exception e) {
-                            printUnhandledException(e);
-                        } finally {
-                            engine.release();
-                        }
-                    });
-                    return;
+    private void warmUpEngines() {
+        List<EngineData> samples;
+        int iterations;
+        try {
+            samples = userEngine.getWarmUpData();
+            iterations = userEngine.getWarmUpIterations();
+        } catch (Exception e) {
+            Logging.error("service = %s: could not get warm-up data: %s", name, e.getMessage());
+            return;
+        }
+        if (samples == null || samples.isEmpty() || iterations <= 0) {
+            return;
+        }
+
+        // every engine runs the samples in its own thread of the service pool
+        long startTime = System.nanoTime();
+        List<Future<?>> warmUps = new ArrayList<>();
+        for (ServiceEngine engine : enginePool) {
+            warmUps.add(executionPool.submit(() -> engine.warmUp(samples, iterations)));
+        }
+        try {
+            for (Future<?> warmUp : warmUps) {
+                warmUp.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            // the engine logs the warm-up errors
+        }
+        long warmUpTime = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime);
+
+        sysReport.setWarmUpTime(warmUpTime);
+        Logging.info("warmed up service = %s  iterations = %d  time = %.2f s",
+                     name, iterations, warmUpTime / 1e6);
+    }
+
+
+    private void enqueue(xMsgMessage msg) {
+        RequestPriority priority = getPriority(msg);
+        if (!requestQueue.offer(priority, msg)) {
+            if (requestQueue.isClosed()) {
+                discard(msg);
+            } else {
+                reject(msg);
+            }
+        }
+    }
+
+
+    private void reject(xMsgMessage msg) {
+        // the queue is full: release the shared data of the request,
+        // and tell the sender to send it again later
+        releaseSharedData(msg);
+        try {
+            // the engines share the actor and the reports, any of them can reject
+            enginePool[0].reject(msg, ClaraConstants.SERVICE_BUSY);
+        } catch (ClaraException e) {
+            printUnhandledException(e);
+        }
+    }
+
+
+    private void discard(xMsgMessage msg) {
+        // the request will not be executed: release its shared data,
+        // and answer the sender if it is waiting for a response
+        releaseSharedData(msg);
+        if (msg.hasReplyTopic()) {
+            sendResponse(msg, xMsgMeta.Status.ERROR, "service is being removed: " + name);
+        }
+    }
+
+
+    private void releaseSharedData(xMsgMessage msg) {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        if (metadata.getDataType().equals(ClaraConstants.SHARED_MEMORY_KEY)) {
+            SharedMemory.getEngineData(name, metadata.getSender(),
+                                       MetadataUtil.getSlot(metadata),
+                                       metadata.getCommunicationId());
+        }
+    }
+
+
+    private RequestPriority getPriority(xMsgMessage msg) {
+        xMsgMeta.Builder metadata = msg.getMetaData();
+        String mimeType = metadata.getDataType();
+        if (mimeType.equals(ClaraConstants.SHARED_MEMORY_KEY)) {
+            String sender = metadata.getSender();
+            int slot = MetadataUtil.getSlot(metadata);
+            int id = metadata.getCommunicationId();
+            mimeType = SharedMemory.getMimeType(name, sender, slot, id);
+        }
+        return RequestPriority.of(metadata, mimeType);
+    }
+
+
+    private void dispatchRequests() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                freeEngines.acquire();
+                xMsgMessage request;
+                try {
+                    request = requestQueue.take();
+                } catch (InterruptedException e) {
+                    freeEngines.release();
+                    throw e;
                 }
+                submit(request);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
 
-    private void execute(final xMsgMessage msg) {
-        while (true) {
-            for (final ServiceEngine engine : enginePool) {
-                if (engine.tryAcquire()) {
-                    executionPool.submit(() -> {
-                        try {
-                            engine.execute(msg);
-                        } catch (Exception e) {
-                            printUnhandledException(e);
-                        } finally {
-                            engine.release();
-                        }
-                    });
-                    return;
+    private void submit(final xMsgMessage msg) {
+        final ServiceEngine engine = acquireEngine();
+        try {
+            executionPool.submit(() -> {
+                try {
+                    if (isConfigureRequest(msg)) {
+                        engine.configure(msg);
+                    } else {
+                        engine.execute(msg);
+                    }
+                } catch (Exception e) {
+                    printUnhandledException(e);
+                } finally {
+                    releaseEngine(engine);
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            // the service is being removed
+            releaseEngine(engine);
+            discard(msg);
+        }
+    }
+
+
+    private ServiceEngine acquireEngine() {
+        // a free engine is guaranteed by the acquired permit
+        for (final ServiceEngine engine : enginePool) {
+            if (engine.tryAcquire()) {
+                return engine;
             }
         }
+        throw new IllegalStateException("no free engine for service " + name);
+    }
+
+
+    private void releaseEngine(ServiceEngine engine) {
+        engine.release();
+        freeEngines.release();
+    }
+
+
+    private static boolean isConfigureRequest(xMsgMessage msg) {
+        return msg.getMetaData().getAction().equals(xMsgMeta.ControlAction.CONFIGURE);
     }
 
 
@@ -251,12 +426,15 @@ class Service extends AbstractActor {
 
     private void destroyEngines() {
         destroyPool();
+        rejectionReports.close();
         Arrays.stream(enginePool).parallel().forEach(ServiceEngine::stop);
         userEngine.destroy();
     }
 
 
     private void destroyPool() {
+        dispatcher.interrupt();
+        requestQueue.close().forEach(this::discard);
         executionPool.shutdown();
         try {
             if (!executionPool.awaitTermination(10, TimeUnit.SECONDS)) {
@@ -280,10 +458,8 @@ class Service extends AbstractActor {
                 xMsgMeta.Builder metadata = msg.getMetaData();
                 if (!metadata.hasAction()) {
                     setup(msg);
-                } else if (metadata.getAction().equals(xMsgMeta.ControlAction.CONFIGURE)) {
-                    configure(msg);
                 } else {
-                    execute(msg);
+                    enqueue(msg);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -26,9 +26,11 @@ import org.jlab.clara.base.DpeName;
 import org.jlab.clara.base.core.ClaraConstants;
 import org.jlab.clara.base.core.ClaraComponent;
 import org.jlab.clara.base.core.DataUtil;
+import org.jlab.clara.base.core.MetadataUtil;
 import org.jlab.clara.base.error.ClaraException;
 import org.jlab.clara.engine.Engine;
 import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataBatch;
 import org.jlab.clara.engine.EngineDataType;
 import org.jlab.clara.engine.EngineStatus;
 import org.jlab.clara.sys.ccc.CompositionCompiler;
@@ -39,6 +41,10 @@ import org.jlab.coda.xmsg.core.xMsgMessage;
 import org.jlab.coda.xmsg.core.xMsgTopic;
 import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -57,11 +63,17 @@ class ServiceEngine {
 
     private final ServiceSysConfig sysConfig;
     private final ServiceReport sysReport;
+    private final CircuitBreaker circuitBreaker;
+    private final RejectionReports rejectionReports;
 
     private final Semaphore semaphore = new Semaphore(1);
 
     private final CompositionCompiler compiler;
 
+    // the data types of the engine, with the batches of every type
+    private final Set<EngineDataType> inputTypes;
+    private final Set<EngineDataType> outputTypes;
+
     private final ClaraComponent monitorFe;
 
     // Already recorded (previous) composition
@@ -74,12 +86,18 @@ class ServiceEngine {
     ServiceEngine(Engine userEngine,
                   ServiceActor base,
                   ServiceSysConfig config,
-                  ServiceReport report) {
+                  ServiceReport report,
+                  CircuitBreaker breaker,
+                  RejectionReports rejections) {
         this.base = base;
         this.engine = userEngine;
         this.sysConfig = config;
         this.sysReport = report;
+        this.circuitBreaker = breaker;
+        this.rejectionReports = rejections;
         this.compiler = new CompositionCompiler(base.getName());
+        this.inputTypes = withBatches(userEngine.getInputDataTypes());
+        this.outputTypes = withBatches(userEngine.getOutputDataTypes());
 
         DpeName monFeDpe = FrontEnd.getMonitorFrontEnd();
         this.monitorFe = monFeDpe != null ? ClaraComponent.dpe(monFeDpe.canonicalName()) : null;
@@ -93,6 +111,22 @@ class ServiceEngine {
         // nothing
     }
 
+    void warmUp(List<EngineData> samples, int iterations) {
+        try {
+            for (int i = 0; i < iterations; i++) {
+                for (EngineData sample : samples) {
+                    engine.execute(sample);
+                }
+            }
+        } catch (Exception e) {
+            Logging.error("UNHANDLED EXCEPTION ON SERVICE WARM-UP: %s", base.getName());
+            e.printStackTrace();
+        } catch (Throwable e) {
+            Logging.error("UNHANDLED CRITICAL ERROR ON SERVICE WARM-UP: %s", base.getName());
+            e.printStackTrace();
+        }
+    }
+
     public void configure(xMsgMessage message) throws ClaraException {
 
         EngineData inputData;
@@ -147,27 +181,53 @@ class ServiceEngine {
         EngineData inData = null;
         EngineData outData = null;
 
+        // an allowed request records its outcome in the breaker exactly once
+        boolean unrecorded = false;
+        boolean rejected = false;
+        boolean breakerRejected = false;
+
         try {
             inData = getEngineData(message);
             parseComposition(inData);
-            outData = executeEngine(inData);
 
-            if (outData.getStatusSeverity() == 13) {
-                Logging.error("SevereError in the engine = %s: %s",
-                    inData.getEngineName(), inData.getDescription());
-                System.exit(13);
+            if (sysConfig.isQuarantined()) {
+                outData = buildRejectedData(ClaraConstants.SERVICE_QUARANTINED, 13);
+                sysReport.incrementRejectedCount();
+                rejected = true;
+            } else if (isExpired(inData)) {
+                outData = buildExpiredData();
+                sysReport.incrementExpiredCount();
+            } else {
+                if (circuitBreaker.allowRequest()) {
+                    unrecorded = true;
+                    outData = executeEngine(inData);
+                    unrecorded = false;
+                    circuitBreaker.recordSuccess();
+
+                    if (outData.getStatusSeverity() == 13) {
+                        quarantine(outData);
+                    }
+
+                    sysReport.addExecutionTime(executionTime);
+                } else {
+                    outData = buildRejectedData(ClaraConstants.CIRCUIT_OPEN, 1);
+                    sysReport.incrementRejectedCount();
+                    rejected = true;
+                    breakerRejected = true;
+                }
             }
-
-            sysReport.addExecutionTime(executionTime);
         } catch (Exception e) {
             Logging.error("UNHANDLED EXCEPTION ON SERVICE EXECUTION: %s", base.getName());
             e.printStackTrace();
             outData = DataUtil.buildErrorData("unhandled exception", 4, e);
+            recordFailure(unrecorded);
         } catch (Throwable e) {
             Logging.error("UNHANDLED CRITICAL ERROR ON SERVICE EXECUTION: %s", base.getName());
             e.printStackTrace();
             outData = DataUtil.buildErrorData("unhandled critical error", 4, e);
+            recordFailure(unrecorded);
         } finally {
+            sysReport.setCircuitState(circuitBreaker.state().toString());
             updateMetadata(message.getMetaData(), DataUtil.getMetadata(outData));
             resetClock();
         }
@@ -178,9 +238,17 @@ class ServiceEngine {
             return;
         }
 
+        if (breakerRejected) {
+            // do not flood the front-end while the breaker is open
+            rejectionReports.reject(outData, data -> sendReport(ClaraConstants.ERROR, data));
+            return;
+        }
+
         reportProblem(outData);
         if (outData.getStatus() == EngineStatus.ERROR) {
-            sysReport.incrementFailureCount();
+            if (!rejected) {
+                sysReport.incrementFailureCount();
+            }
             return;
         }
 
@@ -199,6 +267,77 @@ class ServiceEngine {
         }
     }
 
+    /**
+     * Rejects a request that could not be queued for execution.
+     * The engine is not used, so the request can be rejected
+     * while the engine is executing another request.
+     */
+    void reject(xMsgMessage message, String description) throws ClaraException {
+        sysReport.incrementRejectedCount();
+
+        EngineData outData = buildRejectedData(description, 1);
+        xMsgMeta.Builder inMeta = message.getMetaData();
+        xMsgMeta.Builder outMeta = DataUtil.getMetadata(outData);
+        outMeta.setAuthor(base.getName());
+        outMeta.setVersion(engine.getVersion());
+        outMeta.setCommunicationId(inMeta.getCommunicationId());
+        outMeta.setComposition(inMeta.getComposition());
+        MetadataUtil.copySlot(inMeta, outMeta);
+        outMeta.setAction(inMeta.getAction());
+
+        String replyTo = getReplyTo(message);
+        if (replyTo != null) {
+            sendResponse(outData, replyTo);
+        } else {
+            rejectionReports.reject(outData, data -> sendReport(ClaraConstants.ERROR, data));
+        }
+    }
+
+    private void recordFailure(boolean unrecorded) {
+        if (unrecorded) {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    private void quarantine(EngineData outData) {
+        // the output of a fatal error is never sent to the next services,
+        // even if the engine did not set the error status
+        if (outData.getStatus() != EngineStatus.ERROR) {
+            outData.setStatus(EngineStatus.ERROR, 13);
+        }
+        // the other services of the DPE keep running,
+        // and the service can be removed and deployed again to recover
+        sysConfig.quarantine();
+        sysReport.setQuarantined(true);
+        Logging.error("SevereError in the engine = %s: %s", base.getName(),
+                      outData.getDescription());
+        Logging.error("service = %s is quarantined: new requests will be rejected",
+                      base.getName());
+    }
+
+    private boolean isExpired(EngineData inData) {
+        long deadline = inData.getDeadline();
+        return deadline > 0 && System.currentTimeMillis() > deadline;
+    }
+
+    private EngineData buildExpiredData() {
+        // the engine is not called for expired events
+        EngineData outData = new EngineData();
+        outData.setData(EngineDataType.STRING.mimeType(), ClaraConstants.UNDEFINED);
+        outData.setDescription(ClaraConstants.DEADLINE_EXCEEDED);
+        outData.setStatus(EngineStatus.ERROR, 1);
+        return outData;
+    }
+
+    private EngineData buildRejectedData(String description, int severity) {
+        // compact error: no stack trace, and the engine is not called
+        EngineData outData = new EngineData();
+        outData.setData(EngineDataType.STRING.mimeType(), ClaraConstants.UNDEFINED);
+        outData.setDescription(description);
+        outData.setStatus(EngineStatus.ERROR, severity);
+        return outData;
+    }
+
     private void parseComposition(EngineData inData) throws ClaraException {
         String currentComposition = inData.getComposition();
         if (currentComposition == null) {
@@ -224,7 +363,12 @@ class ServiceEngine {
             throws ClaraException {
         long startTime = startClock();
 
-        EngineData outData = engine.execute(inData);
+        EngineData outData;
+        if (isUnsupportedBatch(inData)) {
+            outData = executeBatch(inData);
+        } else {
+            outData = engine.execute(inData);
+        }
 
         stopClock(startTime);
 
@@ -243,6 +387,88 @@ class ServiceEngine {
         return outData;
     }
 
+    private boolean isUnsupportedBatch(EngineData inData) {
+        String mimeType = inData.getMimeType();
+        if (!EngineDataBatch.isBatch(mimeType)) {
+            return false;
+        }
+        for (EngineDataType dt : engine.getInputDataTypes()) {
+            if (dt.mimeType().equals(mimeType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private EngineData executeBatch(EngineData inData) throws ClaraException {
+        // the engine does not accept batches: pass the events one by one,
+        // unless the engine can execute all of them as a group
+        List<EngineData> events = EngineDataBatch.unpack(inData);
+        EngineData groupData = engine.executeGroup(new LinkedHashSet<>(events));
+        if (groupData != null) {
+            return groupData;
+        }
+        // a failed event is reported on its own and dropped from the batch,
+        // so the results of the other events are not lost
+        List<EngineData> results = new ArrayList<>(events.size());
+        EngineData failure = null;
+        int firstId = 0;
+        for (EngineData event : events) {
+            EngineData result = engine.execute(event);
+            if (result == null) {
+                result = buildRejectedData("null engine result", 1);
+            }
+            if (result.getStatusSeverity() == 13) {
+                // a fatal error quarantines the service
+                return result;
+            }
+            if (result.getStatus() == EngineStatus.ERROR) {
+                reportFailedEvent(event, result);
+                failure = result;
+            } else {
+                if (results.isEmpty()) {
+                    firstId = event.getCommunicationId();
+                }
+                results.add(result);
+            }
+        }
+        if (results.isEmpty()) {
+            return failure;
+        }
+        EngineData batch = EngineDataBatch.pack(results);
+        batch.setCommunicationId(firstId);
+        return batch;
+    }
+
+    private void reportFailedEvent(EngineData event, EngineData result) throws ClaraException {
+        // a warning, because the rest of the batch is still processed
+        // and the orchestrator must not request the event again
+        EngineData report = buildRejectedData(result.getDescription(),
+                                              result.getStatusSeverity());
+        report.setStatus(EngineStatus.WARNING, result.getStatusSeverity());
+        report.setCommunicationId(event.getCommunicationId());
+        report.setSlot(event.getSlot());
+        sendReport(ClaraConstants.WARNING, report);
+    }
+
+    private Set<EngineDataType> inputDataTypes() {
+        return inputTypes;
+    }
+
+    private Set<EngineDataType> outputDataTypes() {
+        return outputTypes;
+    }
+
+    private static Set<EngineDataType> withBatches(Set<EngineDataType> dataTypes) {
+        Set<EngineDataType> allTypes = new HashSet<>(dataTypes);
+        for (EngineDataType dt : dataTypes) {
+            if (!EngineDataBatch.isBatch(dt.mimeType())) {
+                allTypes.add(EngineDataType.batchOf(dt));
+            }
+        }
+        return allTypes;
+    }
+
     private void updateMetadata(xMsgMeta.Builder inMeta, xMsgMeta.Builder outMeta) {
         outMeta.setAuthor(base.getName());
         outMeta.setVersion(engine.getVersion());
@@ -251,6 +477,8 @@ class ServiceEngine {
             outMeta.setCommunicationId(inMeta.getCommunicationId());
         }
         outMeta.setComposition(inMeta.getComposition());
+        MetadataUtil.copyDeadline(inMeta, outMeta);
+        MetadataUtil.copySlot(inMeta, outMeta);
         outMeta.setExecutionTime(executionTime);
         outMeta.setAction(inMeta.getAction());
 
@@ -308,7 +536,7 @@ class ServiceEngine {
 
     private void sendReport(String topicPrefix, EngineData data) throws ClaraException {
         xMsgTopic topic = xMsgTopic.wrap(topicPrefix + xMsgConstants.TOPIC_SEP + base.getName());
-        xMsgMessage transit = DataUtil.serialize(topic, data, engine.getOutputDataTypes());
+        xMsgMessage transit = DataUtil.serialize(topic, data, outputDataTypes());
         base.send(base.getFrontEnd(), transit);
     }
 
@@ -318,7 +546,7 @@ class ServiceEngine {
                 + xMsgConstants.TOPIC_SEP + state
                 + xMsgConstants.TOPIC_SEP + sysReport.getSession()
                 + xMsgConstants.TOPIC_SEP + base.getEngine());
-            xMsgMessage transit = DataUtil.serialize(topic, data, engine.getOutputDataTypes());
+            xMsgMessage transit = DataUtil.serialize(topic, data, outputDataTypes());
             base.sendUncheck(monitorFe.getProxyAddress(), transit);
         }
     }
@@ -330,11 +558,12 @@ class ServiceEngine {
         if (mimeType.equals(ClaraConstants.SHARED_MEMORY_KEY)) {
             sysReport.incrementShrmReads();
             String sender = metadata.getSender();
+            int slot = MetadataUtil.getSlot(metadata);
             int id = metadata.getCommunicationId();
-            return SharedMemory.getEngineData(base.getName(), sender, id);
+            return SharedMemory.getEngineData(base.getName(), sender, slot, id);
         } else {
             sysReport.addBytesReceived(message.getDataSize());
-            return DataUtil.deserialize(message, engine.getInputDataTypes());
+            return DataUtil.deserialize(message, inputDataTypes());
         }
     }
 
@@ -343,7 +572,7 @@ class ServiceEngine {
         xMsgTopic topic = xMsgTopic.wrap(receiver);
         if (SharedMemory.containsReceiver(receiver)) {
             int id = data.getCommunicationId();
-            SharedMemory.putEngineData(receiver, base.getName(), id, data);
+            SharedMemory.putEngineData(receiver, base.getName(), data.getSlot(), id, data);
             sysReport.incrementShrmWrites();
 
             xMsgMeta.Builder metadata = xMsgMeta.newBuilder();
@@ -352,10 +581,12 @@ class ServiceEngine {
             metadata.setCommunicationId(id);
             metadata.setAction(xMsgMeta.ControlAction.EXECUTE);
             metadata.setDataType(ClaraConstants.SHARED_MEMORY_KEY);
+            // the CLARA fields (deadline, slot) are needed before the data is read
+            metadata.setUnknownFields(DataUtil.getMetadata(data).getUnknownFields());
 
             return new xMsgMessage(topic, metadata, ClaraConstants.SHARED_MEMORY_KEY.getBytes());
         } else {
-            xMsgMessage output = DataUtil.serialize(topic, data, engine.getOutputDataTypes());
+            xMsgMessage output = DataUtil.serialize(topic, data, outputDataTypes());
             sysReport.addBytesSent(output.getDataSize());
             return output;
         }
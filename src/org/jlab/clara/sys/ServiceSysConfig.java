@@ -41,6 +41,8 @@ class ServiceSysConfig {
     private int dataRequestCount;
     private int doneRequestCount;
 
+    private volatile boolean isQuarantined;
+
     ServiceSysConfig(String name, String initialState) {
         state = new ServiceState(name, initialState);
     }
@@ -106,6 +108,14 @@ class ServiceSysConfig {
         return doneRequestCount;
     }
 
+    public boolean isQuarantined() {
+        return isQuarantined;
+    }
+
+    public void quarantine() {
+        isQuarantined = true;
+    }
+
     public void updateState(String newState) {
         state.setState(newState);
     }
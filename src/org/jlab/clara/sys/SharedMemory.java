@@ -32,7 +32,7 @@ final class SharedMemory {
     /*
       key = <receiver-service>
       value = map where:
-          key = <sender-service>:<communication-id>,
+          key = <sender-service>:<slot>:<communication-id>,
           value = EngineData object
     */
     private static final Map<String, Map<String, EngineData>>
@@ -41,28 +41,42 @@ final class SharedMemory {
     private SharedMemory() {
     }
 
-    static void putEngineData(String receiver, String sender, int id, EngineData data) {
+    static void putEngineData(String receiver, String sender, int slot, int id,
+                              EngineData data) {
         Map<String, EngineData> inputs = sharedData.get(receiver);
         if (inputs != null) {
-            String key = sender + ":" + id;
-            inputs.put(key, data);
+            inputs.put(key(sender, slot, id), data);
         } else {
             throw new IllegalStateException("Receiver not registered: " + receiver);
         }
     }
 
 
-    static EngineData getEngineData(String receiver, String sender, int id) {
+    static EngineData getEngineData(String receiver, String sender, int slot, int id) {
         Map<String, EngineData> inputs = sharedData.get(receiver);
         EngineData data = null;
         if (inputs != null) {
-            String key = sender + ":" + id;
-            data = inputs.get(key);
-            inputs.remove(key);
+            data = inputs.remove(key(sender, slot, id));
         }
         return data;
     }
 
+    static String getMimeType(String receiver, String sender, int slot, int id) {
+        Map<String, EngineData> inputs = sharedData.get(receiver);
+        if (inputs != null) {
+            EngineData data = inputs.get(key(sender, slot, id));
+            if (data != null) {
+                return data.getMimeType();
+            }
+        }
+        return "";
+    }
+
+    // the pipelined files of a node reuse the same communication ids
+    private static String key(String sender, int slot, int id) {
+        return sender + ":" + slot + ":" + id;
+    }
+
     static void addReceiver(String receiver) {
         sharedData.put(receiver, new ConcurrentHashMap<>());
     }
@@ -68,6 +68,11 @@ public class JsonReportBuilder implements ExternalReport {
                 serviceRuntime.put("bytes_recv", sr.getBytesReceived());
                 serviceRuntime.put("bytes_sent", sr.getBytesSent());
                 serviceRuntime.put("exec_time", sr.getExecutionTime());
+                serviceRuntime.put("n_rejected", sr.getRejectedCount());
+                serviceRuntime.put("n_expired", sr.getExpiredCount());
+                serviceRuntime.put("warmup_time", sr.getWarmUpTime());
+                serviceRuntime.put("circuit_state", sr.getCircuitState());
+                serviceRuntime.put("quarantined", sr.isQuarantined());
 
                 servicesRuntimeArray.put(serviceRuntime);
             }
@@ -46,6 +46,12 @@ public class ServiceReport extends BaseReport {
     private final AtomicLong bytesReceived = new AtomicLong();
     private final AtomicLong bytesSent = new AtomicLong();
     private final AtomicLong executionTime = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong warmUpTime = new AtomicLong();
+
+    private volatile String circuitState = "closed";
+    private volatile boolean quarantined = false;
 
     public ServiceReport(ClaraComponent comp, Engine engine, String session) {
         super(comp.getCanonicalName(), engine.getAuthor(), engine.getDescription());
@@ -112,6 +118,46 @@ public class ServiceReport extends BaseReport {
         executionTime.getAndAdd(deltaTime);
     }
 
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public void incrementRejectedCount() {
+        rejectedCount.getAndIncrement();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public void incrementExpiredCount() {
+        expiredCount.getAndIncrement();
+    }
+
+    public long getWarmUpTime() {
+        return warmUpTime.get();
+    }
+
+    public void setWarmUpTime(long time) {
+        warmUpTime.set(time);
+    }
+
+    public String getCircuitState() {
+        return circuitState;
+    }
+
+    public void setCircuitState(String state) {
+        circuitState = state;
+    }
+
+    public boolean isQuarantined() {
+        return quarantined;
+    }
+
+    public void setQuarantined(boolean quarantined) {
+        this.quarantined = quarantined;
+    }
+
     public String getVersion() {
         return version;
     }
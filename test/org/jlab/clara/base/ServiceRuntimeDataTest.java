@@ -89,4 +89,29 @@ public class ServiceRuntimeDataTest {
     public void executionTime() throws Exception {
         assertThat(data.executionTime(), is(243235243543L));
     }
+
+    @Test
+    public void numRejected() throws Exception {
+        assertThat(data.numRejected(), is(150L));
+    }
+
+    @Test
+    public void numExpired() throws Exception {
+        assertThat(data.numExpired(), is(12L));
+    }
+
+    @Test
+    public void warmUpTime() throws Exception {
+        assertThat(data.warmUpTime(), is(1520000L));
+    }
+
+    @Test
+    public void circuitState() throws Exception {
+        assertThat(data.circuitState(), is("open"));
+    }
+
+    @Test
+    public void quarantined() throws Exception {
+        assertThat(data.isQuarantined(), is(true));
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ *   Copyright (c) 2016.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.base.core;
+
+import org.jlab.clara.engine.ClaraSerializer;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+
+public class DataUtilTest {
+
+    @Test
+    public void serializeSendsRemainingBytesOfDirectBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+        buffer.put(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        buffer.position(2).limit(5);
+
+        assertThat(serialize(buffer).getData(), is(new byte[] {3, 4, 5}));
+    }
+
+    @Test
+    public void serializeSendsWholeArrayOfUnflippedBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.put(new byte[] {1, 2, 3, 4});
+
+        assertThat(serialize(buffer).getData(), is(new byte[] {1, 2, 3, 4}));
+    }
+
+
+    private static xMsgMessage serialize(ByteBuffer buffer) throws Exception {
+        EngineDataType type = new EngineDataType("binary/test", new ClaraSerializer() {
+            @Override
+            public ByteBuffer write(Object data) {
+                return (ByteBuffer) data;
+            }
+
+            @Override
+            public Object read(ByteBuffer buffer) {
+                return buffer;
+            }
+        });
+        EngineData data = new EngineData();
+        data.setData(type.mimeType(), buffer);
+        return DataUtil.serialize(xMsgTopic.wrap("test"), data, Collections.singleton(type));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EngineDataBatchTest {
+
+    @Test
+    public void batchMimeTypes() throws Exception {
+        String batchType = EngineDataBatch.batchType("binary/data-hipo");
+
+        assertThat(batchType, is("binary/data-hipo+batch"));
+        assertThat(EngineDataBatch.isBatch(batchType), is(true));
+        assertThat(EngineDataBatch.isBatch("binary/data-hipo"), is(false));
+        assertThat(EngineDataBatch.elementType(batchType), is("binary/data-hipo"));
+    }
+
+    @Test
+    public void packEvents() throws Exception {
+        EngineData batch = EngineDataBatch.pack(Arrays.asList(event("a"), event("b")));
+
+        @SuppressWarnings("unchecked")
+        List<String> data = (List<String>) batch.getData();
+
+        assertThat(batch.getMimeType(), is("text/string+batch"));
+        assertThat(data, contains("a", "b"));
+    }
+
+    @Test
+    public void packEventsWithMixedTypesFails() throws Exception {
+        EngineData other = new EngineData();
+        other.setData(EngineDataType.SINT32.mimeType(), 1);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> EngineDataBatch.pack(Arrays.asList(event("a"), other)));
+    }
+
+    @Test
+    public void unpackEventsWithConsecutiveIds() throws Exception {
+        EngineData batch = EngineDataBatch.pack(Arrays.asList(event("a"), event("b")));
+        batch.setCommunicationId(40);
+
+        List<EngineData> events = EngineDataBatch.unpack(batch);
+
+        assertThat(events.size(), is(2));
+        assertThat(events.get(1).getMimeType(), is("text/string"));
+        assertThat(events.get(1).getData(), is("b"));
+        assertThat(events.get(1).getCommunicationId(), is(41));
+    }
+
+    @Test
+    public void unpackEventsWithSlotOfBatch() throws Exception {
+        EngineData batch = EngineDataBatch.pack(Arrays.asList(event("a"), event("b")));
+        batch.setSlot(3);
+
+        List<EngineData> events = EngineDataBatch.unpack(batch);
+
+        assertThat(events.get(0).getSlot(), is(3));
+        assertThat(events.get(1).getSlot(), is(3));
+    }
+
+    private static EngineData event(String data) {
+        EngineData event = new EngineData();
+        event.setData(EngineDataType.STRING.mimeType(), data);
+        return event;
+    }
+}
@@ -28,12 +28,15 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.array;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.sameInstance;
 
 public class EngineDataTypeTest {
@@ -182,4 +185,17 @@ public class EngineDataTypeTest {
         assertThat(d, is(sameInstance(bb)));
         assertThat(d.order(), is(ByteOrder.LITTLE_ENDIAN));
     }
+
+    @Test
+    public void testBatchSerializer() throws Exception {
+        EngineDataType dt = EngineDataType.batchOf(EngineDataType.STRING);
+        ClaraSerializer s = dt.serializer();
+
+        ByteBuffer b = s.write(Arrays.asList("master", "of", "puppets"));
+        @SuppressWarnings("unchecked")
+        List<String> d = (List<String>) s.read(b);
+
+        assertThat(dt.mimeType(), is("text/string+batch"));
+        assertThat(d, contains("master", "of", "puppets"));
+    }
 }
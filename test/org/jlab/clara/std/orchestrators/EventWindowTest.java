@@ -0,0 +1,88 @@
+package org.jlab.clara.std.orchestrators;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+public class EventWindowTest {
+
+    private static final double REPORT_TIME = 1000;
+
+    // the events processed in a report when every request takes the given time
+    private static int events(int requests, double latency) {
+        return (int) Math.round(requests * REPORT_TIME / latency);
+    }
+
+    @Test
+    public void firstReportIsSkipped() throws Exception {
+        EventWindow window = new EventWindow(8, 16);
+
+        assertThat(window.update(events(8, 10), REPORT_TIME), is(8));
+    }
+
+    @Test
+    public void windowGrowsWhileLatencyDoesNotIncrease() throws Exception {
+        EventWindow window = new EventWindow(8, 16);
+        window.update(events(8, 10), REPORT_TIME);
+
+        assertThat(window.update(events(8, 10), REPORT_TIME), is(9));
+        // the report with both sizes is skipped
+        assertThat(window.update(events(9, 10), REPORT_TIME), is(9));
+        assertThat(window.update(events(9, 10), REPORT_TIME), is(10));
+    }
+
+    @Test
+    public void windowDoesNotGrowOverMaximum() throws Exception {
+        EventWindow window = new EventWindow(8, 9);
+        window.update(events(8, 10), REPORT_TIME);
+
+        assertThat(window.update(events(8, 10), REPORT_TIME), is(9));
+        window.update(events(9, 10), REPORT_TIME);
+        assertThat(window.update(events(9, 10), REPORT_TIME), is(9));
+    }
+
+    @Test
+    public void windowShrinksWhenEventsAreQueued() throws Exception {
+        EventWindow window = new EventWindow(8, 32);
+        window.update(events(8, 10), REPORT_TIME);
+        window.update(events(8, 10), REPORT_TIME);
+        window.update(events(9, 10), REPORT_TIME);
+
+        // same throughput with twice the requests: the latency doubles
+        assertThat(window.update(events(8, 10) * 9 / 8, REPORT_TIME * 2), is(6));
+    }
+
+    @Test
+    public void latencyIsReplacedWhenShrinkingDoesNotReduceIt() throws Exception {
+        EventWindow window = new EventWindow(8, 32);
+        window.update(events(8, 10), REPORT_TIME);
+        window.update(events(8, 10), REPORT_TIME);
+        window.update(events(9, 10), REPORT_TIME);
+
+        // the events are twice as expensive
+        assertThat(window.update(events(9, 20), REPORT_TIME), is(6));
+        window.update(events(6, 20), REPORT_TIME);
+        assertThat(window.update(events(6, 20), REPORT_TIME), is(7));
+    }
+
+    @Test
+    public void resetSkipsFirstReportOfNextFile() throws Exception {
+        EventWindow window = new EventWindow(4, 8);
+        window.update(events(4, 10), REPORT_TIME);
+        window.update(events(4, 10), REPORT_TIME);
+
+        window.reset();
+
+        assertThat(window.update(events(5, 50), REPORT_TIME), is(5));
+        assertThat(window.update(events(5, 50), REPORT_TIME), is(6));
+    }
+
+    @Test
+    public void maximumIsNotLowerThanInitialSize() throws Exception {
+        EventWindow window = new EventWindow(8, 4);
+
+        assertThat(window.size(), is(8));
+        assertThat(window.maxSize(), is(8));
+    }
+}
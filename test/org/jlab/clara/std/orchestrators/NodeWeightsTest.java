@@ -0,0 +1,112 @@
+package org.jlab.clara.std.orchestrators;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class NodeWeightsTest {
+
+    private NodeWeights<String> weights;
+    private Map<String, Double> pending;
+
+    @BeforeEach
+    public void setUp() {
+        weights = new NodeWeights<>();
+        weights.addNode("fast", 32);
+        weights.addNode("slow", 16);
+        weights.addNode("new", 8);
+        weights.addFile(1000, 100);
+        pending = new HashMap<>();
+    }
+
+    @Test
+    public void unmeasuredNodesUseTheirCores() throws Exception {
+        assertThat(weights.eventRate("fast"), is(32.0));
+        assertThat(weights.eventRate("slow"), is(16.0));
+        assertThat(weights.eventRate("other"), is(0.0));
+    }
+
+    @Test
+    public void unmeasuredNodesUseTheRatePerCoreOfMeasuredNodes() throws Exception {
+        weights.update("fast", 6400, 1000);
+        weights.update("slow", 1600, 1000);
+
+        assertThat(weights.eventRate("fast"), is(6.4));
+        assertThat(weights.eventRate("slow"), is(1.6));
+        assertThat(weights.eventRate("new"), is(closeTo(8 * 8.0 / 48, 1e-9)));
+    }
+
+    @Test
+    public void expectedEventsUseSizeOfOpenedFiles() throws Exception {
+        weights.addFile(3000, 100);
+
+        assertThat(weights.expectedEvents(2000), is(closeTo(100, 1e-9)));
+    }
+
+    @Test
+    public void largestFileWhenNodesAreNotMeasured() throws Exception {
+        double[] files = {1000, 500, 100};
+
+        assertThat(weights.select("slow", files, pending), is(0));
+    }
+
+    @Test
+    public void largeFilesAreLeftForFastNodes() throws Exception {
+        weights.update("fast", 4000, 1000);
+        weights.update("slow", 1000, 1000);
+        weights.update("new", 1000, 1000);
+        double[] files = {1000, 100};
+
+        // the fast node is busy, but it would still finish the large file first
+        pending.put("fast", 2000.0);
+
+        assertThat(weights.select("fast", files, pending), is(0));
+        assertThat(weights.select("slow", files, pending), is(1));
+    }
+
+    @Test
+    public void slowNodeTakesLargeFileIfFastNodesAreBusy() throws Exception {
+        weights.update("fast", 4000, 1000);
+        weights.update("slow", 1000, 1000);
+        weights.update("new", 1000, 1000);
+        double[] files = {1000, 100};
+
+        pending.put("fast", 20000.0);
+        pending.put("new", 20000.0);
+
+        assertThat(weights.select("slow", files, pending), is(0));
+    }
+
+    @Test
+    public void slowNodeWaitsIfFasterNodesFinishAllFiles() throws Exception {
+        weights.update("fast", 4000, 1000);
+        weights.update("slow", 1000, 1000);
+        weights.update("new", 1000, 1000);
+        double[] files = {1000};
+
+        assertThat(weights.select("slow", files, pending), is(-1));
+    }
+
+    @Test
+    public void removedNodesAreNotWaitedFor() throws Exception {
+        weights.update("fast", 4000, 1000);
+        weights.update("slow", 1000, 1000);
+        weights.update("new", 1000, 1000);
+        weights.removeNode("fast");
+        weights.removeNode("new");
+        double[] files = {1000};
+
+        assertThat(weights.select("slow", files, pending), is(0));
+    }
+
+    @Test
+    public void noFileIfQueueIsEmpty() throws Exception {
+        assertThat(weights.select("fast", new double[0], pending), is(-1));
+    }
+}
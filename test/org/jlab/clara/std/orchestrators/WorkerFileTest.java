@@ -0,0 +1,38 @@
+package org.jlab.clara.std.orchestrators;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.jupiter.api.Test;
+
+public class WorkerFileTest {
+
+    @Test
+    public void wholeFileIsNotRange() throws Exception {
+        WorkerFile file = new WorkerFile("in.ev", "out_in.ev");
+
+        assertThat(file.isRange(), is(false));
+        assertThat(file.wholeFile(), is(sameInstance(file)));
+    }
+
+    @Test
+    public void rangeKeepsTheWholeFile() throws Exception {
+        WorkerFile file = new WorkerFile("in.ev", "out_in.ev");
+
+        WorkerFile range = file.range(2, 2000, 1000).wholeFile().range(3, 3000, 500);
+
+        assertThat(range.isRange(), is(true));
+        assertThat(range.inputName, is("in.ev"));
+        assertThat(range.rangeIndex, is(3));
+        assertThat(range.firstEvent, is(3000));
+        assertThat(range.numEvents, is(500));
+        assertThat(range.wholeFile(), is(sameInstance(file)));
+    }
+
+    @Test
+    public void rangeFileNameHasIndexBeforeExtension() throws Exception {
+        assertThat(WorkerFile.rangeFileName("/data/out_in.hipo", 7), is("/data/out_in_00007.hipo"));
+        assertThat(WorkerFile.rangeFileName("out_in", 12), is("out_in_00012"));
+    }
+}
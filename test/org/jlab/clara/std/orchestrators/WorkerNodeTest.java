@@ -22,6 +22,7 @@
 
 package org.jlab.clara.std.orchestrators;
 
+import org.jlab.clara.base.Composition;
 import org.jlab.clara.base.DpeName;
 import org.jlab.clara.base.ServiceName;
 import org.jlab.clara.engine.EngineData;
@@ -46,6 +47,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
@@ -310,6 +312,41 @@ public class WorkerNodeTest {
     }
 
 
+    @Test
+    public void pipelineSlotWaitsForReleasedCores() throws Exception {
+        node = new WorkerNode(orchestrator, SingleLangData.application());
+        WorkerNode slotNode = node.createPipelineSlot();
+
+        OrchestratorPaths paths = new OrchestratorPaths
+                .Builder("/mnt/data/in.dat", "/mnt/data/out.dat")
+                .build();
+        node.setFiles(paths, new WorkerFile("in1.dat", "out1.dat"));
+        slotNode.setFiles(paths, new WorkerFile("in2.dat", "out2.dat"));
+
+        node.sendEvents(2);
+        slotNode.sendEvents(2);
+
+        // the requests of the second file are deferred
+        assertThat(requestedSlots(), contains(0, 0));
+
+        // every released core sends one deferred request, until none is left
+        node.releaseCore();
+        node.releaseCore();
+        node.releaseCore();
+
+        assertThat(requestedSlots(), contains(0, 0, 1, 1));
+    }
+
+
+    private List<Integer> requestedSlots() throws Exception {
+        ArgumentCaptor<EngineData> requestCaptor = ArgumentCaptor.forClass(EngineData.class);
+        verify(orchestrator, atLeast(0)).send(any(Composition.class), requestCaptor.capture());
+        return requestCaptor.getAllValues().stream()
+                            .map(EngineData::getSlot)
+                            .collect(Collectors.toList());
+    }
+
+
     private static Set<DpeName> flatDpes(Set<ServiceName> set) {
         return set.stream().map(ServiceName::dpe).collect(Collectors.toSet());
     }
@@ -0,0 +1,202 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.jlab.clara.base.core.ClaraConstants;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.clara.engine.EngineStatus;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AbstractEventStreamerServiceTest {
+
+    private TestStreamer service;
+
+    @BeforeEach
+    public void setUp() {
+        service = new TestStreamer();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.destroy();
+    }
+
+
+    @Test
+    public void everyRequestGetsOneEvent() throws Exception {
+        open(new JSONObject());
+        service.source.addAll(Arrays.asList("e0", "e1", "e2"));
+
+        for (int i = 0; i < 3; i++) {
+            EngineData event = request("next", 0);
+            assertThat(event.getData(), is("e" + i));
+            assertThat(event.getCommunicationId(), is(i));
+        }
+        assertThat(stats().getLong("delivered_events"), is(3L));
+    }
+
+
+    @Test
+    public void stopsPullingEventsWhenTheBufferIsFull() throws Exception {
+        open(new JSONObject().put("buffer", 2));
+        service.source.addAll(Arrays.asList("e0", "e1", "e2", "e3", "e4"));
+
+        // two events in the buffer, and one waiting for a free slot
+        waitFor(() -> service.source.size() == 2);
+        Thread.sleep(50);
+        assertThat(service.source.size(), is(2));
+
+        request("next", 0);
+
+        waitFor(() -> service.source.size() == 1);
+    }
+
+
+    @Test
+    public void limitsTheRateOfEvents() throws Exception {
+        open(new JSONObject().put("max_rate", 50));
+        service.source.addAll(Arrays.asList("e0", "e1", "e2", "e3", "e4", "e5"));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            assertThat(request("next", 0).getData(), is("e" + i));
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // one event every 20 ms
+        assertThat(elapsed, greaterThanOrEqualTo(90L));
+    }
+
+
+    @Test
+    public void endOfStreamReturnsEndOfFile() throws Exception {
+        open(new JSONObject());
+        service.source.addAll(Arrays.asList("e0", TestStreamer.END));
+
+        assertThat(request("next", 0).getData(), is("e0"));
+
+        EngineData eof = request("next", 0);
+        assertThat(eof.getDescription(), is("End of file"));
+        assertThat(eof.getStatusSeverity(), is(1));
+        assertThat(eof.getData(), is(0));
+
+        // the last event in process is done
+        EngineData lastEof = request("next-rec", 0);
+        assertThat(lastEof.getDescription(), is("End of file"));
+        assertThat(lastEof.getStatusSeverity(), is(2));
+        assertThat(lastEof.getData(), is(1));
+    }
+
+
+    @Test
+    public void failedSourceEndsTheStream() throws Exception {
+        open(new JSONObject());
+        service.source.addAll(Arrays.asList("e0", TestStreamer.FAIL));
+
+        assertThat(request("next", 0).getData(), is("e0"));
+
+        EngineData eof = request("next", 0);
+        assertThat(eof.getDescription(), is("End of file"));
+        assertThat(stats().getString("error"), containsString("source failed"));
+    }
+
+
+    @Test
+    public void idleStreamFreesTheEngine() throws Exception {
+        open(new JSONObject().put("idle_wait", 50));
+
+        EngineData idle = request("next", 0);
+        assertThat(idle.getStatus(), is(EngineStatus.ERROR));
+        assertThat(idle.getDescription(), is(ClaraConstants.EVENT_NOT_READY));
+        assertThat(stats().getLong("idle_replies"), is(1L));
+
+        service.source.add("e0");
+
+        assertThat(request("next", 0).getData(), is("e0"));
+    }
+
+
+    @Test
+    public void closeEndsTheRequestsWaitingForEvents() throws Exception {
+        open(new JSONObject().put("idle_wait", 10_000));
+
+        CompletableFuture<EngineData> waiting =
+                CompletableFuture.supplyAsync(() -> request("next", 0));
+        Thread.sleep(100);
+
+        configure(new JSONObject().put("action", "close"));
+
+        EngineData eof = waiting.get(2, TimeUnit.SECONDS);
+        assertThat(eof.getDescription(), is("End of file"));
+    }
+
+
+    private void open(JSONObject options) {
+        configure(options.put("action", "open"));
+    }
+
+
+    private void configure(JSONObject data) {
+        EngineData config = new EngineData();
+        config.setData(EngineDataType.JSON.mimeType(), data.toString());
+        service.configure(config);
+    }
+
+
+    private EngineData request(String data, int id) {
+        EngineData input = new EngineData();
+        input.setData(EngineDataType.STRING.mimeType(), data);
+        input.setCommunicationId(id);
+        return service.execute(input);
+    }
+
+
+    private JSONObject stats() {
+        return new JSONObject((String) request("stats", 0).getData());
+    }
+
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) {
+                throw new AssertionError("condition not reached");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
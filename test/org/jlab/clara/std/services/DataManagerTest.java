@@ -32,6 +32,7 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.function.Consumer;
 
 import org.jlab.clara.engine.EngineData;
@@ -329,6 +330,85 @@ public class DataManagerTest {
     }
 
 
+    @Tag("integration")
+    @Test
+    public void executeSavesOnlyTheGivenOutputFile() throws Exception {
+        TestPaths paths = setTestDirectories();
+        Path range = paths.stageDir.resolve("out_collider_00001.txt");
+        Path rangeChunk = paths.stageDir.resolve("out_collider_00001.part00000.txt");
+        Path otherRange = paths.stageDir.resolve("out_collider_00002.txt");
+        for (Path file : new Path[] {range, rangeChunk, otherRange, paths.stagedOutputFile}) {
+            Files.copy(paths.inputFile, file);
+            file.toFile().deleteOnExit();
+        }
+
+        EngineData request = createJsonRequest(data -> {
+            data.put("type", "exec");
+            data.put("action", "save_output");
+            data.put("file", paths.inputFile.getFileName().toString());
+            data.put("output", range.getFileName().toString());
+        });
+
+        EngineData result = dm.execute(request);
+
+        assertThat("Result is not an error", result.getStatus(), is(not(EngineStatus.ERROR)));
+        assertThat("Range output saved", Files.exists(range), is(false));
+        assertThat("Range chunk saved", Files.exists(rangeChunk), is(false));
+        assertThat("Other range kept", Files.exists(otherRange), is(true));
+        assertThat("Staged output kept", Files.exists(paths.stagedOutputFile), is(true));
+        assertThat("Saved range exists",
+                   Files.exists(paths.outputDir.resolve(range.getFileName())), is(true));
+
+        paths.outputDir.resolve(range.getFileName()).toFile().deleteOnExit();
+        paths.outputDir.resolve(rangeChunk.getFileName()).toFile().deleteOnExit();
+    }
+
+
+    @Tag("integration")
+    @Test
+    public void executeSavesCompletedChunkWhileOutputIsWritten() throws Exception {
+        TestPaths paths = setTestDirectories();
+        Path completed = paths.stageDir.resolve("out_collider.part00000.txt");
+        Path current = paths.stageDir.resolve("out_collider.part00001.txt");
+        for (Path file : new Path[] {completed, current}) {
+            Files.copy(paths.inputFile, file);
+            file.toFile().deleteOnExit();
+            paths.outputDir.resolve(file.getFileName()).toFile().deleteOnExit();
+        }
+
+        EngineData chunkRequest = createJsonRequest(data -> {
+            data.put("type", "exec");
+            data.put("action", "save_output");
+            data.put("file", paths.inputFile.getFileName().toString());
+            data.put("output", completed.getFileName().toString());
+        });
+
+        EngineData chunkResult = dm.execute(chunkRequest);
+
+        assertThat("Result is not an error",
+                   chunkResult.getStatus(), is(not(EngineStatus.ERROR)));
+        assertThat("Completed chunk saved",
+                   Files.exists(paths.outputDir.resolve(completed.getFileName())), is(true));
+        assertThat("Current chunk kept", Files.exists(current), is(true));
+
+        Files.write(current, "more events".getBytes(), StandardOpenOption.APPEND);
+
+        EngineData outputRequest = createJsonRequest(data -> {
+            data.put("type", "exec");
+            data.put("action", "save_output");
+            data.put("file", paths.inputFile.getFileName().toString());
+        });
+
+        EngineData outputResult = dm.execute(outputRequest);
+
+        assertThat("Result is not an error",
+                   outputResult.getStatus(), is(not(EngineStatus.ERROR)));
+        assertThat("Last chunk saved",
+                   Files.exists(paths.outputDir.resolve(current.getFileName())), is(true));
+        assertThat("Last chunk removed", Files.exists(current), is(false));
+    }
+
+
     @Tag("integration")
     @Test
     public void executeSavesOutputFileIntoExistingSymlinkDirectory() throws Exception {
@@ -544,6 +624,19 @@ public class DataManagerTest {
     }
 
 
+    @Test
+    public void executeReturnsErrorOnOutputFileWithFullPath() throws Exception {
+        EngineData request = createJsonRequest(data -> {
+            data.put("type", "exec");
+            data.put("action", "save_output");
+            data.put("file", "file.ev");
+            data.put("output", "/mnt/exp/out/file.ev");
+        });
+
+        assertErrorOnExecute(request, "invalid output file name");
+    }
+
+
     private EngineData createJsonRequest(Consumer<JSONObject> builder) {
         JSONObject data = new JSONObject();
         builder.accept(data);
@@ -0,0 +1,115 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class EventIndexFileTest {
+
+    private Path file;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        file = Files.createTempFile("events", ".dat");
+        Files.write(file, new byte[64]);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(EventIndexFile.sidecar(file));
+        Files.deleteIfExists(file);
+    }
+
+
+    @Test
+    public void sidecarIsNamedAfterInputFile() throws Exception {
+        Path sidecar = EventIndexFile.sidecar(file);
+
+        assertThat(sidecar.getParent(), is(file.getParent()));
+        assertThat(sidecar.getFileName().toString(), is(file.getFileName() + ".claraidx"));
+    }
+
+
+    @Test
+    public void readMissingSidecar() throws Exception {
+        assertThat(EventIndexFile.read(file), is(nullValue()));
+    }
+
+
+    @Test
+    public void readEventCount() throws Exception {
+        EventIndexFile.write(file, 27, null);
+
+        EventIndexFile sidecar = EventIndexFile.read(file);
+
+        assertThat(sidecar.count(), is(27));
+        assertThat(sidecar.index(), is(nullValue()));
+    }
+
+
+    @Test
+    public void readEventOffsets() throws Exception {
+        EventIndex index = EventIndex.builder().add(0, 16).add(16, 8).add(24, 40).build();
+        EventIndexFile.write(file, index.count(), index);
+
+        EventIndexFile sidecar = EventIndexFile.read(file);
+
+        assertThat(sidecar.count(), is(3));
+        assertThat(sidecar.index(), is(notNullValue()));
+        assertThat(sidecar.index().offset(2), is(24L));
+        assertThat(sidecar.index().length(2), is(40));
+    }
+
+
+    @Test
+    public void writeRejectsIndexWithOtherCount() throws Exception {
+        EventIndex index = EventIndex.builder().add(0, 16).add(16, 8).build();
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> EventIndexFile.write(file, 3, index));
+        assertThat(EventIndexFile.read(file), is(nullValue()));
+    }
+
+
+    @Test
+    public void ignoreSidecarOfModifiedFile() throws Exception {
+        EventIndexFile.write(file, 27, null);
+
+        FileTime time = Files.getLastModifiedTime(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(time.toMillis() + 5000));
+
+        assertThat(EventIndexFile.read(file), is(nullValue()));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventPrefetcherTest {
+
+    private EventPrefetcher prefetcher;
+
+    @AfterEach
+    public void tearDown() {
+        if (prefetcher != null) {
+            prefetcher.stop();
+        }
+    }
+
+
+    @Test
+    public void returnsEventsInOrder() throws Exception {
+        prefetcher = new EventPrefetcher("test", n -> "event" + n, 4, 3, 10);
+        prefetcher.start();
+
+        for (int i = 3; i < 10; i++) {
+            EventPrefetcher.Event event = prefetcher.next();
+            assertThat(event.number(), is(i));
+            assertThat(event.get(), is("event" + i));
+        }
+    }
+
+
+    @Test
+    public void keepsReaderErrorsForTheFailedEvent() throws Exception {
+        prefetcher = new EventPrefetcher("test", n -> {
+            if (n == 1) {
+                throw new EventReaderException("corrupted event");
+            }
+            return n;
+        }, 4, 0, 3);
+        prefetcher.start();
+
+        assertThat(prefetcher.next().get(), is(0));
+        EventPrefetcher.Event failed = prefetcher.next();
+        assertThrows(EventReaderException.class, failed::get);
+        assertThat(prefetcher.next().get(), is(2));
+    }
+
+
+    @Test
+    public void countsHitsWhenTheRingIsFilled() throws Exception {
+        prefetcher = new EventPrefetcher("test", n -> n, 4, 0, 4);
+        prefetcher.start();
+        waitRingSize(4);
+
+        for (int i = 0; i < 4; i++) {
+            prefetcher.next();
+        }
+
+        assertThat(prefetcher.hits(), is(4L));
+        assertThat(prefetcher.misses(), is(0L));
+        assertThat(prefetcher.hitRate(), is(1.0));
+        assertThat(prefetcher.stats().getLong("hits"), is(4L));
+        assertThat(prefetcher.stats().getDouble("hit_rate"), is(1.0));
+    }
+
+
+    @Test
+    public void stopWaitsForTheEventBeingRead() throws Exception {
+        AtomicInteger reading = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        prefetcher = new EventPrefetcher("test", n -> {
+            reading.incrementAndGet();
+            started.countDown();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new EventReaderException(e);
+            } finally {
+                reading.decrementAndGet();
+            }
+            return n;
+        }, 4, 0, 1000);
+        prefetcher.start();
+        started.await();
+
+        prefetcher.stop();
+
+        assertThat(reading.get(), is(0));
+        assertThrows(EventReaderException.class, () -> prefetcher.next().get());
+    }
+
+
+    @Test
+    public void doesNotWaitIfTheReaderThreadIsDead() throws Exception {
+        prefetcher = new EventPrefetcher("test", n -> {
+            throw new LinkageError("unexpected error");
+        }, 4, 0, 3);
+        prefetcher.start();
+
+        EventPrefetcher.Event event = prefetcher.next();
+
+        assertThrows(EventReaderException.class, event::get);
+    }
+
+
+    private void waitRingSize(int size) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (prefetcher.size() == size) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class EventWriteBehindTest {
+
+    private final List<Object> written = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> flushes = Collections.synchronizedList(new ArrayList<>());
+
+
+    @Test
+    public void closeWritesAllQueuedEvents() throws Exception {
+        EventWriteBehind writeBehind = new EventWriteBehind("test", new TestSink(-1), 4, 0, 0);
+        writeBehind.start();
+
+        for (int i = 0; i < 10; i++) {
+            writeBehind.put(i);
+        }
+        writeBehind.close();
+
+        assertThat(written, contains(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        assertThat(writeBehind.writtenEvents(), is(10L));
+    }
+
+
+    @Test
+    public void flushEveryGivenNumberOfEvents() throws Exception {
+        EventWriteBehind writeBehind = new EventWriteBehind("test", new TestSink(-1), 16, 4, 0);
+        writeBehind.start();
+
+        for (int i = 0; i < 10; i++) {
+            writeBehind.put(i);
+        }
+        writeBehind.close();
+
+        assertThat(flushes, contains(4, 8, 10));
+        assertThat(writeBehind.flushCount(), is(3L));
+    }
+
+
+    @Test
+    public void reportWriteErrorsOnClose() throws Exception {
+        EventWriteBehind writeBehind = new EventWriteBehind("test", new TestSink(3), 16, 0, 0);
+        writeBehind.start();
+
+        for (int i = 0; i < 6; i++) {
+            writeBehind.put(i);
+        }
+
+        assertThrows(EventWriterException.class, writeBehind::close);
+        assertThat(written, contains(0, 1, 2));
+    }
+
+
+    private class TestSink implements EventWriteBehind.EventSink {
+
+        private final int failedEvent;
+
+        TestSink(int failedEvent) {
+            this.failedEvent = failedEvent;
+        }
+
+        @Override
+        public void write(Object event) throws EventWriterException {
+            if (event.equals(failedEvent)) {
+                throw new EventWriterException("disk full");
+            }
+            written.add(event);
+        }
+
+        @Override
+        public void flush() throws EventWriterException {
+            flushes.add(written.size());
+        }
+    }
+}
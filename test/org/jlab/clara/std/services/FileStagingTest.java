@@ -0,0 +1,147 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.jlab.clara.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class FileStagingTest {
+
+    private Path dir;
+    private Path source;
+    private byte[] content;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("staging");
+        source = dir.resolve("input.dat");
+        content = new byte[3 * 1024 * 1024 + 17];
+        new Random(7).nextBytes(content);
+        Files.write(source, content);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteFileTree(dir);
+    }
+
+
+    @Test
+    public void copyFile() throws Exception {
+        Path target = dir.resolve("copy.dat");
+
+        FileStaging.Transfer transfer = FileStaging.copy(source, target, true);
+
+        assertThat(Files.readAllBytes(target), is(content));
+        assertThat(Files.exists(source), is(true));
+        assertThat(transfer.files(), is(1));
+        assertThat(transfer.bytes(), is((long) content.length));
+        assertThat(transfer.renamed(), is(false));
+    }
+
+
+    @Test
+    public void copyLargeFileWithParallelStreams() throws Exception {
+        Path large = dir.resolve("large.dat");
+        byte[] largeContent = new byte[2 * FileStaging.BUFFER_SIZE + 5];
+        new Random(11).nextBytes(largeContent);
+        Files.write(large, largeContent);
+        Path target = dir.resolve("copy.dat");
+
+        FileStaging.Transfer transfer = FileStaging.copy(large, target, true, 4);
+
+        assertThat(Files.readAllBytes(target), is(largeContent));
+        assertThat(transfer.bytes(), is((long) largeContent.length));
+        assertThat(Files.exists(dir.resolve(".copy.dat.part")), is(false));
+    }
+
+
+    @Test
+    public void copyReplacesExistingTarget() throws Exception {
+        Path target = dir.resolve("copy.dat");
+        Files.write(target, new byte[10]);
+
+        FileStaging.copy(source, target, false);
+
+        assertThat(Files.readAllBytes(target), is(content));
+    }
+
+
+    @Test
+    public void failedCopyLeavesNoPartialFile() throws Exception {
+        Path target = dir.resolve("copy.dat");
+
+        assertThrows(IOException.class,
+                () -> FileStaging.copy(dir.resolve("missing.dat"), target, true));
+
+        assertThat(Files.exists(target), is(false));
+        assertThat(Files.exists(dir.resolve(".copy.dat.part")), is(false));
+    }
+
+
+    @Test
+    public void moveFileInSameFileSystem() throws Exception {
+        Path target = dir.resolve("moved.dat");
+
+        FileStaging.Transfer transfer = FileStaging.move(source, target, true);
+
+        assertThat(Files.readAllBytes(target), is(content));
+        assertThat(Files.exists(source), is(false));
+        assertThat(transfer.bytes(), is((long) content.length));
+        assertThat(transfer.renamed(), is(true));
+    }
+
+
+    @Test
+    public void checksumOfCopyMatchesSource() throws Exception {
+        Path target = dir.resolve("copy.dat");
+
+        FileStaging.copy(source, target, false);
+
+        assertThat(FileStaging.checksum(target), is(FileStaging.checksum(source)));
+    }
+
+
+    @Test
+    public void addTransfers() throws Exception {
+        FileStaging.Transfer a = new FileStaging.Transfer(1, 100, 1000, true);
+        FileStaging.Transfer b = new FileStaging.Transfer(1, 50, 500, false);
+
+        FileStaging.Transfer total = FileStaging.Transfer.empty().plus(a).plus(b);
+
+        assertThat(total.files(), is(2));
+        assertThat(total.bytes(), is(150L));
+        assertThat(total.renamed(), is(false));
+    }
+}
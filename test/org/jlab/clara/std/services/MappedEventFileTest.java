@@ -0,0 +1,102 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MappedEventFileTest {
+
+    private Path path;
+    private MappedEventFile file;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        path = Files.createTempFile("events", ".dat");
+        Files.write(path, data);
+        file = MappedEventFile.open(path, 32);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        file.close();
+        Files.deleteIfExists(path);
+    }
+
+
+    @Test
+    public void sliceReturnsRegionWithoutCopy() throws Exception {
+        ByteBuffer event = file.slice(10, 5);
+
+        assertTrue(event.isDirect());
+        assertTrue(event.isReadOnly());
+        assertThat(event.remaining(), is(5));
+        assertThat(event.get(0), is((byte) 10));
+        assertThat(event.get(4), is((byte) 14));
+    }
+
+
+    @Test
+    public void sliceCrossingWindowLimit() throws Exception {
+        ByteBuffer event = file.slice(30, 40);
+
+        assertThat(event.remaining(), is(40));
+        assertThat(event.get(0), is((byte) 30));
+        assertThat(event.get(39), is((byte) 69));
+    }
+
+
+    @Test
+    public void sliceOutsideFileFails() throws Exception {
+        assertThrows(IOException.class, () -> file.slice(90, 20));
+    }
+
+
+    @Test
+    public void indexKeepsEventsInOrder() throws Exception {
+        EventIndex.Builder builder = EventIndex.builder();
+        for (int i = 0; i < 2000; i++) {
+            builder.add(i * 8L, 8);
+        }
+        EventIndex index = builder.build();
+
+        assertThat(index.count(), is(2000));
+        assertThat(index.offset(1500), is(12000L));
+        assertThat(index.length(1500), is(8));
+    }
+}
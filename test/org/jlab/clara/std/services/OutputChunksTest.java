@@ -0,0 +1,128 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.jlab.clara.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class OutputChunksTest {
+
+    private Path dir;
+    private Path file;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("chunks");
+        file = dir.resolve("out_run.hipo");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteFileTree(dir);
+    }
+
+
+    @Test
+    public void chunksAreNamedAfterOutputFile() throws Exception {
+        OutputChunks chunks = new OutputChunks(file, 10, 0);
+
+        assertThat(chunks.next(), is(dir.resolve("out_run.part00000.hipo")));
+        assertThat(chunks.next(), is(dir.resolve("out_run.part00001.hipo")));
+        assertThat(chunks.chunk(12), is(dir.resolve("out_run.part00012.hipo")));
+    }
+
+
+    @Test
+    public void chunkIsFullAfterMaxEvents() throws Exception {
+        OutputChunks chunks = new OutputChunks(file, 2, 0);
+        Files.write(chunks.next(), new byte[8]);
+
+        chunks.added();
+        assertThat(chunks.isFull(), is(false));
+
+        chunks.added();
+        assertThat(chunks.isFull(), is(true));
+
+        chunks.next();
+        assertThat(chunks.events(), is(0));
+    }
+
+
+    @Test
+    public void chunkIsFullAfterMaxBytes() throws Exception {
+        OutputChunks chunks = new OutputChunks(file, 0, 100);
+        Path chunk = chunks.next();
+
+        Files.write(chunk, new byte[60]);
+        assertThat(chunks.isFull(), is(false));
+
+        Files.write(chunk, new byte[120]);
+        assertThat(chunks.isFull(), is(true));
+    }
+
+
+    @Test
+    public void countsCompletedChunks() throws Exception {
+        OutputChunks chunks = new OutputChunks(file, 1, 0);
+
+        Files.write(chunks.next(), new byte[10]);
+        chunks.added();
+        chunks.complete();
+
+        Files.write(chunks.next(), new byte[20]);
+        chunks.added();
+        chunks.complete();
+
+        assertThat(chunks.completedChunks(), is(2));
+        assertThat(chunks.current(), is(dir.resolve("out_run.part00001.hipo")));
+    }
+
+
+    @Test
+    public void completedChunksAreTakenOnce() throws Exception {
+        OutputChunks chunks = new OutputChunks(file, 1, 0);
+
+        Files.write(chunks.next(), new byte[10]);
+        chunks.added();
+        chunks.complete();
+        Files.write(chunks.next(), new byte[10]);
+
+        assertThat(chunks.takeCompleted(), contains(dir.resolve("out_run.part00000.hipo")));
+        assertThat(chunks.takeCompleted(), is(empty()));
+
+        chunks.added();
+        chunks.complete();
+
+        assertThat(chunks.takeCompleted(), contains(dir.resolve("out_run.part00001.hipo")));
+    }
+}
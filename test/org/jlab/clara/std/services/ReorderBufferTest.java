@@ -0,0 +1,104 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ReorderBufferTest {
+
+    private final List<Object> written = new ArrayList<>();
+
+
+    @Test
+    public void writeEventsInInputOrder() throws Exception {
+        ReorderBuffer buffer = new ReorderBuffer(10, 100);
+
+        add(buffer, 12);
+        add(buffer, 11);
+        assertThat(written, is(empty()));
+
+        add(buffer, 10);
+        add(buffer, 13);
+
+        assertThat(written, contains(10, 11, 12, 13));
+        assertThat(buffer.reorderedEvents(), is(2L));
+        assertThat(buffer.maxBuffered(), is(3));
+    }
+
+
+    @Test
+    public void batchesAdvanceByTheirSize() throws Exception {
+        ReorderBuffer buffer = new ReorderBuffer(0, 100);
+
+        buffer.add(3, 2, Arrays.asList(3, 4), written::add);
+        buffer.add(0, 3, Arrays.asList(0, 1, 2), written::add);
+
+        assertThat(written, contains(0, 1, 2, 3, 4));
+    }
+
+
+    @Test
+    public void skippedEventsDoNotBlockTheOutput() throws Exception {
+        ReorderBuffer buffer = new ReorderBuffer(0, 100);
+
+        add(buffer, 1);
+        buffer.add(0, 1, null, written::add);
+
+        assertThat(written, contains(1));
+    }
+
+
+    @Test
+    public void giveUpMissingEventsWhenWindowIsFull() throws Exception {
+        ReorderBuffer buffer = new ReorderBuffer(0, 2);
+
+        add(buffer, 1);
+        add(buffer, 2);
+        add(buffer, 4);
+
+        assertThat(written, contains(1, 2));
+        assertThat(buffer.missingEvents(), is(1L));
+
+        add(buffer, 0);
+        buffer.flush(written::add);
+
+        assertThat(written, contains(1, 2, 0, 4));
+        assertThat(buffer.lateEvents(), is(1L));
+        assertThat(buffer.missingEvents(), is(2L));
+    }
+
+
+    private void add(ReorderBuffer buffer, int id) throws EventWriterException {
+        buffer.add(id, 1, Collections.singletonList(id), written::add);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.jlab.clara.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StageCacheTest {
+
+    private Path inputDir;
+    private Path stageDir;
+    private StageCache cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        inputDir = Files.createTempDirectory("input");
+        stageDir = Files.createTempDirectory("stage");
+        for (String name : new String[] {"a.dat", "b.dat", "c.dat"}) {
+            Files.write(inputDir.resolve(name), new byte[100]);
+        }
+        cache = new StageCache();
+        cache.configure(stageDir.resolve(".cache"), 250);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteFileTree(inputDir);
+        FileUtils.deleteFileTree(stageDir);
+    }
+
+
+    @Test
+    public void stageCachedFile() throws Exception {
+        stageAndRemove("a.dat");
+
+        FileStaging.Transfer transfer = stage("a.dat");
+
+        assertThat(transfer, is(notNullValue()));
+        assertThat(Files.size(stageDir.resolve("a.dat")), is(100L));
+        assertThat(cache.stats().getInt("hits"), is(1));
+        assertThat(cache.stats().getInt("misses"), is(1));
+    }
+
+
+    @Test
+    public void modifiedInputIsNotUsed() throws Exception {
+        stageAndRemove("a.dat");
+        Path input = inputDir.resolve("a.dat");
+        Files.setLastModifiedTime(input, FileTime.fromMillis(0));
+
+        assertThat(stage("a.dat"), is(nullValue()));
+        assertThat(cache.stats().getInt("files"), is(0));
+    }
+
+
+    @Test
+    public void evictLeastRecentlyUsedFile() throws Exception {
+        stageAndRemove("a.dat");
+        stageAndRemove("b.dat");
+        stageAndRemove("a.dat");
+        stageAndRemove("c.dat");
+
+        assertThat(cache.stats().getInt("files"), is(2));
+        assertThat(cache.stats().getLong("used"), is(200L));
+        assertThat(stage("b.dat"), is(nullValue()));
+        assertThat(stage("a.dat"), is(notNullValue()));
+    }
+
+
+    @Test
+    public void filesWithSameNameAreCachedApart() throws Exception {
+        Path other = Files.createDirectories(inputDir.resolve("other")).resolve("a.dat");
+        Files.write(other, new byte[50]);
+
+        stageAndRemove("a.dat");
+        Path staged = stageDir.resolve("a.dat");
+        Files.copy(other, staged);
+        cache.keep(other, staged);
+
+        assertThat(cache.stats().getInt("files"), is(2));
+        assertThat(stage("a.dat"), is(notNullValue()));
+        assertThat(Files.size(staged), is(100L));
+        assertThat(cache.stage(other, staged), is(notNullValue()));
+        assertThat(Files.size(staged), is(50L));
+    }
+
+
+    @Test
+    public void loadIndexOfExistingCache() throws Exception {
+        stageAndRemove("a.dat");
+
+        StageCache other = new StageCache();
+        other.configure(stageDir.resolve(".cache"), 250);
+
+        assertThat(other.stats().getInt("files"), is(1));
+        assertThat(other.stage(inputDir.resolve("a.dat"), stageDir.resolve("a.dat")),
+                   is(notNullValue()));
+    }
+
+
+    private FileStaging.Transfer stage(String name) throws Exception {
+        return cache.stage(inputDir.resolve(name), stageDir.resolve(name));
+    }
+
+    private void stageAndRemove(String name) throws Exception {
+        Path staged = stageDir.resolve(name);
+        if (stage(name) == null) {
+            Files.copy(inputDir.resolve(name), staged);
+        }
+        cache.keep(inputDir.resolve(name), staged);
+    }
+}
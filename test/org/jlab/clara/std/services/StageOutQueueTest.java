@@ -0,0 +1,116 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class StageOutQueueTest {
+
+    private final StageOutQueue queue = new StageOutQueue(2, "test");
+
+    @AfterEach
+    public void tearDown() {
+        queue.shutdown();
+    }
+
+
+    @Test
+    public void flushWaitsForPendingOutputs() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.submit("a.dat", () -> {
+            await(latch);
+            return new FileStaging.Transfer(1, 10, 100, true);
+        });
+        assertThat(queue.pending(), is(1));
+
+        latch.countDown();
+        queue.flush();
+
+        List<StageOutQueue.Result> results = queue.drainResults();
+        assertThat(queue.pending(), is(0));
+        assertThat(results.size(), is(1));
+        assertThat(results.get(0).file(), is("a.dat"));
+        assertThat(results.get(0).failed(), is(false));
+    }
+
+
+    @Test
+    public void reportFailedOutputs() throws Exception {
+        queue.submit("b.dat", () -> {
+            throw new IOException("no such file");
+        });
+        queue.flush();
+
+        List<StageOutQueue.Result> results = queue.drainResults();
+        assertThat(results.get(0).failed(), is(true));
+        assertThat(results.get(0).toJson().getString("error"), is("no such file"));
+        assertThat(queue.drainResults().isEmpty(), is(true));
+    }
+
+
+    @Test
+    public void submitBlocksWhileQueueIsFull() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        StageOutQueue.Task task = () -> {
+            await(latch);
+            return FileStaging.Transfer.empty();
+        };
+        queue.submit("a.dat", task);
+        queue.submit("b.dat", task);
+
+        Thread producer = new Thread(() -> {
+            try {
+                queue.submit("c.dat", task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertThat(producer.isAlive(), is(true));
+
+        latch.countDown();
+        producer.join();
+        queue.flush();
+
+        assertThat(queue.drainResults().size(), is(3));
+    }
+
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        }
+    }
+}
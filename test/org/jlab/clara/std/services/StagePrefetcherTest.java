@@ -0,0 +1,141 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.jlab.clara.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StagePrefetcherTest {
+
+    private Path inputDir;
+    private Path stageDir;
+    private StagePrefetcher prefetcher;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        inputDir = Files.createTempDirectory("input");
+        stageDir = Files.createTempDirectory("stage");
+        for (String name : Arrays.asList("a.dat", "b.dat")) {
+            Files.write(inputDir.resolve(name), name.getBytes());
+        }
+        prefetcher = new StagePrefetcher((s, t) -> FileStaging.copy(s, t, false), "test");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        prefetcher.clear();
+        FileUtils.deleteFileTree(inputDir);
+        FileUtils.deleteFileTree(stageDir);
+    }
+
+
+    @Test
+    public void takePrefetchedFile() throws Exception {
+        Path target = stageDir.resolve("a.dat");
+
+        prefetcher.prefetch(Collections.singletonList(inputDir.resolve("a.dat")),
+                            Collections.singletonList(target));
+        while (!Files.exists(target)) {
+            Thread.sleep(10);
+        }
+
+        assertThat(prefetcher.take(target), is(notNullValue()));
+        assertThat(Files.readAllBytes(target), is("a.dat".getBytes()));
+        assertThat(prefetcher.hits(), is(1));
+        assertThat(prefetcher.pending(), is(0));
+    }
+
+
+    @Test
+    public void takeMissingFile() throws Exception {
+        assertThat(prefetcher.take(stageDir.resolve("b.dat")), is(nullValue()));
+        assertThat(prefetcher.misses(), is(1));
+    }
+
+
+    @Test
+    public void prefetchDoesNotRescheduleUpcomingFiles() throws Exception {
+        Path source = inputDir.resolve("a.dat");
+        Path target = stageDir.resolve("a.dat");
+
+        int first = prefetcher.prefetch(Collections.singletonList(source),
+                                        Collections.singletonList(target));
+        int second = prefetcher.prefetch(Collections.singletonList(source),
+                                         Collections.singletonList(target));
+
+        assertThat(first, is(1));
+        assertThat(second, is(0));
+        assertThat(prefetcher.pending(), is(1));
+    }
+
+
+    @Test
+    public void discardedFileIsKeptWhenTakenAgain() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        prefetcher = new StagePrefetcher((s, t) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return FileStaging.copy(s, t, false);
+        }, "test");
+
+        Path target = stageDir.resolve("a.dat");
+        prefetcher.prefetch(Collections.singletonList(inputDir.resolve("a.dat")),
+                            Collections.singletonList(target));
+        started.await();
+
+        // the running copy is discarded, and then requested again
+        prefetcher.prefetch(Collections.emptyList(), Collections.emptyList());
+        release.countDown();
+
+        assertThat(prefetcher.take(target), is(notNullValue()));
+
+        // the background removal runs before the next copy
+        Path next = stageDir.resolve("b.dat");
+        prefetcher.prefetch(Collections.singletonList(inputDir.resolve("b.dat")),
+                            Collections.singletonList(next));
+        while (!Files.exists(next)) {
+            Thread.sleep(10);
+        }
+
+        assertThat(Files.readAllBytes(target), is("a.dat".getBytes()));
+    }
+}
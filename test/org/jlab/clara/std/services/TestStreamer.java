@@ -0,0 +1,67 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.std.services;
+
+import org.jlab.clara.engine.EngineDataType;
+import org.json.JSONObject;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A streamer that receives the events put into a queue.
+ */
+class TestStreamer extends AbstractEventStreamerService<BlockingQueue<Object>> {
+
+    static final Object END = new Object();
+    static final Object FAIL = new Object();
+
+    final BlockingQueue<Object> source = new LinkedBlockingQueue<>();
+
+    @Override
+    protected BlockingQueue<Object> createStreamer(JSONObject opts) {
+        return source;
+    }
+
+    @Override
+    protected void closeStreamer() {
+        // nothing
+    }
+
+    @Override
+    protected Object receiveEvent() throws EventStreamerException, InterruptedException {
+        Object event = streamer.take();
+        if (event == END) {
+            return null;
+        }
+        if (event == FAIL) {
+            throw new EventStreamerException("source failed");
+        }
+        return event;
+    }
+
+    @Override
+    protected EngineDataType getDataType() {
+        return EngineDataType.STRING;
+    }
+}
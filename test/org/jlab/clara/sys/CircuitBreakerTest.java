@@ -0,0 +1,147 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.sys.CircuitBreaker.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private AtomicLong clock;
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong();
+        breaker = new CircuitBreaker("test", 1000, 4, 0.5, 5000, clock::get);
+    }
+
+    @Test
+    public void breakerIsClosedByDefault() throws Exception {
+        assertThat(breaker.state(), is(State.CLOSED));
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void breakerStaysClosedUnderMinimumRequests() throws Exception {
+        fail(3);
+
+        assertThat(breaker.state(), is(State.CLOSED));
+    }
+
+    @Test
+    public void breakerStaysClosedUnderFailureRate() throws Exception {
+        succeed(3);
+        fail(1);
+
+        assertThat(breaker.state(), is(State.CLOSED));
+    }
+
+    @Test
+    public void breakerOpensOverFailureRate() throws Exception {
+        succeed(2);
+        fail(2);
+
+        assertThat(breaker.state(), is(State.OPEN));
+    }
+
+    @Test
+    public void openBreakerRejectsRequests() throws Exception {
+        fail(4);
+
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertThat(breaker.rejectedCount(), is(2L));
+    }
+
+    @Test
+    public void failuresOfOldWindowAreDiscarded() throws Exception {
+        fail(3);
+        advance(1000);
+        succeed(1);
+        fail(1);
+
+        assertThat(breaker.state(), is(State.CLOSED));
+    }
+
+    @Test
+    public void openBreakerAllowsSingleTrialRequest() throws Exception {
+        fail(4);
+        advance(5000);
+
+        assertTrue(breaker.allowRequest());
+        assertThat(breaker.state(), is(State.HALF_OPEN));
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successfulTrialClosesBreaker() throws Exception {
+        fail(4);
+        advance(5000);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+
+        assertThat(breaker.state(), is(State.CLOSED));
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialOpensBreakerAgain() throws Exception {
+        fail(4);
+        advance(5000);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+
+        assertThat(breaker.state(), is(State.OPEN));
+        assertFalse(breaker.allowRequest());
+    }
+
+    private void succeed(int requests) {
+        for (int i = 0; i < requests; i++) {
+            breaker.allowRequest();
+            breaker.recordSuccess();
+        }
+    }
+
+    private void fail(int requests) {
+        for (int i = 0; i < requests; i++) {
+            breaker.allowRequest();
+            breaker.recordFailure();
+        }
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraConstants;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.clara.engine.EngineStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class RejectionReportsTest {
+
+    private AtomicLong clock;
+    private ScheduledExecutorService timer;
+    private RejectionReports reports;
+    private List<EngineData> published;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong();
+        timer = mock(ScheduledExecutorService.class);
+        reports = new RejectionReports("test", 1000, clock::get, timer);
+        published = new ArrayList<>();
+    }
+
+    @Test
+    public void firstRejectionIsReportedRightAway() throws Exception {
+        reject(1, 0);
+
+        assertThat(published, hasSize(1));
+        assertThat(published.get(0).getDescription(), is(ClaraConstants.CIRCUIT_OPEN));
+        assertThat(published.get(0).getData(), is("1"));
+    }
+
+    @Test
+    public void rejectionsInTheIntervalAreReportedTogether() throws Exception {
+        reject(1, 0);
+        reject(2, 0);
+        reject(3, 0);
+
+        assertThat(published, hasSize(1));
+        assertThat(reports.suppressedCount(), is(2L));
+        verify(timer, times(1)).schedule(any(Runnable.class), anyLong(),
+                                         eq(TimeUnit.NANOSECONDS));
+
+        advance(1000);
+        reports.flush();
+
+        assertThat(published, hasSize(2));
+        assertThat(published.get(1).getData(), is("2,3"));
+        assertThat(published.get(1).getCommunicationId(), is(3));
+    }
+
+    @Test
+    public void rejectionAfterTheIntervalIsReportedRightAway() throws Exception {
+        reject(1, 0);
+        advance(1000);
+        reject(2, 0);
+
+        assertThat(published, hasSize(2));
+        assertThat(published.get(1).getData(), is("2"));
+    }
+
+    @Test
+    public void everySlotGetsItsOwnReport() throws Exception {
+        reject(1, 0);
+        reject(2, 0);
+        reject(3, 1);
+
+        advance(1000);
+        reports.flush();
+
+        assertThat(published, hasSize(3));
+        assertThat(published.get(1).getSlot(), is(0));
+        assertThat(published.get(1).getData(), is("2"));
+        assertThat(published.get(2).getSlot(), is(1));
+        assertThat(published.get(2).getData(), is("3"));
+    }
+
+    @Test
+    public void flushWithoutRejectionsReportsNothing() throws Exception {
+        reports.flush();
+
+        assertThat(published, is(empty()));
+    }
+
+
+    private void reject(int id, int slot) throws Exception {
+        EngineData data = new EngineData();
+        data.setData(EngineDataType.STRING.mimeType(), ClaraConstants.UNDEFINED);
+        data.setDescription(ClaraConstants.CIRCUIT_OPEN);
+        data.setStatus(EngineStatus.ERROR, 1);
+        data.setCommunicationId(id);
+        data.setSlot(slot);
+        reports.reject(data, published::add);
+    }
+
+    private void advance(long ms) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+}
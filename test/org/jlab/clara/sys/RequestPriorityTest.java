@@ -0,0 +1,79 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraConstants;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class RequestPriorityTest {
+
+    @Test
+    public void setupRequestIsControl() throws Exception {
+        xMsgMeta.Builder meta = xMsgMeta.newBuilder();
+
+        assertThat(RequestPriority.of(meta, "text/string"), is(RequestPriority.CONTROL));
+    }
+
+    @Test
+    public void configureRequestIsControl() throws Exception {
+        xMsgMeta.Builder meta = xMsgMeta.newBuilder()
+                .setAction(xMsgMeta.ControlAction.CONFIGURE);
+
+        String mimeType = EngineDataType.JSON.mimeType();
+
+        assertThat(RequestPriority.of(meta, mimeType), is(RequestPriority.CONTROL));
+    }
+
+    @Test
+    public void textExecuteRequestIsRequest() throws Exception {
+        xMsgMeta.Builder meta = xMsgMeta.newBuilder()
+                .setAction(xMsgMeta.ControlAction.EXECUTE);
+
+        String mimeType = EngineDataType.STRING.mimeType();
+
+        assertThat(RequestPriority.of(meta, mimeType), is(RequestPriority.REQUEST));
+    }
+
+    @Test
+    public void eventExecuteRequestIsData() throws Exception {
+        xMsgMeta.Builder meta = xMsgMeta.newBuilder()
+                .setAction(xMsgMeta.ControlAction.EXECUTE)
+                .setDataType(ClaraConstants.SHARED_MEMORY_KEY);
+
+        String mimeType = EngineDataType.BYTES.mimeType();
+
+        assertThat(RequestPriority.of(meta, mimeType), is(RequestPriority.DATA));
+    }
+
+    @Test
+    public void controlIsServedBeforeData() throws Exception {
+        assertThat(RequestPriority.CONTROL.compareTo(RequestPriority.REQUEST), lessThan(0));
+        assertThat(RequestPriority.REQUEST.compareTo(RequestPriority.DATA), lessThan(0));
+    }
+}
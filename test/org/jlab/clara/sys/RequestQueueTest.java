@@ -0,0 +1,88 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class RequestQueueTest {
+
+    @Test
+    public void requestsAreTakenByPriorityAndArrivalOrder() throws Exception {
+        RequestQueue<String> queue = new RequestQueue<>(10);
+
+        queue.offer(RequestPriority.DATA, "d1");
+        queue.offer(RequestPriority.REQUEST, "r1");
+        queue.offer(RequestPriority.DATA, "d2");
+        queue.offer(RequestPriority.CONTROL, "c1");
+        queue.offer(RequestPriority.REQUEST, "r2");
+
+        assertThat(queue.take(), is("c1"));
+        assertThat(queue.take(), is("r1"));
+        assertThat(queue.take(), is("r2"));
+        assertThat(queue.take(), is("d1"));
+        assertThat(queue.take(), is("d2"));
+    }
+
+    @Test
+    public void offerRejectsRequestsWhileQueueIsFull() throws Exception {
+        RequestQueue<String> queue = new RequestQueue<>(2);
+        queue.offer(RequestPriority.DATA, "d1");
+        queue.offer(RequestPriority.REQUEST, "r1");
+
+        assertThat(queue.offer(RequestPriority.DATA, "d2"), is(false));
+        assertThat(queue.offer(RequestPriority.REQUEST, "r2"), is(false));
+        assertThat(queue.isClosed(), is(false));
+
+        assertThat(queue.take(), is("r1"));
+
+        assertThat(queue.offer(RequestPriority.DATA, "d2"), is(true));
+        assertThat(queue.size(), is(2));
+    }
+
+    @Test
+    public void controlRequestsAreAlwaysQueued() throws Exception {
+        RequestQueue<String> queue = new RequestQueue<>(1);
+        queue.offer(RequestPriority.DATA, "d1");
+
+        assertThat(queue.offer(RequestPriority.CONTROL, "c1"), is(true));
+        assertThat(queue.take(), is("c1"));
+    }
+
+    @Test
+    public void closeReturnsQueuedRequests() throws Exception {
+        RequestQueue<String> queue = new RequestQueue<>(5);
+        queue.offer(RequestPriority.DATA, "d1");
+        queue.offer(RequestPriority.REQUEST, "r1");
+
+        assertThat(queue.close(), contains("r1", "d1"));
+        assertThat(queue.offer(RequestPriority.DATA, "d2"), is(false));
+        assertThat(queue.offer(RequestPriority.CONTROL, "c1"), is(false));
+        assertThat(queue.isClosed(), is(true));
+        assertThat(queue.close(), is(empty()));
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ *   Copyright (c) 2017.  Jefferson Lab (JLab). All rights reserved. Permission
+ *   to use, copy, modify, and distribute  this software and its documentation for
+ *   educational, research, and not-for-profit purposes, without fee and without a
+ *   signed licensing agreement.
+ *
+ *   IN NO EVENT SHALL JLAB BE LIABLE TO ANY PARTY FOR DIRECT, INDIRECT, SPECIAL
+ *   INCIDENTAL, OR CONSEQUENTIAL DAMAGES, INCLUDING LOST PROFITS, ARISING
+ *   OUT OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF JLAB HAS
+ *   BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ *   JLAB SPECIFICALLY DISCLAIMS ANY WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *   THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ *   PURPOSE. THE CLARA SOFTWARE AND ACCOMPANYING DOCUMENTATION, IF ANY,
+ *   PROVIDED HEREUNDER IS PROVIDED "AS IS". JLAB HAS NO OBLIGATION TO PROVIDE
+ *   MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ *   This software was developed under the United States Government license.
+ *   For more information contact author at gurjyan@jlab.org
+ *   Department of Experimental Nuclear Physics, Jefferson Lab.
+ */
+
+package org.jlab.clara.sys;
+
+import org.jlab.clara.base.core.ClaraConstants;
+import org.jlab.clara.base.core.DataUtil;
+import org.jlab.clara.engine.Engine;
+import org.jlab.clara.engine.EngineData;
+import org.jlab.clara.engine.EngineDataBatch;
+import org.jlab.clara.engine.EngineDataType;
+import org.jlab.clara.engine.EngineStatus;
+import org.jlab.clara.util.report.ServiceReport;
+import org.jlab.coda.xmsg.core.xMsgMessage;
+import org.jlab.coda.xmsg.core.xMsgTopic;
+import org.jlab.coda.xmsg.data.xMsgM.xMsgMeta;
+import org.jlab.coda.xmsg.net.xMsgProxyAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ServiceEngineTest {
+
+    private static final String S1 = "10.10.10.1_java:C:S1";
+    private static final String S2 = "10.10.10.1_java:C:S2";
+    private static final String S3 = "10.10.10.1_java:C:S3";
+    private static final String COMPOSITION = S1 + "+" + S2 + "+" + S3 + ";";
+
+    @Mock
+    private Engine engine;
+
+    @Mock
+    private ServiceReport report;
+
+
+    @BeforeEach
+    public void setUp() {
+        when(engine.getVersion()).thenReturn("1.0");
+        when(engine.getInputDataTypes()).thenReturn(Collections.singleton(EngineDataType.STRING));
+        when(engine.getOutputDataTypes()).thenReturn(Collections.singleton(EngineDataType.STRING));
+        when(engine.execute(any())).thenAnswer(i -> {
+            // a new output, without the metadata of the input
+            EngineData output = new EngineData();
+            output.setData(EngineDataType.STRING.mimeType(), "done");
+            return output;
+        });
+
+        SharedMemory.addReceiver(S2);
+        SharedMemory.addReceiver(S3);
+    }
+
+
+    @AfterEach
+    public void tearDown() {
+        SharedMemory.removeReceiver(S2);
+        SharedMemory.removeReceiver(S3);
+    }
+
+
+    @Test
+    public void sharedMemoryKeepsSlotAndDeadlineOfEvents() throws Exception {
+        long deadline = System.currentTimeMillis() + 60_000;
+
+        EngineData event = new EngineData();
+        event.setData(EngineDataType.STRING.mimeType(), "event");
+        event.setCommunicationId(7);
+        event.setSlot(1);
+        event.setDeadline(deadline);
+        DataUtil.getMetadata(event).setComposition(COMPOSITION);
+
+        xMsgMessage request = DataUtil.serialize(xMsgTopic.wrap(S1), event,
+                                                 engine.getInputDataTypes());
+        xMsgMessage shared = execute(S1, request);
+        xMsgMessage result = execute(S2, shared);
+
+        EngineData output = SharedMemory.getEngineData(S3, S2, 1, 7);
+
+        assertThat(output.getSlot(), is(1));
+        assertThat(output.getDeadline(), is(deadline));
+        assertThat(result.getMetaData().getDataType(), is(ClaraConstants.SHARED_MEMORY_KEY));
+    }
+
+
+    @Test
+    public void sharedMemoryKeepsEventsOfEverySlot() throws Exception {
+        // the pipelined files of a node reuse the same communication ids
+        EngineData first = new EngineData();
+        first.setData(EngineDataType.STRING.mimeType(), "first");
+        first.setCommunicationId(7);
+
+        EngineData second = new EngineData();
+        second.setData(EngineDataType.STRING.mimeType(), "second");
+        second.setCommunicationId(7);
+        second.setSlot(1);
+
+        SharedMemory.putEngineData(S2, S1, first.getSlot(), 7, first);
+        SharedMemory.putEngineData(S2, S1, second.getSlot(), 7, second);
+
+        assertThat(SharedMemory.getEngineData(S2, S1, 1, 7).getData(), is("second"));
+        assertThat(SharedMemory.getEngineData(S2, S1, 0, 7).getData(), is("first"));
+    }
+
+
+    @Test
+    public void fatalErrorQuarantinesTheService() throws Exception {
+        when(engine.execute(any())).thenAnswer(i -> {
+            EngineData output = new EngineData();
+            output.setData(EngineDataType.STRING.mimeType(), "failed");
+            output.setDescription("fatal error");
+            output.setStatus(EngineStatus.ERROR, 13);
+            return output;
+        });
+
+        ServiceActor actor = mock(ServiceActor.class);
+        when(actor.getName()).thenReturn(S1);
+        when(actor.getFrontEnd()).thenReturn(new xMsgProxyAddress("localhost"));
+
+        ServiceSysConfig config = new ServiceSysConfig(S1, "idle");
+        ServiceEngine service = new ServiceEngine(engine, actor, config, report,
+                                                  new CircuitBreaker(S1),
+                                                  new RejectionReports(S1));
+
+        service.execute(request(1));
+        service.execute(request(2));
+
+        // only the first request runs the engine
+        verify(engine, times(1)).execute(any());
+        verify(report).setQuarantined(true);
+        verify(report).incrementRejectedCount();
+        assertThat(config.isQuarantined(), is(true));
+
+        ArgumentCaptor<xMsgMessage> captor = ArgumentCaptor.forClass(xMsgMessage.class);
+        verify(actor, times(2)).send(any(xMsgProxyAddress.class), captor.capture());
+
+        xMsgMeta.Builder fatal = captor.getAllValues().get(0).getMetaData();
+        assertThat(fatal.getDescription(), is("fatal error"));
+        assertThat(fatal.getSeverityId(), is(13));
+
+        xMsgMeta.Builder rejected = captor.getAllValues().get(1).getMetaData();
+        assertThat(rejected.getDescription(), is(ClaraConstants.SERVICE_QUARANTINED));
+        assertThat(rejected.getSeverityId(), is(13));
+        assertThat(rejected.getCommunicationId(), is(2));
+    }
+
+
+    @Test
+    public void failedEventIsDroppedFromTheBatch() throws Exception {
+        when(engine.execute(any())).thenAnswer(i -> {
+            EngineData input = i.getArgument(0);
+            EngineData output = new EngineData();
+            if (input.getData().equals("bad")) {
+                output.setData(EngineDataType.STRING.mimeType(), "failed");
+                output.setDescription("bad event");
+                output.setStatus(EngineStatus.ERROR, 1);
+            } else {
+                output.setData(EngineDataType.STRING.mimeType(), input.getData() + "-done");
+            }
+            return output;
+        });
+
+        ServiceActor actor = mock(ServiceActor.class);
+        when(actor.getName()).thenReturn(S1);
+        when(actor.getFrontEnd()).thenReturn(new xMsgProxyAddress("localhost"));
+
+        ServiceEngine service = new ServiceEngine(engine, actor,
+                                                  new ServiceSysConfig(S1, "idle"),
+                                                  report,
+                                                  new CircuitBreaker(S1),
+                                                  new RejectionReports(S1));
+
+        EngineData batch = EngineDataBatch.pack(Arrays.asList(
+                event("e1"), event("bad"), event("e3")));
+        batch.setCommunicationId(10);
+        DataUtil.getMetadata(batch).setComposition(COMPOSITION);
+        service.execute(DataUtil.serialize(xMsgTopic.wrap(S1), batch,
+                Collections.singleton(EngineDataType.batchOf(EngineDataType.STRING))));
+
+        ArgumentCaptor<xMsgMessage> captor = ArgumentCaptor.forClass(xMsgMessage.class);
+        verify(actor, times(2)).send(any(xMsgProxyAddress.class), captor.capture());
+
+        // the failed event is reported as a warning
+        xMsgMeta.Builder failed = captor.getAllValues().get(0).getMetaData();
+        assertThat(failed.getStatus(), is(xMsgMeta.Status.WARNING));
+        assertThat(failed.getDescription(), is("bad event"));
+        assertThat(failed.getCommunicationId(), is(11));
+
+        // the other events are sent to the next service
+        EngineData output = SharedMemory.getEngineData(S2, S1, 0, 10);
+        assertThat(output.getData(), is(Arrays.asList("e1-done", "e3-done")));
+    }
+
+
+    @Test
+    public void requestRejectedByFullQueueIsReported() throws Exception {
+        ServiceActor actor = mock(ServiceActor.class);
+        when(actor.getName()).thenReturn(S1);
+        when(actor.getFrontEnd()).thenReturn(new xMsgProxyAddress("localhost"));
+
+        ServiceEngine service = new ServiceEngine(engine, actor,
+                                                  new ServiceSysConfig(S1, "idle"),
+                                                  report,
+                                                  new CircuitBreaker(S1),
+                                                  new RejectionReports(S1));
+
+        service.reject(request(7), ClaraConstants.SERVICE_BUSY);
+
+        verify(engine, times(0)).execute(any());
+        verify(report).incrementRejectedCount();
+
+        ArgumentCaptor<xMsgMessage> captor = ArgumentCaptor.forClass(xMsgMessage.class);
+        verify(actor).send(any(xMsgProxyAddress.class), captor.capture());
+
+        xMsgMeta.Builder rejected = captor.getValue().getMetaData();
+        assertThat(rejected.getStatus(), is(xMsgMeta.Status.ERROR));
+        assertThat(rejected.getDescription(), is(ClaraConstants.SERVICE_BUSY));
+        assertThat(rejected.getCommunicationId(), is(7));
+        assertThat(rejected.getAuthor(), is(S1));
+    }
+
+
+    @Test
+    public void warmUpExecutesEverySampleForAllIterations() throws Exception {
+        when(engine.execute(any())).thenReturn(event("done"));
+
+        ServiceActor actor = mock(ServiceActor.class);
+        when(actor.getName()).thenReturn(S1);
+
+        ServiceEngine service = new ServiceEngine(engine, actor,
+                                                  new ServiceSysConfig(S1, "idle"),
+                                                  report,
+                                                  new CircuitBreaker(S1),
+                                                  new RejectionReports(S1));
+
+        service.warmUp(Arrays.asList(event("s1"), event("s2")), 3);
+
+        verify(engine, times(6)).execute(any());
+        verify(actor, times(0)).send(any(xMsgProxyAddress.class), any(xMsgMessage.class));
+    }
+
+
+    @Test
+    public void warmUpStopsOnCriticalError() throws Exception {
+        when(engine.execute(any())).thenThrow(new StackOverflowError());
+
+        ServiceActor actor = mock(ServiceActor.class);
+        when(actor.getName()).thenReturn(S1);
+
+        ServiceEngine service = new ServiceEngine(engine, actor,
+                                                  new ServiceSysConfig(S1, "idle"),
+                                                  report,
+                                                  new CircuitBreaker(S1),
+                                                  new RejectionReports(S1));
+
+        service.warmUp(Arrays.asList(event("s1"), event("s2")), 3);
+
+        verify(engine, times(1)).execute(any());
+    }
+
+
+    private static EngineData event(String data) {
+        EngineData event = new EngineData();
+        event.setData(EngineDataType.STRING.mimeType(), data);
+        return event;
+    }
+
+
+    private xMsgMessage request(int id) throws Exception {
+        EngineData event = new EngineData();
+        event.setData(EngineDataType.STRING.mimeType(), "event");
+        event.setCommunicationId(id);
+        DataUtil.getMetadata(event).setComposition(COMPOSITION);
+        return DataUtil.serialize(xMsgTopic.wrap(S1), event, engine.getInputDataTypes());
+    }
+
+
+    private xMsgMessage execute(String name, xMsgMessage request) throws Exception {
+        ServiceActor actor = mock(ServiceActor.class);
+        when(actor.getName()).thenReturn(name);
+
+        ServiceEngine service = new ServiceEngine(engine, actor,
+                                                  new ServiceSysConfig(name, "idle"),
+                                                  report,
+                                                  new CircuitBreaker(name),
+                                                  new RejectionReports(name));
+        service.execute(request);
+
+        ArgumentCaptor<xMsgMessage> captor = ArgumentCaptor.forClass(xMsgMessage.class);
+        verify(actor).send(any(xMsgProxyAddress.class), captor.capture());
+
+        // the sender is set by xMsg when the message is published
+        xMsgMessage message = captor.getValue();
+        message.getMetaData().setSender(name);
+        return message;
+    }
+}